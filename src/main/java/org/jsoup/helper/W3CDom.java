@@ -51,7 +51,7 @@ public class W3CDom {
     /** For W3C Documents created by this class, this property is set on each node to link back to the original jsoup node. */
     public static final String SourceProperty = "jsoupSource";
     private static final String ContextProperty = "jsoupContextSource"; // tracks the jsoup context element on w3c doc
-    private static final String ContextNodeProperty = "jsoupContextNode"; // the w3c node used as the creating context
+    static final String ContextNodeProperty = "jsoupContextNode"; // the w3c node used as the creating context
 
     /**
      To get support for XPath versions &gt; 1, set this property to the classname of an alternate XPathFactory
@@ -220,6 +220,24 @@ public class W3CDom {
         }
     }
 
+    /**
+     Get a read-only W3C Document view of a jsoup DOM. Unlike {@link #fromJsoup(org.jsoup.nodes.Element)}, no W3C
+     nodes are built up front: each jsoup node is wrapped as it is first reached through the view, and namespaces are
+     resolved on demand. So creating the view is free, and it uses little memory beyond the nodes actually visited. This
+     suits handing a large document to read-only consumers, such as XSLT transformers and XPath evaluators.
+     <p>The view presents the same nodes as {@link #fromJsoup(org.jsoup.nodes.Element)} (including the
+     {@link #SourceProperty} user data, and the {@link #contextNode(Document)}), and follows this W3CDom's
+     {@link #namespaceAware()} setting. As the nodes are wrapped rather than copied, changes to the jsoup DOM are seen
+     through the view. The view itself can't be modified: attempts throw a DOMException.</p>
+
+     @param in jsoup element or doc
+     @return a read-only W3C DOM Document view of the jsoup Document or Element contents.
+     @see #fromJsoup(org.jsoup.nodes.Element)
+     */
+    public Document view(org.jsoup.nodes.Element in) {
+        return W3CView.view(in, namespaceAware, factory);
+    }
+
     /**
      * Converts a jsoup document into the provided W3C Document. If required, you can set options on the output
      * document before converting.
@@ -356,7 +374,7 @@ public class W3CDom {
             contextElement = (org.jsoup.nodes.Element) doc.getUserData(ContextProperty); // Track the context jsoup Element, so we can save the corresponding w3c element
             final org.jsoup.nodes.Document inDoc = contextElement.ownerDocument();
             if (namespaceAware && inDoc != null && inDoc.parser().getTreeBuilder() instanceof HtmlTreeBuilder) {
-              // as per the WHATWG HTML5 spec § 2.1.3, elements are in the HTML namespace by default
+              // as per the WHATWG HTML5 spec section 2.1.3, elements are in the HTML namespace by default
               namespacesStack.peek().put("", xhtmlNs);
             }
           }
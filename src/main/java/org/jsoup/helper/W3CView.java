@@ -0,0 +1,1145 @@
+package org.jsoup.helper;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.parser.HtmlTreeBuilder;
+import org.jsoup.select.NodeTraversor;
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.UserDataHandler;
+
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.jsoup.nodes.Document.OutputSettings.Syntax;
+
+/**
+ A read-only W3C DOM view of a jsoup tree, for {@link W3CDom#view(org.jsoup.nodes.Element)}. Rather than building a
+ parallel W3C Document, each jsoup node is wrapped when first reached through the view, and namespaces are resolved when
+ asked for. Creating the view is free, and it only holds wrappers for the nodes that have been visited.
+ <p>The view presents the tree as {@link W3CDom#fromJsoup(org.jsoup.nodes.Element)} would convert it: the doctype and
+ the first element of the document; elements, text, data (as text), and comments; and attributes with keys coerced to the
+ document's syntax. Each node has its jsoup node in the {@link W3CDom#SourceProperty} user data. As the nodes are
+ wrapped (and not copied), the view reflects later changes to the jsoup tree. Any attempt to modify the view throws a
+ {@link DOMException#NO_MODIFICATION_ALLOWED_ERR} DOMException.</p>
+ */
+final class W3CView {
+    private static final String XmlnsNs = "http://www.w3.org/2000/xmlns/";
+    private static final String XmlNs = "http://www.w3.org/XML/1998/namespace";
+    private static final String XhtmlNs = "http://www.w3.org/1999/xhtml";
+
+    private W3CView() {}
+
+    static Document view(org.jsoup.nodes.Element in, boolean namespaceAware, DocumentBuilderFactory factory) {
+        Validate.notNull(in);
+        return new ViewDocument(in, namespaceAware, factory);
+    }
+
+    static boolean isVisible(org.jsoup.nodes.Node node) {
+        return node instanceof org.jsoup.nodes.Element || node instanceof org.jsoup.nodes.TextNode ||
+            node instanceof org.jsoup.nodes.DataNode || node instanceof org.jsoup.nodes.Comment;
+    }
+
+    static DOMException readOnly() {
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, "The W3C view of a jsoup DOM is read-only");
+    }
+
+    /** Splits a qualified name into its prefix (or null) and local name. */
+    static @Nullable String prefix(String qname) {
+        int pos = qname.indexOf(':');
+        return pos > 0 ? qname.substring(0, pos) : null;
+    }
+
+    static String localName(String qname) {
+        int pos = qname.indexOf(':');
+        return pos > 0 ? qname.substring(pos + 1) : qname;
+    }
+
+    /** A W3C node list over a snapshot of view nodes. */
+    static final class ViewNodeList implements NodeList {
+        static final ViewNodeList Empty = new ViewNodeList(Collections.<Node>emptyList());
+        private final List<? extends Node> nodes;
+
+        ViewNodeList(List<? extends Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override public @Nullable Node item(int index) {
+            return index >= 0 && index < nodes.size() ? nodes.get(index) : null;
+        }
+
+        @Override public int getLength() {
+            return nodes.size();
+        }
+    }
+
+    /** A read-only W3C named node map over a snapshot of view nodes. */
+    static final class ViewNamedNodeMap implements NamedNodeMap {
+        static final ViewNamedNodeMap Empty = new ViewNamedNodeMap(Collections.<ViewNode>emptyList());
+        private final List<? extends ViewNode> nodes;
+
+        ViewNamedNodeMap(List<? extends ViewNode> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override public @Nullable Node getNamedItem(String name) {
+            for (ViewNode node : nodes) {
+                if (node.getNodeName().equals(name))
+                    return node;
+            }
+            return null;
+        }
+
+        @Override public @Nullable Node getNamedItemNS(@Nullable String namespaceURI, String localName) {
+            for (ViewNode node : nodes) {
+                if (eq(emptyToNull(namespaceURI), node.getNamespaceURI()) &&
+                    localName.equals(node.getLocalName()))
+                    return node;
+            }
+            return null;
+        }
+
+        @Override public @Nullable Node item(int index) {
+            return index >= 0 && index < nodes.size() ? nodes.get(index) : null;
+        }
+
+        @Override public int getLength() {
+            return nodes.size();
+        }
+
+        @Override public Node setNamedItem(Node arg) {
+            throw readOnly();
+        }
+
+        @Override public Node removeNamedItem(String name) {
+            throw readOnly();
+        }
+
+        @Override public Node setNamedItemNS(Node arg) {
+            throw readOnly();
+        }
+
+        @Override public Node removeNamedItemNS(String namespaceURI, String localName) {
+            throw readOnly();
+        }
+    }
+
+    static @Nullable String emptyToNull(@Nullable String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+
+    static boolean eq(@Nullable Object a, @Nullable Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** The base of the view nodes. Implements navigation in terms of the subclasses' parent and children. */
+    abstract static class ViewNode implements Node {
+        final ViewDocument doc;
+        @Nullable private HashMap<String, Object> userData;
+
+        ViewNode(@Nullable ViewDocument doc) {
+            this.doc = doc != null ? doc : (ViewDocument) this;
+        }
+
+        /** The jsoup node this wraps, if any. */
+        @Nullable org.jsoup.nodes.Node source() {
+            return null;
+        }
+
+        /** The view's children of this node. */
+        List<? extends Node> children() {
+            return Collections.emptyList();
+        }
+
+        @Override public @Nullable String getNodeValue() {
+            return null;
+        }
+
+        @Override public void setNodeValue(String nodeValue) {
+            throw readOnly();
+        }
+
+        @Override public NodeList getChildNodes() {
+            List<? extends Node> children = children();
+            return children.isEmpty() ? ViewNodeList.Empty : new ViewNodeList(children);
+        }
+
+        @Override public @Nullable Node getFirstChild() {
+            List<? extends Node> children = children();
+            return children.isEmpty() ? null : children.get(0);
+        }
+
+        @Override public @Nullable Node getLastChild() {
+            List<? extends Node> children = children();
+            return children.isEmpty() ? null : children.get(children.size() - 1);
+        }
+
+        @Override public @Nullable Node getPreviousSibling() {
+            return null;
+        }
+
+        @Override public @Nullable Node getNextSibling() {
+            return null;
+        }
+
+        @Override public @Nullable NamedNodeMap getAttributes() {
+            return null;
+        }
+
+        @Override public Document getOwnerDocument() {
+            return doc;
+        }
+
+        @Override public boolean hasChildNodes() {
+            return !children().isEmpty();
+        }
+
+        @Override public boolean hasAttributes() {
+            return false;
+        }
+
+        @Override public Node insertBefore(Node newChild, Node refChild) {
+            throw readOnly();
+        }
+
+        @Override public Node replaceChild(Node newChild, Node oldChild) {
+            throw readOnly();
+        }
+
+        @Override public Node removeChild(Node oldChild) {
+            throw readOnly();
+        }
+
+        @Override public Node appendChild(Node newChild) {
+            throw readOnly();
+        }
+
+        @Override public Node cloneNode(boolean deep) {
+            throw new DOMException(DOMException.NOT_SUPPORTED_ERR,
+                "Can't clone nodes of a W3C view; clone the jsoup nodes instead");
+        }
+
+        @Override public void normalize() {
+            throw readOnly();
+        }
+
+        @Override public boolean isSupported(String feature, String version) {
+            return false;
+        }
+
+        @Override public @Nullable String getNamespaceURI() {
+            return null;
+        }
+
+        @Override public @Nullable String getPrefix() {
+            return null;
+        }
+
+        @Override public void setPrefix(String prefix) {
+            throw readOnly();
+        }
+
+        @Override public @Nullable String getLocalName() {
+            return null;
+        }
+
+        @Override public @Nullable String getBaseURI() {
+            return doc.getDocumentURI();
+        }
+
+        @Override public @Nullable String getTextContent() {
+            return getNodeValue();
+        }
+
+        @Override public void setTextContent(String textContent) {
+            throw readOnly();
+        }
+
+        @Override public boolean isSameNode(Node other) {
+            return this == other;
+        }
+
+        /** The element used to resolve namespaces for this node, if any. */
+        @Nullable ViewElement namespaceContext() {
+            Node parent = getParentNode();
+            return parent instanceof ViewElement ? (ViewElement) parent : null;
+        }
+
+        @Override public @Nullable String lookupPrefix(@Nullable String namespaceURI) {
+            ViewElement el = namespaceContext();
+            return el != null ? el.lookupPrefix(namespaceURI) : null;
+        }
+
+        @Override public boolean isDefaultNamespace(@Nullable String namespaceURI) {
+            ViewElement el = namespaceContext();
+            return el != null && el.isDefaultNamespace(namespaceURI);
+        }
+
+        @Override public @Nullable String lookupNamespaceURI(@Nullable String prefix) {
+            ViewElement el = namespaceContext();
+            return el != null ? el.lookupNamespaceURI(prefix) : null;
+        }
+
+        @Override public boolean isEqualNode(@Nullable Node other) {
+            if (other == this)
+                return true;
+            if (other == null || other.getNodeType() != getNodeType()
+                || !eq(getNodeName(), other.getNodeName())
+                || !eq(getLocalName(), other.getLocalName())
+                || !eq(getNamespaceURI(), other.getNamespaceURI())
+                || !eq(getPrefix(), other.getPrefix())
+                || !eq(getNodeValue(), other.getNodeValue()))
+                return false;
+            NamedNodeMap attrs = getAttributes(), otherAttrs = other.getAttributes();
+            if (attrs != null && otherAttrs != null) {
+                if (attrs.getLength() != otherAttrs.getLength())
+                    return false;
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    Node attr = attrs.item(i);
+                    Node otherAttr = attr.getLocalName() != null ?
+                        otherAttrs.getNamedItemNS(attr.getNamespaceURI(), attr.getLocalName()) :
+                        otherAttrs.getNamedItem(attr.getNodeName());
+                    if (otherAttr == null || !attr.isEqualNode(otherAttr))
+                        return false;
+                }
+            } else if (attrs != otherAttrs) {
+                return false;
+            }
+            NodeList children = getChildNodes(), otherChildren = other.getChildNodes();
+            if (children.getLength() != otherChildren.getLength())
+                return false;
+            for (int i = 0; i < children.getLength(); i++) {
+                if (!children.item(i).isEqualNode(otherChildren.item(i)))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override public short compareDocumentPosition(Node other) {
+            if (other == this)
+                return 0;
+            if (!(other instanceof ViewNode) || ((ViewNode) other).doc != doc) {
+                return (short) (DOCUMENT_POSITION_DISCONNECTED | DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC |
+                    (System.identityHashCode(this) < System.identityHashCode(other) ?
+                        DOCUMENT_POSITION_FOLLOWING : DOCUMENT_POSITION_PRECEDING));
+            }
+            List<ViewNode> chain = chain(), otherChain = ((ViewNode) other).chain();
+            int i = 0;
+            while (i < chain.size() && i < otherChain.size() && chain.get(i) == otherChain.get(i))
+                i++;
+            if (i == chain.size()) // this is an ancestor of other
+                return (short) (DOCUMENT_POSITION_CONTAINED_BY | DOCUMENT_POSITION_FOLLOWING);
+            if (i == otherChain.size())
+                return (short) (DOCUMENT_POSITION_CONTAINS | DOCUMENT_POSITION_PRECEDING);
+            return chain.get(i).order() < otherChain.get(i).order() ?
+                DOCUMENT_POSITION_FOLLOWING : DOCUMENT_POSITION_PRECEDING;
+        }
+
+        /** This node and its ancestors, from the document down. */
+        private List<ViewNode> chain() {
+            List<ViewNode> chain = new ArrayList<>();
+            for (Node node = this; node != null; node = node instanceof Attr ?
+                ((Attr) node).getOwnerElement() : node.getParentNode())
+                chain.add((ViewNode) node);
+            Collections.reverse(chain);
+            return chain;
+        }
+
+        /** The order of this node among its siblings (attributes precede children). */
+        long order() {
+            org.jsoup.nodes.Node source = source();
+            if (source == null)
+                return 0; // the document
+            return source == doc.root ? Long.MIN_VALUE + 1 : source.siblingIndex();
+        }
+
+        @Override public @Nullable Object getFeature(String feature, String version) {
+            return null;
+        }
+
+        @Override public @Nullable Object setUserData(String key, @Nullable Object data, @Nullable UserDataHandler handler) {
+            if (userData == null)
+                userData = new HashMap<>();
+            Object previous = getUserData(key);
+            userData.put(key, data);
+            return previous;
+        }
+
+        boolean hasUserData(String key) {
+            return userData != null && userData.containsKey(key);
+        }
+
+        @Override public @Nullable Object getUserData(String key) {
+            if (hasUserData(key))
+                return userData.get(key);
+            return W3CDom.SourceProperty.equals(key) ? source() : null;
+        }
+    }
+
+    /** A view of a node in the jsoup tree: an element, text, data, or comment. */
+    abstract static class ViewChild extends ViewNode {
+        final org.jsoup.nodes.Node source;
+
+        ViewChild(ViewDocument doc, org.jsoup.nodes.Node source) {
+            super(doc);
+            this.source = source;
+        }
+
+        @Override org.jsoup.nodes.Node source() {
+            return source;
+        }
+
+        @Override public @Nullable Node getParentNode() {
+            if (source == doc.root)
+                return doc;
+            return doc.view(source.parentNode());
+        }
+
+        @Override public @Nullable Node getPreviousSibling() {
+            if (source == doc.root)
+                return doc.getDoctype();
+            for (org.jsoup.nodes.Node node = source.previousSibling(); node != null; node = node.previousSibling()) {
+                if (isVisible(node))
+                    return doc.view(node);
+            }
+            return null;
+        }
+
+        @Override public @Nullable Node getNextSibling() {
+            if (source == doc.root)
+                return null;
+            for (org.jsoup.nodes.Node node = source.nextSibling(); node != null; node = node.nextSibling()) {
+                if (isVisible(node))
+                    return doc.view(node);
+            }
+            return null;
+        }
+    }
+
+    static final class ViewDocument extends ViewNode implements Document {
+        @Nullable final org.jsoup.nodes.Document inDoc;
+        @Nullable final org.jsoup.nodes.Element root; // the document element
+        @Nullable final org.jsoup.nodes.Element context;
+        final boolean namespaceAware;
+        final boolean htmlDefaultNs;
+        final Syntax syntax;
+        private final DocumentBuilderFactory factory;
+        private final IdentityHashMap<org.jsoup.nodes.Node, ViewChild> views = new IdentityHashMap<>();
+        @Nullable private ViewDocumentType doctype;
+        @Nullable private DOMImplementation implementation;
+
+        ViewDocument(org.jsoup.nodes.Element in, boolean namespaceAware, DocumentBuilderFactory factory) {
+            super(null);
+            this.inDoc = in.ownerDocument();
+            this.namespaceAware = namespaceAware;
+            this.factory = factory;
+            root = inDoc != null ? inDoc.firstElementChild() : in;
+            context = in instanceof org.jsoup.nodes.Document ? root : in;
+            syntax = inDoc != null ? inDoc.outputSettings().syntax() : Syntax.xml;
+            // as per the WHATWG HTML5 spec section 2.1.3, elements are in the HTML namespace by default
+            htmlDefaultNs = namespaceAware && inDoc != null && inDoc.parser().getTreeBuilder() instanceof HtmlTreeBuilder;
+            if (inDoc != null && inDoc.documentType() != null)
+                doctype = new ViewDocumentType(this, inDoc.documentType());
+        }
+
+        /** Get the view of the jsoup node, wrapping it if not yet seen. */
+        @Nullable ViewChild view(@Nullable org.jsoup.nodes.Node node) {
+            if (node == null || !isVisible(node))
+                return null;
+            ViewChild view = views.get(node);
+            if (view == null) {
+                if (node instanceof org.jsoup.nodes.Element)
+                    view = new ViewElement(this, (org.jsoup.nodes.Element) node);
+                else if (node instanceof org.jsoup.nodes.Comment)
+                    view = new ViewComment(this, (org.jsoup.nodes.Comment) node);
+                else
+                    view = new ViewText(this, node);
+                views.put(node, view);
+            }
+            return view;
+        }
+
+        @Override public String getNodeName() {
+            return "#document";
+        }
+
+        @Override public short getNodeType() {
+            return DOCUMENT_NODE;
+        }
+
+        @Override public @Nullable Node getParentNode() {
+            return null;
+        }
+
+        @Override List<Node> children() {
+            List<Node> children = new ArrayList<>(2);
+            if (doctype != null)
+                children.add(doctype);
+            Element documentElement = getDocumentElement();
+            if (documentElement != null)
+                children.add(documentElement);
+            return children;
+        }
+
+        @Override public @Nullable Document getOwnerDocument() {
+            return null;
+        }
+
+        @Override public @Nullable String getTextContent() {
+            return null;
+        }
+
+        @Override @Nullable ViewElement namespaceContext() {
+            return getDocumentElement();
+        }
+
+        @Override public @Nullable Object getUserData(String key) {
+            if (W3CDom.ContextNodeProperty.equals(key) && !hasUserData(key))
+                return view(context);
+            return super.getUserData(key);
+        }
+
+        @Override public @Nullable DocumentType getDoctype() {
+            return doctype;
+        }
+
+        @Override public DOMImplementation getImplementation() {
+            if (implementation == null) {
+                try {
+                    implementation = factory.newDocumentBuilder().getDOMImplementation();
+                } catch (ParserConfigurationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return implementation;
+        }
+
+        @Override public @Nullable ViewElement getDocumentElement() {
+            return (ViewElement) view(root);
+        }
+
+        @Override public NodeList getElementsByTagName(String tagname) {
+            ViewElement documentElement = getDocumentElement();
+            return documentElement != null ? documentElement.elementsByTagName(tagname, true) : ViewNodeList.Empty;
+        }
+
+        @Override public NodeList getElementsByTagNameNS(@Nullable String namespaceURI, String localName) {
+            ViewElement documentElement = getDocumentElement();
+            return documentElement != null ?
+                documentElement.elementsByTagNameNS(namespaceURI, localName, true) : ViewNodeList.Empty;
+        }
+
+        @Override public @Nullable Element getElementById(String elementId) {
+            return root != null ? (Element) view(root.getElementById(elementId)) : null;
+        }
+
+        @Override public @Nullable String getInputEncoding() {
+            return inDoc != null ? inDoc.charset().name() : null;
+        }
+
+        @Override public @Nullable String getXmlEncoding() {
+            return null;
+        }
+
+        @Override public boolean getXmlStandalone() {
+            return true;
+        }
+
+        @Override public String getXmlVersion() {
+            return "1.0";
+        }
+
+        @Override public boolean getStrictErrorChecking() {
+            return true;
+        }
+
+        @Override public void setStrictErrorChecking(boolean strictErrorChecking) {
+            // no-op, as there are no modifications to check
+        }
+
+        @Override public @Nullable String getDocumentURI() {
+            return inDoc != null ? emptyToNull(inDoc.location()) : null;
+        }
+
+        @Override public @Nullable DOMConfiguration getDomConfig() {
+            return null;
+        }
+
+        @Override public void setXmlStandalone(boolean xmlStandalone) {
+            throw readOnly();
+        }
+
+        @Override public void setXmlVersion(String xmlVersion) {
+            throw readOnly();
+        }
+
+        @Override public void setDocumentURI(String documentURI) {
+            throw readOnly();
+        }
+
+        @Override public Element createElement(String tagName) {
+            throw readOnly();
+        }
+
+        @Override public DocumentFragment createDocumentFragment() {
+            throw readOnly();
+        }
+
+        @Override public Text createTextNode(String data) {
+            throw readOnly();
+        }
+
+        @Override public Comment createComment(String data) {
+            throw readOnly();
+        }
+
+        @Override public CDATASection createCDATASection(String data) {
+            throw readOnly();
+        }
+
+        @Override public ProcessingInstruction createProcessingInstruction(String target, String data) {
+            throw readOnly();
+        }
+
+        @Override public Attr createAttribute(String name) {
+            throw readOnly();
+        }
+
+        @Override public EntityReference createEntityReference(String name) {
+            throw readOnly();
+        }
+
+        @Override public Node importNode(Node importedNode, boolean deep) {
+            throw readOnly();
+        }
+
+        @Override public Element createElementNS(String namespaceURI, String qualifiedName) {
+            throw readOnly();
+        }
+
+        @Override public Attr createAttributeNS(String namespaceURI, String qualifiedName) {
+            throw readOnly();
+        }
+
+        @Override public Node adoptNode(Node source) {
+            throw readOnly();
+        }
+
+        @Override public void normalizeDocument() {
+            throw readOnly();
+        }
+
+        @Override public Node renameNode(Node n, String namespaceURI, String qualifiedName) {
+            throw readOnly();
+        }
+    }
+
+    static final class ViewElement extends ViewChild implements Element {
+        final org.jsoup.nodes.Element el;
+        private final HashMap<String, ViewAttr> attrViews = new HashMap<>(); // by name, so attributes keep their identity
+
+        ViewElement(ViewDocument doc, org.jsoup.nodes.Element el) {
+            super(doc, el);
+            this.el = el;
+        }
+
+        @Override public String getNodeName() {
+            return el.tagName();
+        }
+
+        @Override public short getNodeType() {
+            return ELEMENT_NODE;
+        }
+
+        @Override public String getTagName() {
+            return el.tagName();
+        }
+
+        @Override List<Node> children() {
+            List<Node> children = new ArrayList<>(el.childNodeSize());
+            for (org.jsoup.nodes.Node child : el.childNodes()) {
+                Node view = doc.view(child);
+                if (view != null)
+                    children.add(view);
+            }
+            return children;
+        }
+
+        @Override public @Nullable Node getFirstChild() {
+            for (org.jsoup.nodes.Node child = el.firstChild(); child != null; child = child.nextSibling()) {
+                if (isVisible(child))
+                    return doc.view(child);
+            }
+            return null;
+        }
+
+        @Override public @Nullable Node getLastChild() {
+            for (org.jsoup.nodes.Node child = el.lastChild(); child != null; child = child.previousSibling()) {
+                if (isVisible(child))
+                    return doc.view(child);
+            }
+            return null;
+        }
+
+        @Override public boolean hasChildNodes() {
+            return getFirstChild() != null;
+        }
+
+        @Override @Nullable ViewElement namespaceContext() {
+            return this;
+        }
+
+        @Override public @Nullable String getNamespaceURI() {
+            if (!doc.namespaceAware)
+                return null;
+            return lookupNamespaceURI(prefix(el.tagName()));
+        }
+
+        @Override public @Nullable String getPrefix() {
+            return prefix(el.tagName());
+        }
+
+        @Override public String getLocalName() {
+            return localName(el.tagName());
+        }
+
+        @Override public String getTextContent() {
+            final StringBuilder accum = new StringBuilder();
+            NodeTraversor.traverse((node, depth) -> {
+                if (node instanceof org.jsoup.nodes.TextNode)
+                    accum.append(((org.jsoup.nodes.TextNode) node).getWholeText());
+                else if (node instanceof org.jsoup.nodes.DataNode)
+                    accum.append(((org.jsoup.nodes.DataNode) node).getWholeData());
+            }, el);
+            return accum.toString();
+        }
+
+        /** The attributes, with their keys coerced to the document's syntax. */
+        List<ViewAttr> attrs() {
+            if (el.attributesSize() == 0)
+                return Collections.emptyList();
+            List<ViewAttr> attrs = new ArrayList<>(el.attributesSize());
+            for (Attribute attribute : el.attributes()) {
+                String key = Attribute.getValidKey(attribute.getKey(), doc.syntax);
+                if (key == null) // couldn't be coerced to validity
+                    continue;
+                ViewAttr attr = attrViews.get(key);
+                if (attr == null || !attr.key.equals(attribute.getKey())) {
+                    attr = new ViewAttr(this, key, attribute.getKey());
+                    attrViews.put(key, attr);
+                }
+                attrs.add(attr);
+            }
+            return attrs;
+        }
+
+        @Override public NamedNodeMap getAttributes() {
+            List<ViewAttr> attrs = attrs();
+            return attrs.isEmpty() ? ViewNamedNodeMap.Empty : new ViewNamedNodeMap(attrs);
+        }
+
+        @Override public boolean hasAttributes() {
+            return !attrs().isEmpty();
+        }
+
+        @Override public String getAttribute(String name) {
+            Attr attr = getAttributeNode(name);
+            return attr != null ? attr.getValue() : "";
+        }
+
+        @Override public @Nullable Attr getAttributeNode(String name) {
+            for (ViewAttr attr : attrs()) {
+                if (attr.name.equals(name))
+                    return attr;
+            }
+            return null;
+        }
+
+        @Override public boolean hasAttribute(String name) {
+            return getAttributeNode(name) != null;
+        }
+
+        @Override public String getAttributeNS(@Nullable String namespaceURI, String localName) {
+            Attr attr = getAttributeNodeNS(namespaceURI, localName);
+            return attr != null ? attr.getValue() : "";
+        }
+
+        @Override public @Nullable Attr getAttributeNodeNS(@Nullable String namespaceURI, String localName) {
+            return (Attr) getAttributes().getNamedItemNS(namespaceURI, localName);
+        }
+
+        @Override public boolean hasAttributeNS(@Nullable String namespaceURI, String localName) {
+            return getAttributeNodeNS(namespaceURI, localName) != null;
+        }
+
+        @Override public NodeList getElementsByTagName(String name) {
+            return elementsByTagName(name, false);
+        }
+
+        NodeList elementsByTagName(final String name, final boolean includeSelf) {
+            final List<Node> found = new ArrayList<>();
+            NodeTraversor.traverse((node, depth) -> {
+                if (node instanceof org.jsoup.nodes.Element && (includeSelf || node != el) &&
+                    (name.equals("*") || ((org.jsoup.nodes.Element) node).tagName().equals(name)))
+                    found.add(doc.view(node));
+            }, el);
+            return new ViewNodeList(found);
+        }
+
+        @Override public NodeList getElementsByTagNameNS(@Nullable String namespaceURI, String localName) {
+            return elementsByTagNameNS(namespaceURI, localName, false);
+        }
+
+        NodeList elementsByTagNameNS(@Nullable final String namespaceURI, final String localName, final boolean includeSelf) {
+            final List<Node> found = new ArrayList<>();
+            NodeTraversor.traverse((node, depth) -> {
+                if (!(node instanceof org.jsoup.nodes.Element) || (!includeSelf && node == el))
+                    return;
+                ViewElement view = (ViewElement) doc.view(node);
+                if ((localName.equals("*") || localName.equals(view.getLocalName())) &&
+                    ("*".equals(namespaceURI) || eq(emptyToNull(namespaceURI), view.getNamespaceURI())))
+                    found.add(view);
+            }, el);
+            return new ViewNodeList(found);
+        }
+
+        /** Find the namespace declared for the prefix (or the default namespace if null) on this or an ancestor. */
+        @Override public @Nullable String lookupNamespaceURI(@Nullable String prefix) {
+            if ("xml".equals(prefix))
+                return XmlNs;
+            if ("xmlns".equals(prefix))
+                return XmlnsNs;
+            String key = prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix;
+            for (org.jsoup.nodes.Element cur = el; cur != null; cur = cur == doc.root ? null : cur.parent()) {
+                if (cur.hasAttr(key))
+                    return emptyToNull(cur.attr(key));
+            }
+            return prefix == null || prefix.isEmpty() ? (doc.htmlDefaultNs ? XhtmlNs : null) : null;
+        }
+
+        @Override public @Nullable String lookupPrefix(@Nullable String namespaceURI) {
+            if (namespaceURI == null || namespaceURI.isEmpty())
+                return null;
+            for (org.jsoup.nodes.Element cur = el; cur != null; cur = cur == doc.root ? null : cur.parent()) {
+                for (Attribute attribute : cur.attributes()) {
+                    String key = attribute.getKey();
+                    if (key.startsWith("xmlns:") && namespaceURI.equals(attribute.getValue())) {
+                        String prefix = key.substring("xmlns:".length());
+                        if (namespaceURI.equals(lookupNamespaceURI(prefix))) // not redeclared below
+                            return prefix;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override public boolean isDefaultNamespace(@Nullable String namespaceURI) {
+            return eq(emptyToNull(namespaceURI), lookupNamespaceURI(null));
+        }
+
+        @Override public @Nullable TypeInfo getSchemaTypeInfo() {
+            return null;
+        }
+
+        @Override public void setAttribute(String name, String value) {
+            throw readOnly();
+        }
+
+        @Override public void removeAttribute(String name) {
+            throw readOnly();
+        }
+
+        @Override public Attr setAttributeNode(Attr newAttr) {
+            throw readOnly();
+        }
+
+        @Override public Attr removeAttributeNode(Attr oldAttr) {
+            throw readOnly();
+        }
+
+        @Override public void setAttributeNS(String namespaceURI, String qualifiedName, String value) {
+            throw readOnly();
+        }
+
+        @Override public void removeAttributeNS(String namespaceURI, String localName) {
+            throw readOnly();
+        }
+
+        @Override public Attr setAttributeNodeNS(Attr newAttr) {
+            throw readOnly();
+        }
+
+        @Override public void setIdAttribute(String name, boolean isId) {
+            throw readOnly();
+        }
+
+        @Override public void setIdAttributeNS(String namespaceURI, String localName, boolean isId) {
+            throw readOnly();
+        }
+
+        @Override public void setIdAttributeNode(Attr idAttr, boolean isId) {
+            throw readOnly();
+        }
+    }
+
+    static final class ViewAttr extends ViewNode implements Attr {
+        private final ViewElement owner;
+        final String name; // the key, coerced to the document's syntax
+        final String key; // the key in the jsoup attributes
+
+        ViewAttr(ViewElement owner, String name, String key) {
+            super(owner.doc);
+            this.owner = owner;
+            this.name = name;
+            this.key = key;
+        }
+
+        @Override public String getNodeName() {
+            return name;
+        }
+
+        @Override public short getNodeType() {
+            return ATTRIBUTE_NODE;
+        }
+
+        @Override public String getName() {
+            return name;
+        }
+
+        @Override public String getValue() {
+            return owner.el.attr(key);
+        }
+
+        @Override public String getNodeValue() {
+            return getValue();
+        }
+
+        @Override public @Nullable Node getParentNode() {
+            return null; // attributes aren't children
+        }
+
+        @Override public Element getOwnerElement() {
+            return owner;
+        }
+
+        @Override @Nullable ViewElement namespaceContext() {
+            return owner;
+        }
+
+        @Override public @Nullable String getNamespaceURI() {
+            if (!doc.namespaceAware)
+                return null;
+            if (name.equals("xmlns"))
+                return XmlnsNs;
+            String prefix = prefix(name);
+            return prefix != null ? owner.lookupNamespaceURI(prefix) : null; // unprefixed attributes have no namespace
+        }
+
+        @Override public @Nullable String getPrefix() {
+            return prefix(name);
+        }
+
+        @Override public String getLocalName() {
+            return localName(name);
+        }
+
+        @Override long order() {
+            return Long.MIN_VALUE + 2 + owner.attrs().indexOf(this); // before the owner's children
+        }
+
+        @Override public boolean getSpecified() {
+            return true;
+        }
+
+        @Override public boolean isId() {
+            return false;
+        }
+
+        @Override public @Nullable TypeInfo getSchemaTypeInfo() {
+            return null;
+        }
+
+        @Override public void setValue(String value) {
+            throw readOnly();
+        }
+    }
+
+    /** Shared by text and comments. */
+    abstract static class ViewCharacterData extends ViewChild implements org.w3c.dom.CharacterData {
+        ViewCharacterData(ViewDocument doc, org.jsoup.nodes.Node source) {
+            super(doc, source);
+        }
+
+        @Override public String getNodeValue() {
+            return getData();
+        }
+
+        @Override public int getLength() {
+            return getData().length();
+        }
+
+        @Override public String substringData(int offset, int count) {
+            String data = getData();
+            if (offset < 0 || count < 0 || offset > data.length())
+                throw new DOMException(DOMException.INDEX_SIZE_ERR, "Offset or count out of range");
+            return data.substring(offset, Math.min(data.length(), offset + count));
+        }
+
+        @Override public void setData(String data) {
+            throw readOnly();
+        }
+
+        @Override public void appendData(String arg) {
+            throw readOnly();
+        }
+
+        @Override public void insertData(int offset, String arg) {
+            throw readOnly();
+        }
+
+        @Override public void deleteData(int offset, int count) {
+            throw readOnly();
+        }
+
+        @Override public void replaceData(int offset, int count, String arg) {
+            throw readOnly();
+        }
+    }
+
+    /** A view of a jsoup TextNode or DataNode. */
+    static final class ViewText extends ViewCharacterData implements Text {
+        ViewText(ViewDocument doc, org.jsoup.nodes.Node source) {
+            super(doc, source);
+        }
+
+        @Override public String getNodeName() {
+            return "#text";
+        }
+
+        @Override public short getNodeType() {
+            return TEXT_NODE;
+        }
+
+        @Override public String getData() {
+            return source instanceof org.jsoup.nodes.TextNode ?
+                ((org.jsoup.nodes.TextNode) source).getWholeText() : ((org.jsoup.nodes.DataNode) source).getWholeData();
+        }
+
+        @Override public boolean isElementContentWhitespace() {
+            return false;
+        }
+
+        @Override public String getWholeText() {
+            Node first = this;
+            while (first.getPreviousSibling() instanceof Text)
+                first = first.getPreviousSibling();
+            StringBuilder sb = new StringBuilder();
+            for (Node node = first; node instanceof Text; node = node.getNextSibling())
+                sb.append(((Text) node).getData());
+            return sb.toString();
+        }
+
+        @Override public Text splitText(int offset) {
+            throw readOnly();
+        }
+
+        @Override public Text replaceWholeText(String content) {
+            throw readOnly();
+        }
+    }
+
+    static final class ViewComment extends ViewCharacterData implements Comment {
+        ViewComment(ViewDocument doc, org.jsoup.nodes.Comment source) {
+            super(doc, source);
+        }
+
+        @Override public String getNodeName() {
+            return "#comment";
+        }
+
+        @Override public short getNodeType() {
+            return COMMENT_NODE;
+        }
+
+        @Override public String getData() {
+            return ((org.jsoup.nodes.Comment) source).getData();
+        }
+    }
+
+    static final class ViewDocumentType extends ViewNode implements DocumentType {
+        private final org.jsoup.nodes.DocumentType doctype;
+
+        ViewDocumentType(ViewDocument doc, org.jsoup.nodes.DocumentType doctype) {
+            super(doc);
+            this.doctype = doctype;
+        }
+
+        @Override org.jsoup.nodes.Node source() {
+            return doctype;
+        }
+
+        @Override long order() {
+            return Long.MIN_VALUE;
+        }
+
+        @Override public String getNodeName() {
+            return doctype.name();
+        }
+
+        @Override public short getNodeType() {
+            return DOCUMENT_TYPE_NODE;
+        }
+
+        @Override public Node getParentNode() {
+            return doc;
+        }
+
+        @Override public @Nullable Node getNextSibling() {
+            return doc.getDocumentElement();
+        }
+
+        @Override public String getName() {
+            return doctype.name();
+        }
+
+        @Override public NamedNodeMap getEntities() {
+            return ViewNamedNodeMap.Empty;
+        }
+
+        @Override public NamedNodeMap getNotations() {
+            return ViewNamedNodeMap.Empty;
+        }
+
+        @Override public String getPublicId() {
+            return doctype.publicId();
+        }
+
+        @Override public String getSystemId() {
+            return doctype.systemId();
+        }
+
+        @Override public @Nullable String getInternalSubset() {
+            return null;
+        }
+    }
+}
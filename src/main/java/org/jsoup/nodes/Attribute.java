@@ -71,8 +71,11 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
         Validate.notEmpty(key); // trimming could potentially make empty, so validate here
         if (parent != null) {
             int i = parent.indexOfKey(this.key);
-            if (i != Attributes.NotFound)
+            if (i != Attributes.NotFound) {
                 parent.keys[i] = key;
+                parent.changed(this.key);
+                parent.changed(key);
+            }
         }
         this.key = key;
     }
@@ -106,6 +109,7 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
             if (i != Attributes.NotFound) {
                 oldVal = parent.get(this.key); // trust the container more
                 parent.vals[i] = val;
+                parent.changed(this.key);
             }
         }
         this.val = val;
@@ -50,6 +50,7 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
     private int size = 0; // number of slots used (not total capacity, which is keys.length)
     String[] keys = new String[InitialCapacity];
     Object[] vals = new Object[InitialCapacity]; // Genericish: all non-internal attribute values must be Strings and are cast on access.
+    @Nullable TreeChanges changes; // of the indexed tree that these attributes' element is in; counts id and class changes
 
     // check there's room for more
     private void checkCapacity(int minNewSize) {
@@ -137,6 +138,13 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
         keys[size] = key;
         vals[size] = value;
         size++;
+        changed(key);
+    }
+
+    /** Counts a change to an indexed attribute, for the element index. */
+    void changed(String key) {
+        if (changes != null && (key.equalsIgnoreCase("id") || key.equalsIgnoreCase("class")))
+            changes.names++;
     }
 
     /**
@@ -148,8 +156,10 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
     public Attributes put(String key, @Nullable String value) {
         Validate.notNull(key);
         int i = indexOfKey(key);
-        if (i != NotFound)
+        if (i != NotFound) {
             vals[i] = value;
+            changed(key);
+        }
         else
             add(key, value);
         return this;
@@ -180,6 +190,7 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
             vals[i] = value;
             if (!keys[i].equals(key)) // case changed, update
                 keys[i] = key;
+            changed(key);
         }
         else
             add(key, value);
@@ -215,6 +226,7 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
     @SuppressWarnings("AssignmentToNull")
     private void remove(int index) {
         Validate.isFalse(index >= size);
+        String key = keys[index];
         int shifted = size - index - 1;
         if (shifted > 0) {
             System.arraycopy(keys, index + 1, keys, index, shifted);
@@ -223,6 +235,7 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
         size--;
         keys[size] = null; // release hold
         vals[size] = null;
+        changed(key);
     }
 
     /**
@@ -454,6 +467,7 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
         clone.size = size;
         clone.keys = Arrays.copyOf(keys, size);
         clone.vals = Arrays.copyOf(vals, size);
+        clone.changes = null; // the clone is not in the indexed tree
         return clone;
     }
 
@@ -462,7 +476,11 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
      */
     public void normalize() {
         for (int i = 0; i < size; i++) {
-            keys[i] = lowerCase(keys[i]);
+            String key = lowerCase(keys[i]);
+            if (!key.equals(keys[i])) {
+                keys[i] = key;
+                changed(key);
+            }
         }
     }
 
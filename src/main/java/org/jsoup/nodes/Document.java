@@ -29,6 +29,8 @@ public class Document extends Element {
     private QuirksMode quirksMode = QuirksMode.noQuirks;
     private final String location;
     private boolean updateMetaCharset = false;
+    private boolean indexElements = false;
+    private @Nullable ElementIndex index; // built on first use, if indexElements
 
     /**
      Create a new, empty Document.
@@ -297,10 +299,50 @@ public class Document extends Element {
         return updateMetaCharset;
     }
 
+    /**
+     Sets whether selections on this document should use an {@link ElementIndex} of its elements by id, tag name, and
+     class name. The index is built on first use, and is discarded whenever the document's elements (or their ids or class
+     names) change, so is best suited to documents that are queried repeatedly between changes. Disabled by default.
+     @param indexElements {@code true} to use an element index
+     @return this document, for chaining
+     */
+    public Document indexElements(boolean indexElements) {
+        this.indexElements = indexElements;
+        if (!indexElements)
+            index = null;
+        return this;
+    }
+
+    /**
+     Tests if selections on this document use an element index.
+     @return {@code true} if the element index is enabled
+     @see #indexElements(boolean)
+     */
+    public boolean indexElements() {
+        return indexElements;
+    }
+
+    /**
+     Get the element index of this document, building it if it is enabled but not current.
+     @return the element index, or {@code null} if not enabled
+     @see #indexElements(boolean)
+     */
+    public @Nullable ElementIndex elementIndex() {
+        if (!indexElements)
+            return null;
+        ElementIndex current = index;
+        if (current == null || current.isStale()) {
+            current = new ElementIndex(this);
+            index = current;
+        }
+        return current;
+    }
+
     @Override
     public Document clone() {
         Document clone = (Document) super.clone();
         clone.outputSettings = this.outputSettings.clone();
+        clone.index = null;
         return clone;
     }
 
@@ -310,6 +352,7 @@ public class Document extends Element {
         if (attributes != null)
             clone.attributes = attributes.clone();
         clone.outputSettings = this.outputSettings.clone();
+        clone.indexElements = indexElements;
         return clone;
     }
     
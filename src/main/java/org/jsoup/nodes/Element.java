@@ -9,6 +9,7 @@ import org.jsoup.parser.Tag;
 import org.jsoup.select.Collector;
 import org.jsoup.select.Elements;
 import org.jsoup.select.Evaluator;
+import org.jsoup.select.EvaluatorCache;
 import org.jsoup.select.NodeFilter;
 import org.jsoup.select.NodeTraversor;
 import org.jsoup.select.NodeVisitor;
@@ -22,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +32,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.stream.Stream;
 
 import static org.jsoup.internal.Normalizer.normalize;
 import static org.jsoup.nodes.TextNode.lastCharIsWhitespace;
@@ -46,9 +49,10 @@ public class Element extends Node {
     private static final Pattern ClassSplit = Pattern.compile("\\s+");
     private static final String BaseUriKey = Attributes.internalKey("baseUri");
     private Tag tag;
-    private @Nullable WeakReference<List<Element>> shadowChildrenRef; // points to child elements shadowed from node children
+    private @Nullable WeakReference<ChildElements> shadowChildrenRef; // points to child elements shadowed from node children
     List<Node> childNodes;
     @Nullable Attributes attributes; // field is nullable but all methods for attributes are non-null
+    @Nullable TreeChanges changes; // of the indexed or numbered tree this element is in, if any; counts its changes
 
     /**
      * Create a new, standalone element.
@@ -108,8 +112,10 @@ public class Element extends Node {
 
     @Override
     public Attributes attributes() {
-        if (attributes == null) // not using hasAttributes, as doesn't clear warning
+        if (attributes == null) { // not using hasAttributes, as doesn't clear warning
             attributes = new Attributes();
+            attributes.changes = changes;
+        }
         return attributes;
     }
 
@@ -174,6 +180,12 @@ public class Element extends Node {
     public Element tagName(String tagName) {
         Validate.notEmptyParam(tagName, "tagName");
         tag = Tag.valueOf(tagName, NodeUtils.parser(this).settings()); // maintains the case option of the original parse
+        if (changes != null)
+            changes.names++; // stales the element index
+        Element parent = parent();
+        ChildElements siblings;
+        if (parent != null && parent.shadowChildrenRef != null && (siblings = parent.shadowChildrenRef.get()) != null)
+            siblings.positions = null; // the of-type positions of this and its siblings have changed
         return this;
     }
 
@@ -329,10 +341,10 @@ public class Element extends Node {
         if (childNodeSize() == 0)
             return EmptyChildren; // short circuit creating empty
 
-        List<Element> children;
+        ChildElements children;
         if (shadowChildrenRef == null || (children = shadowChildrenRef.get()) == null) {
             final int size = childNodes.size();
-            children = new ArrayList<>(size);
+            children = new ChildElements(size);
             //noinspection ForLoopReplaceableByForEach (beacause it allocates an Iterator which is wasteful here)
             for (int i = 0; i < size; i++) {
                 final Node node = childNodes.get(i);
@@ -344,6 +356,77 @@ public class Element extends Node {
         return children;
     }
 
+    /** The shadow child elements, and their positions amongst their siblings, once needed. */
+    private static final class ChildElements extends ArrayList<Element> {
+        private static final long serialVersionUID = 1L;
+        transient @Nullable ChildPositions positions;
+
+        ChildElements(int initialCapacity) {
+            super(initialCapacity);
+        }
+    }
+
+    /**
+     Positions of the child elements amongst their element siblings, and amongst their siblings of the same tag, indexed
+     by each child's node sibling index. Computed in one pass over the children when first needed, so that sibling index
+     lookups (and the :nth-child and :nth-of-type selectors) are constant time, rather than scanning the siblings for each
+     element. Held with the shadow children, so discarded when the child nodes are changed.
+     */
+    private static final class ChildPositions {
+        final int[] index; // position in the child elements
+        final int[] typeIndex; // position in the child elements with the same tag
+        final int[] typeSize; // count of the child elements with the same tag
+
+        ChildPositions(List<Node> childNodes) {
+            final int size = childNodes.size();
+            index = new int[size];
+            typeIndex = new int[size];
+            typeSize = new int[size];
+            HashMap<Tag, int[]> typeCounts = new HashMap<>();
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                final Node node = childNodes.get(i);
+                if (node instanceof Element) {
+                    index[i] = count++;
+                    Tag tag = ((Element) node).tag;
+                    int[] typeCount = typeCounts.get(tag);
+                    if (typeCount == null) {
+                        typeCount = new int[1];
+                        typeCounts.put(tag, typeCount);
+                    }
+                    typeIndex[i] = typeCount[0]++;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                final Node node = childNodes.get(i);
+                if (node instanceof Element)
+                    typeSize[i] = typeCounts.get(((Element) node).tag)[0];
+            }
+        }
+    }
+
+    private ChildPositions childPositions() {
+        ChildElements children = (ChildElements) childElementsList(); // has children, as the parent of the caller
+        ChildPositions positions = children.positions;
+        if (positions == null) {
+            positions = new ChildPositions(ensureChildNodes());
+            children.positions = positions;
+        }
+        return positions;
+    }
+
+    /** Gets this element's slot in its parent's child positions, or -1 if it has no parent. */
+    private int positionSlot() {
+        Element parent = parent();
+        if (parent == null)
+            return -1;
+        int slot = siblingIndex();
+        List<Node> siblings = parent.ensureChildNodes();
+        if (slot >= siblings.size() || siblings.get(slot) != this)
+            slot = siblings.indexOf(this); // sibling indexes are maintained on changes, so not expected
+        return slot;
+    }
+
     /**
      * Clears the cached shadow child elements.
      */
@@ -351,6 +434,8 @@ public class Element extends Node {
     void nodelistChanged() {
         super.nodelistChanged();
         shadowChildrenRef = null;
+        if (changes != null)
+            changes.structure++;
     }
 
     /**
@@ -429,6 +514,45 @@ public class Element extends Node {
         return Selector.select(evaluator, this);
     }
 
+    /**
+     Find at most {@code limit} elements that match the {@link Selector} CSS query, with this element as the starting
+     context. The query stops once the limit is reached, so is more efficient than selecting all the matches when only
+     the first few are needed.
+     @param cssQuery a {@link Selector} CSS-like query
+     @param limit the maximum number of elements to find; must be greater than 0
+     @return an {@link Elements} list of the first matching elements, in document order (empty if none match)
+     @throws Selector.SelectorParseException (unchecked) on an invalid CSS query.
+     @see #select(String)
+     */
+    public Elements select(String cssQuery, int limit) {
+        return Selector.select(cssQuery, this, limit);
+    }
+
+    /**
+     Get a lazy stream of the elements that match the {@link Selector} CSS query, with this element as the starting
+     context. Unlike {@link #select(String)}, elements are only visited as the stream is consumed, so operations such as
+     {@code findFirst()}, {@code limit(n)}, and {@code anyMatch(...)} stop the query once satisfied.
+     <p>The most recently returned element may be removed while streaming; other changes to the tree while streaming
+     may cause elements to be skipped or returned again.</p>
+     @param cssQuery a {@link Selector} CSS-like query
+     @return a sequential stream of the matching elements, in document order
+     @throws Selector.SelectorParseException (unchecked) on an invalid CSS query.
+     @see #select(String)
+     */
+    public Stream<Element> selectStream(String cssQuery) {
+        return Selector.selectStream(cssQuery, this);
+    }
+
+    /**
+     Get a lazy stream of the elements that match the supplied Evaluator. This has the same functionality as
+     {@link #selectStream(String)}, but saves parsing the query when run many times.
+     @param evaluator an element evaluator
+     @return a sequential stream of the matching elements, in document order
+     */
+    public Stream<Element> selectStream(Evaluator evaluator) {
+        return Collector.stream(evaluator, this);
+    }
+
 
     /**
      * Find the first Element that matches the {@link Selector} CSS query, with this element as the starting context.
@@ -481,7 +605,7 @@ public class Element extends Node {
      * @return if this element matches the query
      */
     public boolean is(String cssQuery) {
-        return is(QueryParser.parse(cssQuery));
+        return is(EvaluatorCache.get(cssQuery));
     }
 
     /**
@@ -493,6 +617,19 @@ public class Element extends Node {
         return evaluator.matches(this.root(), this);
     }
 
+    /**
+     Test if this element is an ancestor of the other element; that is, if the other element is one of this element's
+     descendants. Uses the {@link ElementOrder} of the tree, so after the tree has been numbered, each test is constant
+     time (rather than walking up the other element's parents).
+     @param other the element to test
+     @return true if this element is a (strict) ancestor of the other element
+     @see #parents()
+     */
+    public boolean isAncestorOf(Element other) {
+        Validate.notNull(other);
+        return ElementOrder.isAncestor(this, other);
+    }
+
     /**
      * Find the closest element up the tree of parents that matches the specified CSS query. Will return itself, an
      * ancestor, or {@code null} if there is no such matching element.
@@ -501,7 +638,7 @@ public class Element extends Node {
      * found.
      */
     public @Nullable Element closest(String cssQuery) {
-        return closest(QueryParser.parse(cssQuery));
+        return closest(EvaluatorCache.get(cssQuery));
     }
 
     /**
@@ -891,7 +1028,7 @@ public class Element extends Node {
     public @Nullable Element nextElementSibling() {
         if (parentNode == null) return null;
         List<Element> siblings = parent().childElementsList();
-        int index = indexInList(this, siblings);
+        int index = elementSiblingIndex();
         if (siblings.size() > index+1)
             return siblings.get(index+1);
         else
@@ -915,7 +1052,7 @@ public class Element extends Node {
     public @Nullable Element previousElementSibling() {
         if (parentNode == null) return null;
         List<Element> siblings = parent().childElementsList();
-        int index = indexInList(this, siblings);
+        int index = elementSiblingIndex();
         if (index > 0)
             return siblings.get(index-1);
         else
@@ -957,8 +1094,33 @@ public class Element extends Node {
      * @return position in element sibling list
      */
     public int elementSiblingIndex() {
-       if (parent() == null) return 0;
-       return indexInList(this, parent().childElementsList());
+        int slot = positionSlot();
+        if (slot == -1) return 0;
+        return parent().childPositions().index[slot];
+    }
+
+    /**
+     Get the list index of this element amongst its element siblings with the same tag (as used by the
+     {@code :nth-of-type} selector). I.e. if this is the first {@code p} sibling, returns 0.
+     @return position amongst the element siblings of the same tag
+     @see #elementSiblingTypeCount()
+     */
+    public int elementSiblingTypeIndex() {
+        int slot = positionSlot();
+        if (slot == -1) return 0;
+        return parent().childPositions().typeIndex[slot];
+    }
+
+    /**
+     Get the number of element siblings with the same tag as this element, including this element. I.e. if this and one
+     other sibling are {@code p} elements, returns 2.
+     @return count of the element siblings of the same tag, including this
+     @see #elementSiblingTypeIndex()
+     */
+    public int elementSiblingTypeCount() {
+        int slot = positionSlot();
+        if (slot == -1) return 1;
+        return parent().childPositions().typeSize[slot];
     }
 
     /**
@@ -973,15 +1135,6 @@ public class Element extends Node {
             return this;
     }
 
-    private static <E extends Element> int indexInList(Element search, List<E> elements) {
-        final int size = elements.size();
-        for (int i = 0; i < size; i++) {
-            if (elements.get(i) == search)
-                return i;
-        }
-        return 0;
-    }
-
     /**
      Gets the first child of this Element that is an Element, or {@code null} if there is none.
      @return the first Element child node, or null.
@@ -1304,33 +1457,41 @@ public class Element extends Node {
      */
     public String text() {
         final StringBuilder accum = StringUtil.borrowBuilder();
-        NodeTraversor.traverse(new NodeVisitor() {
-            public void head(Node node, int depth) {
-                if (node instanceof TextNode) {
-                    TextNode textNode = (TextNode) node;
-                    appendNormalisedText(accum, textNode);
-                } else if (node instanceof Element) {
-                    Element element = (Element) node;
-                    if (accum.length() > 0 &&
-                        (element.isBlock() || element.isNode("br")) &&
-                        !lastCharIsWhitespace(accum))
-                        accum.append(' ');
-                }
-            }
+        NodeTraversor.traverse(new TextAccumulator(accum), this);
+        return StringUtil.releaseBuilder(accum).trim();
+    }
 
-            public void tail(Node node, int depth) {
-                // make sure there is a space between block tags and immediately following text nodes or inline elements <div>One</div>Two should be "One Two".
-                if (node instanceof Element) {
-                    Element element = (Element) node;
-                    Node next = node.nextSibling();
-                    if (element.isBlock() && (next instanceof TextNode || next instanceof Element && !((Element) next).tag.formatAsBlock()) && !lastCharIsWhitespace(accum))
-                        accum.append(' ');
-                }
+    /** Accumulates the normalized text of the nodes it visits, for {@link #text()}. */
+    static class TextAccumulator implements NodeVisitor {
+        final StringBuilder accum;
+
+        TextAccumulator(StringBuilder accum) {
+            this.accum = accum;
+        }
 
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode) {
+                TextNode textNode = (TextNode) node;
+                appendNormalisedText(accum, textNode);
+            } else if (node instanceof Element) {
+                Element element = (Element) node;
+                if (accum.length() > 0 &&
+                    (element.isBlock() || element.isNode("br")) &&
+                    !lastCharIsWhitespace(accum))
+                    accum.append(' ');
             }
-        }, this);
+        }
 
-        return StringUtil.releaseBuilder(accum).trim();
+        public void tail(Node node, int depth) {
+            // make sure there is a space between block tags and immediately following text nodes or inline elements <div>One</div>Two should be "One Two".
+            if (node instanceof Element) {
+                Element element = (Element) node;
+                Node next = node.nextSibling();
+                if (element.isBlock() && (next instanceof TextNode || next instanceof Element && !((Element) next).tag.formatAsBlock()) && !lastCharIsWhitespace(accum))
+                    accum.append(' ');
+            }
+
+        }
     }
 
     /**
@@ -1346,7 +1507,7 @@ public class Element extends Node {
         return StringUtil.releaseBuilder(accum);
     }
 
-    private static void appendWholeText(Node node, StringBuilder accum) {
+    static void appendWholeText(Node node, StringBuilder accum) {
         if (node instanceof TextNode) {
             accum.append(((TextNode) node).getWholeText());
         } else if (node.isNode("br")) {
@@ -1759,6 +1920,7 @@ public class Element extends Node {
     protected Element doClone(@Nullable Node parent) {
         Element clone = (Element) super.doClone(parent);
         clone.attributes = attributes != null ? attributes.clone() : null;
+        clone.changes = null;
         clone.childNodes = new NodeList(clone, childNodes.size());
         clone.childNodes.addAll(childNodes); // the children then get iterated and cloned in Node.clone
 
@@ -0,0 +1,113 @@
+package org.jsoup.nodes;
+
+import org.jsoup.select.NodeTraversor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ An index of the elements in a {@link Document} by id, tag name, and class name. When enabled with
+ {@link Document#indexElements(boolean)}, the index is built when first needed, and becomes stale whenever the document's
+ elements, or their ids or class names, are changed; it is then rebuilt on next use. Simple selections such as
+ {@link Element#getElementById(String)}, {@link Element#getElementsByClass(String)}, and queries like {@code #id},
+ {@code div.cls}, or {@code .cls p} use the index to find their candidate elements, rather than visiting every element
+ in the document.
+ <p>An index's contents are not changed once built, so it may be used concurrently by multiple threads reading the same
+ document.</p>
+ */
+public final class ElementIndex {
+    private final HashMap<String, List<Element>> byId = new HashMap<>();
+    private final HashMap<String, List<Element>> byTag = new HashMap<>();
+    private final HashMap<String, List<Element>> byClass = new HashMap<>();
+    private final TreeChanges changes; // counted by the indexed elements as they are changed
+    private final int structure, names; // the counts when indexed
+
+    ElementIndex(Document doc) {
+        changes = TreeChanges.of(doc);
+        NodeTraversor.traverse((node, depth) -> {
+            if (!(node instanceof Element))
+                return;
+            Element el = (Element) node;
+            changes.track(el);
+            add(byTag, el.normalName(), el);
+            String id = el.id();
+            if (id.length() > 0)
+                add(byId, id, el);
+
+            String classAttr = el.attr("class");
+            int len = classAttr.length();
+            int start = -1;
+            for (int i = 0; i <= len; i++) {
+                boolean ws = i == len || Character.isWhitespace(classAttr.charAt(i));
+                if (!ws && start == -1) {
+                    start = i;
+                } else if (ws && start != -1) {
+                    String key = foldCase(classAttr, start, i);
+                    List<Element> els = byClass.get(key);
+                    if (els == null || els.get(els.size() - 1) != el) // an element may repeat a class name
+                        add(byClass, key, el);
+                    start = -1;
+                }
+            }
+        }, doc);
+        structure = changes.structure;
+        names = changes.names;
+    }
+
+    /** Tests if the document's elements, or their tag names, ids, or class names, have changed since indexed. */
+    boolean isStale() {
+        return changes.structure != structure || changes.names != names;
+    }
+
+    private static void add(HashMap<String, List<Element>> map, String key, Element el) {
+        List<Element> els = map.get(key);
+        if (els == null) {
+            els = new ArrayList<>(1);
+            map.put(key, els);
+        }
+        els.add(el);
+    }
+
+    /**
+     Get the elements with this id.
+     @param id the id to find (case sensitive)
+     @return the elements, in document order; empty if none
+     */
+    public List<Element> byId(String id) {
+        return get(byId, id);
+    }
+
+    /**
+     Get the elements with this tag name.
+     @param normalName the normalized (e.g. lower case) tag name to find
+     @return the elements, in document order; empty if none
+     @see Element#normalName()
+     */
+    public List<Element> byTag(String normalName) {
+        return get(byTag, normalName);
+    }
+
+    /**
+     Get the elements with this class name.
+     @param className the class name to find (case insensitive)
+     @return the elements, in document order; empty if none
+     */
+    public List<Element> byClass(String className) {
+        return get(byClass, foldCase(className, 0, className.length()));
+    }
+
+    private static List<Element> get(HashMap<String, List<Element>> map, String key) {
+        List<Element> els = map.get(key);
+        return els != null ? Collections.unmodifiableList(els) : Collections.emptyList();
+    }
+
+    /** Case folds in the way that {@link Element#hasClass(String)} compares class names. */
+    private static String foldCase(String s, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++)
+            chars[i - start] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        return new String(chars);
+    }
+}
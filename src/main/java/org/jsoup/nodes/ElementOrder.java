@@ -0,0 +1,187 @@
+package org.jsoup.nodes;
+
+import org.jsoup.helper.Validate;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+
+/**
+ The document order of the elements in a tree, as preorder and postorder numbers. A tree is numbered when first needed,
+ and the numbering is reused until the tree is changed: when any numbered element's children are changed, the
+ numbering is marked as stale, and the tree is renumbered on next use. That gives constant time ancestor tests (see
+ {@link Element#isAncestorOf(Element)}) and document order comparisons, for repeated queries of an unchanged tree.
+ <p>The numbers are held in this order's own table, keyed by element identity, so that trees that are never numbered
+ don't pay for them.</p>
+ <p>An unchanged tree may be numbered and queried from multiple threads concurrently.</p>
+ */
+public final class ElementOrder {
+    private static final Object lock = new Object(); // numbering is infrequent, so one lock for all trees
+
+    private final Element root;
+    private final TreeChanges changes;
+    private int structure; // the count of the tree's structure changes when numbered
+    // the elements in preorder (so that the collector, following these references, keeps the tree's elements in
+    // document order in memory), and a table open addressed by identity hash, of each element's preorder number + 1
+    private Element[] elements = new Element[0];
+    private int[] slots = new int[0];
+    private int[] postorders = new int[0]; // indexed by preorder number
+    private volatile boolean numbered = false; // set once all elements are numbered; publishes their numbers
+
+    private ElementOrder(Element root) {
+        this.root = root;
+        this.changes = TreeChanges.of(root);
+    }
+
+    /**
+     Get the current numbering of the tree that contains this element, numbering the tree if required.
+     @param el an element
+     @return the element's tree order
+     */
+    public static ElementOrder of(Element el) {
+        Validate.notNull(el);
+        ElementOrder order = current(el);
+        if (order != null)
+            return order;
+
+        synchronized (lock) {
+            order = current(el); // may have been numbered by another thread while waiting
+            if (order != null)
+                return order;
+            order = new ElementOrder(el.root());
+            order.number();
+            return order;
+        }
+    }
+
+    /**
+     Get the numbering of the tree that contains this element, only if it is already numbered and current. Unlike
+     {@link #of(Element)}, this never numbers the tree, so costs constant time.
+     @param el an element
+     @return the element's tree order, or null if the tree is not currently numbered
+     */
+    public static @Nullable ElementOrder current(Element el) {
+        Validate.notNull(el);
+        TreeChanges changes = el.changes;
+        if (changes == null)
+            return null;
+        ElementOrder order = changes.order;
+        // an element moved into or out of the tree changed it, so a current order still covers each element it numbered
+        return order != null && order.isCurrent() && order.contains(el) ? order : null;
+    }
+
+    /** If still valid. The root may have since been added to another tree, without this tree being changed. */
+    private boolean isCurrent() {
+        return numbered && changes.structure == structure && root.parentNode == null;
+    }
+
+    private void number() {
+        final ArrayList<Element> pre = new ArrayList<>();
+        final ArrayList<Element> post = new ArrayList<>();
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override public void head(Node node, int depth) {
+                if (node instanceof Element) {
+                    pre.add((Element) node);
+                    changes.track((Element) node);
+                }
+            }
+
+            @Override public void tail(Node node, int depth) {
+                if (node instanceof Element)
+                    post.add((Element) node);
+            }
+        }, root);
+
+        final int size = pre.size();
+        elements = pre.toArray(new Element[size]);
+        slots = new int[Integer.highestOneBit(size) << 2]; // at most half full
+        final int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(elements[i]) & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = i + 1;
+        }
+        postorders = new int[size];
+        for (int i = 0; i < size; i++)
+            postorders[indexOf(post.get(i))] = i;
+
+        structure = changes.structure;
+        numbered = true;
+        changes.order = this;
+    }
+
+    private static int hash(Element el) {
+        int h = System.identityHashCode(el);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     Get the number of elements in this tree.
+     @return the number of elements in the tree
+     */
+    public int size() {
+        return elements.length;
+    }
+
+    /**
+     Test if the element is in this tree, as currently numbered.
+     @param el an element
+     @return true if {@link #preorder(Element)} can be used for the element
+     */
+    public boolean contains(Element el) {
+        return indexOf(el) != -1;
+    }
+
+    /**
+     Get the position of the element in this tree, in document order, if it is in this tree.
+     @param el an element
+     @return the preorder number, from 0 (for the root) to {@link #size()} - 1; or -1 if the element is not in this tree
+     */
+    public int indexOf(Element el) {
+        final int mask = slots.length - 1;
+        if (mask < 0)
+            return -1;
+        int slot = hash(el) & mask;
+        int i;
+        while ((i = slots[slot]) != 0) {
+            if (elements[i - 1] == el)
+                return i - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     Get the position of the element in this tree, in document order.
+     @param el an element of this tree
+     @return the preorder number, from 0 (for the root) to {@link #size()} - 1
+     @throws IllegalArgumentException if the element is not in this tree (or the tree has since been renumbered)
+     */
+    public int preorder(Element el) {
+        int i = indexOf(el);
+        Validate.isTrue(i != -1, "Element is not in this tree order");
+        return i;
+    }
+
+    /**
+     Get the position of the element in this tree, in postorder (where each element comes after its descendants).
+     @param el an element of this tree
+     @return the postorder number, from 0 to {@link #size()} - 1 (for the root)
+     @throws IllegalArgumentException if the element is not in this tree (or the tree has since been renumbered)
+     */
+    public int postorder(Element el) {
+        return postorders[preorder(el)];
+    }
+
+    /**
+     Test if one element is an ancestor of another.
+     @return true if {@code ancestor} is a (strict) ancestor of {@code el}
+     */
+    static boolean isAncestor(Element ancestor, Element el) {
+        ElementOrder order = of(el); // covers every element now in el's tree, so the ancestor too if in it
+        int a = order.indexOf(ancestor), e = order.indexOf(el);
+        return a != -1 && a < e && order.postorders[e] < order.postorders[a];
+    }
+}
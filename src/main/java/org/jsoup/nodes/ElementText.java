@@ -0,0 +1,99 @@
+package org.jsoup.nodes;
+
+import org.jsoup.helper.Validate;
+import org.jsoup.internal.StringUtil;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.IdentityHashMap;
+
+/**
+ The text of each element in a subtree, computed in one traversal. Calling {@link Element#text()} or
+ {@link Element#wholeText()} for each element of a subtree traverses each element's descendants again, so is quadratic
+ in the depth of the tree; instead, the text of the subtree's root is accumulated once, and the position of each
+ element's text within it is recorded. An element's text is then a substring of that.
+ <p>The text is a snapshot: it does not reflect any later changes to the tree.</p>
+ */
+public final class ElementText {
+    private final String text;
+    private final String wholeText;
+    private final IdentityHashMap<Element, int[]> spans = new IdentityHashMap<>(); // text start, end, wholeText start, end
+
+    private ElementText(Element root) {
+        final StringBuilder accum = StringUtil.borrowBuilder();
+        final StringBuilder wholeAccum = StringUtil.borrowBuilder();
+        final Element.TextAccumulator accumulator = new Element.TextAccumulator(accum);
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override public void head(Node node, int depth) {
+                int wholeStart = wholeAccum.length(); // includes the element's own text (a br's newline)
+                accumulator.head(node, depth);
+                Element.appendWholeText(node, wholeAccum);
+                if (node instanceof Element)
+                    spans.put((Element) node, new int[]{accum.length(), 0, wholeStart, 0});
+            }
+
+            @Override public void tail(Node node, int depth) {
+                accumulator.tail(node, depth);
+                if (node instanceof Element) {
+                    int[] span = spans.get(node);
+                    span[1] = accum.length();
+                    span[3] = wholeAccum.length();
+                }
+            }
+        }, root);
+        /* Each element's span of the accumulated text differs from the text it would accumulate alone only in leading
+        whitespace (as the accumulator collapses whitespace with the preceding text), which text() trims. */
+        text = StringUtil.releaseBuilder(accum);
+        wholeText = StringUtil.releaseBuilder(wholeAccum);
+    }
+
+    /**
+     Get the text of the element and each of its descendants.
+     @param root the root of the subtree
+     @return the text of the subtree
+     */
+    public static ElementText of(Element root) {
+        Validate.notNull(root);
+        return new ElementText(root);
+    }
+
+    /**
+     Test if the element was in the subtree when the text was computed.
+     @param el an element
+     @return true if the text of the element is held
+     */
+    public boolean contains(Element el) {
+        return spans.containsKey(el);
+    }
+
+    /**
+     Get the element's normalized text, as {@link Element#text()} would.
+     @param el an element of the subtree
+     @return the element's text
+     @throws IllegalArgumentException if the element was not in the subtree
+     */
+    public String text(Element el) {
+        int[] span = span(el);
+        int start = span[0], end = span[1];
+        while (start < end && text.charAt(start) <= ' ') // trim as String#trim
+            start++;
+        while (end > start && text.charAt(end - 1) <= ' ')
+            end--;
+        return text.substring(start, end);
+    }
+
+    /**
+     Get the element's non-normalized text, as {@link Element#wholeText()} would.
+     @param el an element of the subtree
+     @return the element's whole text
+     @throws IllegalArgumentException if the element was not in the subtree
+     */
+    public String wholeText(Element el) {
+        int[] span = span(el);
+        return wholeText.substring(span[2], span[3]);
+    }
+
+    private int[] span(Element el) {
+        return (int[]) Validate.ensureNotNull(spans.get(el), "Element is not in this subtree");
+    }
+}
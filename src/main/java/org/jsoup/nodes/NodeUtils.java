@@ -32,18 +32,27 @@ final class NodeUtils {
     }
 
     /**
-     This impl works by compiling the input xpath expression, and then evaluating it against a W3C Document converted
-     from the original jsoup element. The original jsoup elements are then fetched from the w3c doc user data (where we
-     stashed them during conversion). This process could potentially be optimized by transpiling the compiled xpath
-     expression to a jsoup Evaluator when there's 1:1 support, thus saving the W3C document conversion stage.
+     Queries in the common subset supported by {@link XpathSelector} are evaluated directly against the jsoup nodes.
+     Others are compiled by the JDK XPath implementation, and evaluated against a read-only W3C view of the original
+     jsoup element's document (so without copying the tree). The original jsoup elements are then fetched from the w3c
+     nodes' user data. If an alternate XPath factory has been configured, all queries are run by it.
      */
     static <T extends Node> List<T> selectXpath(String xpath, Element el, Class<T> nodeType) {
         Validate.notEmpty(xpath);
         Validate.notNull(el);
         Validate.notNull(nodeType);
 
+        if (System.getProperty(W3CDom.XPathFactoryProperty) == null) {
+            XpathSelector selector = XpathSelector.compile(xpath);
+            if (selector != null) {
+                List<T> nodes = selector.select(el, nodeType);
+                if (nodes != null)
+                    return nodes;
+            }
+        }
+
         W3CDom w3c = new W3CDom().namespaceAware(false);
-        org.w3c.dom.Document wDoc = w3c.fromJsoup(el);
+        org.w3c.dom.Document wDoc = w3c.view(el);
         org.w3c.dom.Node contextNode = w3c.contextNode(wDoc);
         NodeList nodeList = w3c.selectXpath(xpath, contextNode);
         return w3c.sourceNodes(nodeList, nodeType);
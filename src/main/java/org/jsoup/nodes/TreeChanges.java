@@ -0,0 +1,29 @@
+package org.jsoup.nodes;
+
+import javax.annotation.Nullable;
+
+/**
+ Counts the changes to a tree of elements that has been indexed (see {@link ElementIndex}) or numbered (see
+ {@link ElementOrder}), so that the index and numbering can tell when they are stale. They keep their contents in their
+ own tables; each element they cover (and its attributes) refers only to this, to count its changes.
+ */
+final class TreeChanges {
+    volatile int structure = 0; // children added, removed, or moved; stales both the index and the numbering
+    volatile int names = 0; // tag names, ids, or class names changed; stales the index
+    @Nullable volatile ElementOrder order; // the last numbering of the tree
+
+    /**
+     Get the changes of the tree at this root: those already counted for it, if any, else new.
+     */
+    static TreeChanges of(Element root) {
+        TreeChanges changes = root.changes;
+        return changes != null ? changes : new TreeChanges();
+    }
+
+    /** Count the changes to this element in this tree. */
+    void track(Element el) {
+        el.changes = this;
+        if (el.attributes != null)
+            el.attributes.changes = this;
+    }
+}
@@ -0,0 +1,1078 @@
+package org.jsoup.nodes;
+
+import org.jsoup.nodes.Document.OutputSettings.Syntax;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ Evaluates a common subset of XPath 1.0 directly against jsoup nodes, for {@link Element#selectXpath(String)}, without
+ converting the tree to a W3C DOM. Supports location paths with the usual axes (except namespace), name, {@code *},
+ {@code text()}, {@code node()} and {@code comment()} tests, and predicates using comparisons, arithmetic, {@code and} /
+ {@code or}, nested paths, and the common core functions. Queries outside that subset (and invalid queries) are not
+ compiled, and are run by the W3C implementation instead.
+ <p>The tree is presented as {@link org.jsoup.helper.W3CDom} presents it to XPath: the document's first element is the
+ document element, names are matched without namespaces (on the local name), and only elements, text, data, and
+ comments are nodes.</p>
+ */
+final class XpathSelector {
+    private final Path path;
+
+    private XpathSelector(Path path) {
+        this.path = path;
+    }
+
+    /**
+     Compile the query, if it is in the supported subset.
+     @return the compiled query, or null if it must be run by the W3C implementation
+     */
+    static @Nullable XpathSelector compile(String xpath) {
+        try {
+            Expr expr = new XpathParser(xpath).parse();
+            return expr instanceof Path ? new XpathSelector((Path) expr) : null;
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     Select the matching nodes, with the element as the context node.
+     @return the matches of the node type, in document order; or null if the element's tree can't be presented natively
+     */
+    <T extends Node> @Nullable List<T> select(Element el, Class<T> nodeType) {
+        Tree tree = Tree.of(el);
+        if (tree == null)
+            return null;
+        List<Object> found = path.nodes(new Context(tree.context, 1, 1, tree));
+        List<T> nodes = new ArrayList<>(found.size());
+        for (Object node : found) {
+            if (node != tree.docNode && nodeType.isInstance(node)) // attributes aren't Nodes, so are also skipped
+                nodes.add(nodeType.cast(node));
+        }
+        return nodes;
+    }
+
+    /** Thrown while parsing a query that is outside the supported subset (or invalid). */
+    private static final class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        @Override public synchronized Throwable fillInStackTrace() {
+            return this; // no stack trace needed, as it just selects the W3C implementation
+        }
+    }
+
+    /**
+     The tree as presented to the query. The document node is a placeholder with the root element as its only child.
+     */
+    private static final class Tree {
+        final Element root; // the document element
+        final Element docNode = new Element("#xpath-document"); // never returned, nor attached to
+        final Element context;
+        final Syntax syntax;
+        @Nullable private IdentityHashMap<Node, Integer> order;
+
+        private Tree(Element root, Element context, Syntax syntax) {
+            this.root = root;
+            this.context = context;
+            this.syntax = syntax;
+        }
+
+        static @Nullable Tree of(Element el) {
+            Document doc = el.ownerDocument();
+            if (doc == null)
+                return new Tree(el, el, Syntax.xml); // just the element's subtree is converted
+            if (doc.childrenSize() == 0)
+                return null;
+            Element root = doc.child(0);
+            if (el == doc)
+                return new Tree(root, root, doc.outputSettings().syntax());
+            Element top = el;
+            while (top.parent() != doc)
+                top = top.parent();
+            if (top != root)
+                return null; // not in the converted tree
+            return new Tree(root, el, doc.outputSettings().syntax());
+        }
+
+        @Nullable Node parent(Node node) {
+            if (node == root)
+                return docNode;
+            if (node == docNode)
+                return null;
+            return node.parentNode();
+        }
+
+        List<Node> children(Node node) {
+            if (node == docNode)
+                return Collections.singletonList(root);
+            return node.childNodeSize() > 0 ? node.ensureChildNodes() : Collections.emptyList();
+        }
+
+        /** The node's visible siblings, or an empty list for the root. */
+        List<Node> siblings(Node node) {
+            Node parent = parent(node);
+            return parent == null || parent == docNode ? Collections.emptyList() : parent.ensureChildNodes();
+        }
+
+        int order(Node node) {
+            if (node == docNode)
+                return -1;
+            if (order == null) {
+                final IdentityHashMap<Node, Integer> numbers = new IdentityHashMap<>();
+                final int[] count = {0};
+                org.jsoup.select.NodeTraversor.traverse((n, depth) -> numbers.put(n, count[0]++), root);
+                order = numbers;
+            }
+            Integer number = order.get(node);
+            return number != null ? number : Integer.MAX_VALUE;
+        }
+    }
+
+    /** Only these nodes are converted to W3C nodes; others (doctypes, declarations) are not seen by queries. */
+    static boolean isVisible(Node node) {
+        return node instanceof Element || node instanceof TextNode || node instanceof DataNode || node instanceof Comment;
+    }
+
+    /** An attribute, as a node in a node-set. Attributes can be selected within predicates, but aren't results. */
+    private static final class AttrNode {
+        final Element owner;
+        final int index;
+        final String name;
+        final String value;
+
+        AttrNode(Element owner, int index, String name, String value) {
+            this.owner = owner;
+            this.index = index;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof AttrNode && ((AttrNode) o).owner == owner && ((AttrNode) o).index == index;
+        }
+
+        @Override public int hashCode() {
+            return System.identityHashCode(owner) * 31 + index;
+        }
+    }
+
+    /** The context of an expression: the context node, its position and the context size, and the tree. */
+    private static final class Context {
+        final Object node;
+        final int position;
+        final int size;
+        final Tree tree;
+
+        Context(Object node, int position, int size, Tree tree) {
+            this.node = node;
+            this.position = position;
+            this.size = size;
+            this.tree = tree;
+        }
+    }
+
+    // Expressions evaluate to a Boolean, a Double, a String, or a node-set (a List of Nodes and AttrNodes in document order).
+
+    private static abstract class Expr {
+        abstract Object eval(Context ctx);
+
+        /** If the value of this expression depends on the context position or size (and so on the axis order). */
+        abstract boolean positional();
+    }
+
+    private static final class Literal extends Expr {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override Object eval(Context ctx) {
+            return value;
+        }
+
+        @Override boolean positional() {
+            return value instanceof Double; // as a predicate, a number is a position
+        }
+    }
+
+    private static final int Or = 0, And = 1, Eq = 2, Neq = 3, Lt = 4, Le = 5, Gt = 6, Ge = 7,
+        Plus = 8, Minus = 9, Mul = 10, Div = 11, Mod = 12;
+
+    private static final class Binary extends Expr {
+        private final int op;
+        private final Expr left, right;
+
+        Binary(int op, Expr left, Expr right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override Object eval(Context ctx) {
+            switch (op) {
+                case Or:
+                    return toBoolean(left.eval(ctx)) || toBoolean(right.eval(ctx));
+                case And:
+                    return toBoolean(left.eval(ctx)) && toBoolean(right.eval(ctx));
+                case Eq: case Neq: case Lt: case Le: case Gt: case Ge:
+                    return compare(left.eval(ctx), right.eval(ctx), op);
+                default:
+                    double a = toNumber(left.eval(ctx)), b = toNumber(right.eval(ctx));
+                    switch (op) {
+                        case Plus: return a + b;
+                        case Minus: return a - b;
+                        case Mul: return a * b;
+                        case Div: return a / b;
+                        default: return a % b;
+                    }
+            }
+        }
+
+        @Override boolean positional() {
+            return left.positional() || right.positional();
+        }
+    }
+
+    private static final class Negate extends Expr {
+        private final Expr expr;
+
+        Negate(Expr expr) {
+            this.expr = expr;
+        }
+
+        @Override Object eval(Context ctx) {
+            return -toNumber(expr.eval(ctx));
+        }
+
+        @Override boolean positional() {
+            return expr.positional();
+        }
+    }
+
+    private static final class Function extends Expr {
+        private final String name;
+        private final List<Expr> args;
+
+        Function(String name, List<Expr> args) {
+            this.name = name;
+            this.args = args;
+            int n = args.size();
+            boolean valid;
+            switch (name) {
+                case "last": case "position": case "true": case "false":
+                    valid = n == 0; break;
+                case "count": case "not": case "boolean":
+                    valid = n == 1; break;
+                case "string": case "normalize-space": case "string-length": case "local-name": case "name":
+                case "number":
+                    valid = n <= 1; break;
+                case "contains": case "starts-with":
+                    valid = n == 2; break;
+                case "concat":
+                    valid = n >= 2; break;
+                default:
+                    valid = false; // other functions are left to the W3C implementation
+            }
+            if (!valid)
+                throw new Unsupported();
+        }
+
+        @Override Object eval(Context ctx) {
+            switch (name) {
+                case "last": return (double) ctx.size;
+                case "position": return (double) ctx.position;
+                case "true": return true;
+                case "false": return false;
+                case "count": return (double) nodeSet(args.get(0).eval(ctx)).size();
+                case "not": return !toBoolean(args.get(0).eval(ctx));
+                case "boolean": return toBoolean(args.get(0).eval(ctx));
+                case "number": return toNumber(arg(ctx));
+                case "string": return toStringValue(arg(ctx));
+                case "string-length": return (double) toStringValue(arg(ctx)).length();
+                case "normalize-space": return normalizeSpace(toStringValue(arg(ctx)));
+                case "name": case "local-name": {
+                    Object arg = arg(ctx);
+                    List<Object> nodes = arg instanceof List ? nodeSet(arg) : Collections.singletonList(arg);
+                    if (nodes.isEmpty())
+                        return "";
+                    String qname = nodeName(nodes.get(0), ctx.tree);
+                    return name.equals("name") ? qname : localName(qname);
+                }
+                case "contains":
+                    return toStringValue(args.get(0).eval(ctx)).contains(toStringValue(args.get(1).eval(ctx)));
+                case "starts-with":
+                    return toStringValue(args.get(0).eval(ctx)).startsWith(toStringValue(args.get(1).eval(ctx)));
+                default: { // concat
+                    StringBuilder sb = new StringBuilder();
+                    for (Expr arg : args)
+                        sb.append(toStringValue(arg.eval(ctx)));
+                    return sb.toString();
+                }
+            }
+        }
+
+        /** The single argument, or a node-set of the context node if none. */
+        private Object arg(Context ctx) {
+            if (args.isEmpty())
+                return Collections.singletonList(ctx.node);
+            return args.get(0).eval(ctx);
+        }
+
+        @Override boolean positional() {
+            if (name.equals("last") || name.equals("position"))
+                return true;
+            for (Expr arg : args) {
+                if (arg.positional())
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static final int Child = 0, Descendant = 1, DescendantOrSelf = 2, Self = 3, Parent = 4, Ancestor = 5,
+        AncestorOrSelf = 6, FollowingSibling = 7, PrecedingSibling = 8, Following = 9, Preceding = 10, Attribute = 11;
+    private static final HashMap<String, Integer> Axes = new HashMap<>();
+    static {
+        String[] names = {"child", "descendant", "descendant-or-self", "self", "parent", "ancestor", "ancestor-or-self",
+            "following-sibling", "preceding-sibling", "following", "preceding", "attribute"};
+        for (int i = 0; i < names.length; i++)
+            Axes.put(names[i], i);
+    }
+
+    private static boolean isReverse(int axis) {
+        return axis == Ancestor || axis == AncestorOrSelf || axis == PrecedingSibling || axis == Preceding;
+    }
+
+    private static final int NameTest = 0, AnyName = 1, TextTest = 2, NodeTest = 3, CommentTest = 4;
+
+    private static final class Step {
+        final int axis;
+        final int test;
+        final String name; // for a name test
+        final List<Expr> predicates;
+
+        Step(int axis, int test, String name, List<Expr> predicates) {
+            this.axis = axis;
+            this.test = test;
+            this.name = name;
+            this.predicates = predicates;
+        }
+
+        boolean positional() {
+            for (Expr predicate : predicates) {
+                if (predicate.positional())
+                    return true;
+            }
+            return false;
+        }
+
+        /** Test the node against this step's node test. */
+        boolean matches(Object node) {
+            if (axis == Attribute) {
+                return node instanceof AttrNode && (test == AnyName || test == NodeTest ||
+                    test == NameTest && localName(((AttrNode) node).name).equals(name) && ((AttrNode) node).name.indexOf(':') == -1);
+            }
+            switch (test) {
+                case NameTest:
+                    return node instanceof Element && localName(((Element) node).tagName()).equals(name);
+                case AnyName:
+                    return node instanceof Element;
+                case TextTest:
+                    return node instanceof TextNode || node instanceof DataNode;
+                case CommentTest:
+                    return node instanceof Comment;
+                default:
+                    return isVisible((Node) node);
+            }
+        }
+
+        /** Select this step's nodes from each of the context nodes, in document order. */
+        List<Object> select(List<Object> contexts, Tree tree) {
+            List<Object> out = new ArrayList<>();
+            for (Object context : contexts) {
+                List<Object> nodes = new ArrayList<>();
+                if (context instanceof Node)
+                    axis((Node) context, tree, nodes);
+                else
+                    attributeAxis((AttrNode) context, tree, nodes);
+                for (Expr predicate : predicates)
+                    nodes = filter(nodes, predicate, tree);
+                if (isReverse(axis))
+                    Collections.reverse(nodes);
+                out.addAll(nodes);
+            }
+            if (contexts.size() > 1)
+                sortDistinct(out, tree);
+            return out;
+        }
+
+        private static List<Object> filter(List<Object> nodes, Expr predicate, Tree tree) {
+            List<Object> kept = new ArrayList<>(nodes.size());
+            int size = nodes.size();
+            for (int i = 0; i < size; i++) {
+                Object value = predicate.eval(new Context(nodes.get(i), i + 1, size, tree));
+                if (value instanceof Double ? (Double) value == i + 1 : toBoolean(value))
+                    kept.add(nodes.get(i));
+            }
+            return kept;
+        }
+
+        /** Add the nodes on this step's axis that match its test, in axis order. */
+        private void axis(Node node, Tree tree, List<Object> out) {
+            switch (axis) {
+                case Child:
+                    for (Node child : tree.children(node))
+                        add(child, out);
+                    break;
+                case Descendant:
+                case DescendantOrSelf:
+                    if (axis == DescendantOrSelf)
+                        add(node, out);
+                    for (Node child : tree.children(node))
+                        descendants(child, out);
+                    break;
+                case Self:
+                    add(node, out);
+                    break;
+                case Parent: {
+                    Node parent = tree.parent(node);
+                    if (parent != null)
+                        add(parent, out);
+                    break;
+                }
+                case Ancestor:
+                case AncestorOrSelf:
+                    for (Node cur = axis == Ancestor ? tree.parent(node) : node; cur != null; cur = tree.parent(cur))
+                        add(cur, out);
+                    break;
+                case FollowingSibling: {
+                    List<Node> siblings = tree.siblings(node);
+                    for (int i = node.siblingIndex() + 1; i < siblings.size(); i++)
+                        add(siblings.get(i), out);
+                    break;
+                }
+                case PrecedingSibling: {
+                    List<Node> siblings = tree.siblings(node);
+                    for (int i = Math.min(node.siblingIndex(), siblings.size()) - 1; i >= 0; i--)
+                        add(siblings.get(i), out);
+                    break;
+                }
+                case Following:
+                    for (Node cur = node; cur != null && cur != tree.docNode; cur = tree.parent(cur)) {
+                        List<Node> siblings = tree.siblings(cur);
+                        for (int i = cur.siblingIndex() + 1; i < siblings.size(); i++)
+                            descendants(siblings.get(i), out);
+                    }
+                    break;
+                case Preceding: {
+                    List<Object> forward = new ArrayList<>();
+                    for (Node cur = node; cur != null && cur != tree.docNode; cur = tree.parent(cur)) {
+                        List<Node> siblings = tree.siblings(cur);
+                        List<Object> before = new ArrayList<>();
+                        for (int i = 0; i < Math.min(cur.siblingIndex(), siblings.size()); i++)
+                            descendants(siblings.get(i), before);
+                        before.addAll(forward);
+                        forward = before;
+                    }
+                    Collections.reverse(forward);
+                    out.addAll(forward);
+                    break;
+                }
+                default: // attribute
+                    if (node instanceof Element && node != tree.docNode && node.hasAttributes()) {
+                        Element el = (Element) node;
+                        int i = 0;
+                        for (org.jsoup.nodes.Attribute attr : el.attributes()) {
+                            String key = org.jsoup.nodes.Attribute.getValidKey(attr.getKey(), tree.syntax);
+                            if (key != null && !key.equals("xmlns") && !key.startsWith("xmlns:")) { // namespace declarations aren't attributes
+                                AttrNode attrNode = new AttrNode(el, i, key, attr.getValue());
+                                if (matches(attrNode))
+                                    out.add(attrNode);
+                            }
+                            i++;
+                        }
+                    }
+            }
+        }
+
+        /** Add the nodes on this step's axis from an attribute, whose parent is its element. */
+        private void attributeAxis(AttrNode attr, Tree tree, List<Object> out) {
+            switch (axis) {
+                case Self:
+                    if (matches(attr))
+                        out.add(attr);
+                    break;
+                case AncestorOrSelf:
+                    if (matches(attr))
+                        out.add(attr);
+                    // intended fall through, to add the ancestors
+                case Parent:
+                case Ancestor:
+                    new Step(axis == Parent ? Self : AncestorOrSelf, test, name, predicates).axis(attr.owner, tree, out);
+                    break;
+                case Following:
+                    for (Node child : tree.children(attr.owner))
+                        descendants(child, out);
+                    axis(attr.owner, tree, out);
+                    break;
+                case Preceding:
+                    axis(attr.owner, tree, out);
+                    break;
+                default: // no children, siblings, or attributes
+            }
+        }
+
+        private void add(Node node, List<Object> out) {
+            if (isVisible(node) && matches(node))
+                out.add(node);
+        }
+
+        private void descendants(Node node, List<Object> out) {
+            org.jsoup.select.NodeTraversor.traverse((n, depth) -> add(n, out), node);
+        }
+    }
+
+    /** Sort the nodes into document order, and remove any duplicates. */
+    private static void sortDistinct(List<Object> nodes, final Tree tree) {
+        HashSet<Object> seen = new HashSet<>(); // Nodes are equal by identity
+        List<Object> distinct = new ArrayList<>(nodes.size());
+        for (Object node : nodes) {
+            if (seen.add(node))
+                distinct.add(node);
+        }
+        Collections.sort(distinct, (a, b) -> {
+            int orderA = tree.order(a instanceof AttrNode ? ((AttrNode) a).owner : (Node) a);
+            int orderB = tree.order(b instanceof AttrNode ? ((AttrNode) b).owner : (Node) b);
+            if (orderA != orderB)
+                return orderA < orderB ? -1 : 1;
+            int indexA = a instanceof AttrNode ? ((AttrNode) a).index : -1; // an element precedes its attributes
+            int indexB = b instanceof AttrNode ? ((AttrNode) b).index : -1;
+            return indexA - indexB;
+        });
+        nodes.clear();
+        nodes.addAll(distinct);
+    }
+
+    /** A location path: the steps from the context node, or from the document node if absolute. */
+    private static final class Path extends Expr {
+        private final boolean absolute;
+        private final List<Step> steps;
+
+        Path(boolean absolute, List<Step> steps) {
+            this.absolute = absolute;
+            this.steps = steps;
+        }
+
+        List<Object> nodes(Context ctx) {
+            List<Object> nodes = Collections.singletonList(absolute ? ctx.tree.docNode : ctx.node);
+            for (Step step : steps) {
+                nodes = step.select(nodes, ctx.tree);
+                if (nodes.isEmpty())
+                    break;
+            }
+            return nodes;
+        }
+
+        @Override Object eval(Context ctx) {
+            return nodes(ctx);
+        }
+
+        @Override boolean positional() {
+            return false; // a path's predicates have their own context
+        }
+    }
+
+    // Conversions and comparisons, per the XPath 1.0 core function library
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> nodeSet(Object value) {
+        if (!(value instanceof List))
+            throw new IllegalStateException("Expected a node-set"); // only given a node-set by a valid query
+        return (List<Object>) value;
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean)
+            return (Boolean) value;
+        if (value instanceof Double) {
+            double d = (Double) value;
+            return d != 0 && !Double.isNaN(d);
+        }
+        if (value instanceof String)
+            return !((String) value).isEmpty();
+        return !nodeSet(value).isEmpty();
+    }
+
+    private static final Pattern XpathNumber = Pattern.compile("-?(\\d+(\\.\\d*)?|\\.\\d+)");
+
+    private static double toNumber(Object value) {
+        if (value instanceof Double)
+            return (Double) value;
+        if (value instanceof Boolean)
+            return (Boolean) value ? 1 : 0;
+        String s = toStringValue(value).trim();
+        return XpathNumber.matcher(s).matches() ? Double.parseDouble(s) : Double.NaN;
+    }
+
+    private static String toStringValue(Object value) {
+        if (value instanceof String)
+            return (String) value;
+        if (value instanceof Boolean)
+            return (Boolean) value ? "true" : "false";
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (Double.isNaN(d))
+                return "NaN";
+            if (Double.isInfinite(d))
+                return d > 0 ? "Infinity" : "-Infinity";
+            if (d == Math.rint(d) && Math.abs(d) < 1e15)
+                return Long.toString((long) d);
+            return new BigDecimal(Double.toString(d)).toPlainString();
+        }
+        if (value instanceof List) {
+            List<Object> nodes = nodeSet(value);
+            return nodes.isEmpty() ? "" : stringValue(nodes.get(0));
+        }
+        return stringValue(value); // a node
+    }
+
+    private static String stringValue(Object node) {
+        if (node instanceof AttrNode)
+            return ((AttrNode) node).value;
+        if (node instanceof TextNode)
+            return ((TextNode) node).getWholeText();
+        if (node instanceof DataNode)
+            return ((DataNode) node).getWholeData();
+        if (node instanceof Comment)
+            return ((Comment) node).getData();
+        Element el = (Element) node;
+        final StringBuilder accum = new StringBuilder();
+        org.jsoup.select.NodeTraversor.traverse((n, depth) -> {
+            if (n instanceof TextNode)
+                accum.append(((TextNode) n).getWholeText());
+            else if (n instanceof DataNode)
+                accum.append(((DataNode) n).getWholeData());
+        }, el);
+        return accum.toString();
+    }
+
+    private static String nodeName(Object node, Tree tree) {
+        if (node instanceof AttrNode)
+            return ((AttrNode) node).name;
+        if (node instanceof Element && node != tree.docNode)
+            return ((Element) node).tagName();
+        return "";
+    }
+
+    private static String localName(String qname) {
+        int pos = qname.indexOf(':');
+        return pos > 0 ? qname.substring(pos + 1) : qname;
+    }
+
+    private static String normalizeSpace(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                space = sb.length() > 0;
+            } else {
+                if (space)
+                    sb.append(' ');
+                sb.append(c);
+                space = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean compare(Object a, Object b, int op) {
+        if (a instanceof List && b instanceof List) {
+            for (Object x : nodeSet(a)) {
+                String xs = stringValue(x);
+                for (Object y : nodeSet(b)) {
+                    if (compareAtoms(xs, stringValue(y), op))
+                        return true;
+                }
+            }
+            return false;
+        }
+        if (a instanceof List || b instanceof List) {
+            boolean setFirst = a instanceof List;
+            Object set = setFirst ? a : b, other = setFirst ? b : a;
+            if (other instanceof Boolean)
+                return setFirst ? compareAtoms(toBoolean(set), other, op) : compareAtoms(other, toBoolean(set), op);
+            for (Object node : nodeSet(set)) {
+                String value = stringValue(node);
+                if (setFirst ? compareAtoms(value, other, op) : compareAtoms(other, value, op))
+                    return true;
+            }
+            return false;
+        }
+        return compareAtoms(a, b, op);
+    }
+
+    private static boolean compareAtoms(Object a, Object b, int op) {
+        if (op == Eq || op == Neq) {
+            boolean equal;
+            if (a instanceof Boolean || b instanceof Boolean)
+                equal = toBoolean(a) == toBoolean(b);
+            else if (a instanceof Double || b instanceof Double)
+                equal = toNumber(a) == toNumber(b);
+            else
+                equal = toStringValue(a).equals(toStringValue(b));
+            return op == Eq ? equal : !equal;
+        }
+        double x = toNumber(a), y = toNumber(b);
+        switch (op) {
+            case Lt: return x < y;
+            case Le: return x <= y;
+            case Gt: return x > y;
+            default: return x >= y;
+        }
+    }
+
+    /** A recursive descent parser for the supported subset. Throws {@link Unsupported} on anything else. */
+    private static final class XpathParser {
+        private static final int TSlash = 0, TDoubleSlash = 1, TOpenBracket = 2, TCloseBracket = 3, TOpenParen = 4,
+            TCloseParen = 5, TAt = 6, TComma = 7, TAxis = 8, TDot = 9, TDoubleDot = 10, TStar = 11, TOp = 12,
+            TLiteral = 13, TNumber = 14, TName = 15, TEnd = 16;
+
+        private final List<Integer> types = new ArrayList<>();
+        private final List<String> values = new ArrayList<>();
+        private int pos = 0;
+
+        XpathParser(String xpath) {
+            tokenize(xpath);
+        }
+
+        private void tokenize(String s) {
+            int i = 0, len = s.length();
+            while (i < len) {
+                char c = s.charAt(i);
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    i++;
+                } else if (c == '/') {
+                    boolean dbl = i + 1 < len && s.charAt(i + 1) == '/';
+                    token(dbl ? TDoubleSlash : TSlash, dbl ? "//" : "/");
+                    i += dbl ? 2 : 1;
+                } else if (c == '[' || c == ']' || c == '(' || c == ')' || c == '@' || c == ',' || c == '*') {
+                    token(c == '[' ? TOpenBracket : c == ']' ? TCloseBracket : c == '(' ? TOpenParen :
+                        c == ')' ? TCloseParen : c == '@' ? TAt : c == ',' ? TComma : TStar, String.valueOf(c));
+                    i++;
+                } else if (c == ':' && i + 1 < len && s.charAt(i + 1) == ':') {
+                    token(TAxis, "::");
+                    i += 2;
+                } else if (c == '.' && (i + 1 >= len || !Character.isDigit(s.charAt(i + 1)))) {
+                    boolean dbl = i + 1 < len && s.charAt(i + 1) == '.';
+                    token(dbl ? TDoubleDot : TDot, dbl ? ".." : ".");
+                    i += dbl ? 2 : 1;
+                } else if (c == '=' || c == '+' || c == '-') {
+                    token(TOp, String.valueOf(c));
+                    i++;
+                } else if (c == '!' || c == '<' || c == '>') {
+                    boolean eq = i + 1 < len && s.charAt(i + 1) == '=';
+                    if (c == '!' && !eq)
+                        throw new Unsupported();
+                    token(TOp, eq ? c + "=" : String.valueOf(c));
+                    i += eq ? 2 : 1;
+                } else if (c == '"' || c == '\'') {
+                    int end = s.indexOf(c, i + 1);
+                    if (end == -1)
+                        throw new Unsupported();
+                    token(TLiteral, s.substring(i + 1, end));
+                    i = end + 1;
+                } else if (Character.isDigit(c) || c == '.') {
+                    int start = i;
+                    while (i < len && (Character.isDigit(s.charAt(i)) || s.charAt(i) == '.'))
+                        i++;
+                    token(TNumber, s.substring(start, i));
+                } else if (Character.isLetter(c) || c == '_') {
+                    int start = i;
+                    while (i < len && isNameChar(s.charAt(i)))
+                        i++;
+                    if (i + 1 < len && s.charAt(i) == ':' && s.charAt(i + 1) != ':')
+                        throw new Unsupported(); // a prefixed name; namespaces are left to the W3C implementation
+                    token(TName, s.substring(start, i));
+                } else {
+                    throw new Unsupported(); // variables, unions, and anything unexpected
+                }
+            }
+            token(TEnd, "");
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+        }
+
+        private void token(int type, String value) {
+            types.add(type);
+            values.add(value);
+        }
+
+        private int type() {
+            return types.get(pos);
+        }
+
+        private int type(int ahead) {
+            return types.get(Math.min(pos + ahead, types.size() - 1));
+        }
+
+        private String value() {
+            return values.get(pos);
+        }
+
+        private void expect(int type) {
+            if (type() != type)
+                throw new Unsupported();
+            pos++;
+        }
+
+        private boolean isOp(String op) {
+            return type() == TOp && value().equals(op);
+        }
+
+        /** An operator name (and, or, div, mod) is only recognised where an operator is expected. */
+        private boolean isOpName(String name) {
+            return type() == TName && value().equals(name);
+        }
+
+        Expr parse() {
+            Expr expr = or();
+            expect(TEnd);
+            return expr;
+        }
+
+        private Expr or() {
+            Expr expr = and();
+            while (isOpName("or")) {
+                pos++;
+                expr = new Binary(Or, expr, and());
+            }
+            return expr;
+        }
+
+        private Expr and() {
+            Expr expr = equality();
+            while (isOpName("and")) {
+                pos++;
+                expr = new Binary(And, expr, equality());
+            }
+            return expr;
+        }
+
+        private Expr equality() {
+            Expr expr = relational();
+            while (isOp("=") || isOp("!=")) {
+                int op = value().equals("=") ? Eq : Neq;
+                pos++;
+                expr = new Binary(op, expr, relational());
+            }
+            return expr;
+        }
+
+        private Expr relational() {
+            Expr expr = additive();
+            while (isOp("<") || isOp("<=") || isOp(">") || isOp(">=")) {
+                String v = value();
+                int op = v.equals("<") ? Lt : v.equals("<=") ? Le : v.equals(">") ? Gt : Ge;
+                pos++;
+                expr = new Binary(op, expr, additive());
+            }
+            return expr;
+        }
+
+        private Expr additive() {
+            Expr expr = multiplicative();
+            while (isOp("+") || isOp("-")) {
+                int op = value().equals("+") ? Plus : Minus;
+                pos++;
+                expr = new Binary(op, expr, multiplicative());
+            }
+            return expr;
+        }
+
+        private Expr multiplicative() {
+            Expr expr = unary();
+            while (type() == TStar || isOpName("div") || isOpName("mod")) {
+                int op = type() == TStar ? Mul : value().equals("div") ? Div : Mod;
+                pos++;
+                expr = new Binary(op, expr, unary());
+            }
+            return expr;
+        }
+
+        private Expr unary() {
+            if (isOp("-")) {
+                pos++;
+                return new Negate(unary());
+            }
+            return primary();
+        }
+
+        private Expr primary() {
+            switch (type()) {
+                case TLiteral: {
+                    String literal = value();
+                    pos++;
+                    return new Literal(literal);
+                }
+                case TNumber: {
+                    String number = value();
+                    pos++;
+                    try {
+                        return new Literal(Double.parseDouble(number));
+                    } catch (NumberFormatException e) {
+                        throw new Unsupported();
+                    }
+                }
+                case TOpenParen: {
+                    pos++;
+                    Expr expr = or();
+                    expect(TCloseParen);
+                    if (type() == TOpenBracket || type() == TSlash || type() == TDoubleSlash)
+                        throw new Unsupported(); // filter expressions
+                    return expr;
+                }
+                case TName:
+                    if (type(1) == TOpenParen && !isNodeType(value())) {
+                        String name = value();
+                        pos += 2;
+                        List<Expr> args = new ArrayList<>();
+                        if (type() != TCloseParen) {
+                            args.add(or());
+                            while (type() == TComma) {
+                                pos++;
+                                args.add(or());
+                            }
+                        }
+                        expect(TCloseParen);
+                        if (type() == TOpenBracket || type() == TSlash || type() == TDoubleSlash)
+                            throw new Unsupported(); // filter expressions
+                        return new Function(name, args);
+                    }
+                    return path();
+                default:
+                    return path();
+            }
+        }
+
+        private static boolean isNodeType(String name) {
+            return name.equals("text") || name.equals("node") || name.equals("comment") ||
+                name.equals("processing-instruction");
+        }
+
+        private Path path() {
+            List<Step> steps = new ArrayList<>();
+            boolean absolute = false;
+            if (type() == TSlash) {
+                absolute = true;
+                pos++;
+                if (!startsStep())
+                    return new Path(true, steps); // just the document node
+            } else if (type() == TDoubleSlash) {
+                absolute = true;
+                pos++;
+                steps.add(descendantOrSelf());
+            }
+            steps.add(step());
+            while (type() == TSlash || type() == TDoubleSlash) {
+                if (type() == TDoubleSlash)
+                    steps.add(descendantOrSelf());
+                pos++;
+                steps.add(step());
+            }
+            return new Path(absolute, optimize(steps));
+        }
+
+        private boolean startsStep() {
+            int t = type();
+            return t == TDot || t == TDoubleDot || t == TAt || t == TStar || t == TName;
+        }
+
+        private static Step descendantOrSelf() {
+            return new Step(DescendantOrSelf, NodeTest, "", Collections.emptyList());
+        }
+
+        private Step step() {
+            if (type() == TDot) {
+                pos++;
+                return new Step(Self, NodeTest, "", Collections.emptyList());
+            }
+            if (type() == TDoubleDot) {
+                pos++;
+                return new Step(Parent, NodeTest, "", Collections.emptyList());
+            }
+
+            int axis = Child;
+            if (type() == TAt) {
+                axis = Attribute;
+                pos++;
+            } else if (type() == TName && type(1) == TAxis) {
+                Integer named = Axes.get(value());
+                if (named == null)
+                    throw new Unsupported(); // the namespace axis
+                axis = named;
+                pos += 2;
+            }
+
+            int test;
+            String name = "";
+            if (type() == TStar) {
+                test = AnyName;
+                pos++;
+            } else if (type() == TName && type(1) == TOpenParen) {
+                String nodeType = value();
+                if (nodeType.equals("text"))
+                    test = TextTest;
+                else if (nodeType.equals("node"))
+                    test = NodeTest;
+                else if (nodeType.equals("comment"))
+                    test = CommentTest;
+                else
+                    throw new Unsupported();
+                pos += 2;
+                expect(TCloseParen);
+            } else if (type() == TName) {
+                test = NameTest;
+                name = value();
+                pos++;
+            } else {
+                throw new Unsupported();
+            }
+
+            List<Expr> predicates = new ArrayList<>();
+            while (type() == TOpenBracket) {
+                pos++;
+                predicates.add(or());
+                expect(TCloseBracket);
+            }
+            return new Step(axis, test, name, predicates);
+        }
+
+        /** {@code //x} is short for {@code /descendant-or-self::node()/child::x}; without positional predicates, that
+         is the same as {@code /descendant::x}, which saves collecting every node. */
+        private static List<Step> optimize(List<Step> steps) {
+            List<Step> optimized = new ArrayList<>(steps.size());
+            for (int i = 0; i < steps.size(); i++) {
+                Step step = steps.get(i);
+                if (step.axis == DescendantOrSelf && step.test == NodeTest && step.predicates.isEmpty() &&
+                    i + 1 < steps.size() && steps.get(i + 1).axis == Child && !steps.get(i + 1).positional()) {
+                    Step child = steps.get(++i);
+                    optimized.add(new Step(Descendant, child.test, child.name, child.predicates));
+                } else {
+                    optimized.add(step);
+                }
+            }
+            return optimized;
+        }
+    }
+}
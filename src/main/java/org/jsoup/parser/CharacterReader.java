@@ -21,6 +21,7 @@ public final class CharacterReader {
     static final int maxBufferLen = 1024 * 32; // visible for testing
     static final int readAheadLimit = (int) (maxBufferLen * 0.75); // visible for testing
     private static final int minReadAheadLen = 1024; // the minimum mark length supported. No HTML entities can be larger than this.
+    static final int maxGrownBufferLen = maxBufferLen * 32; // the buffer may grow to this when reading very large tokens. visible for testing
 
     private char[] charBuf;
     private Reader reader;
@@ -30,7 +31,12 @@ public final class CharacterReader {
     private int readerPos;
     private int bufMark = -1;
     private static final int stringCacheSize = 512;
-    private String[] stringCache = new String[stringCacheSize]; // holds reused strings in this doc, to lessen garbage
+    private String[] stringCache; // holds reused strings in this doc, to lessen garbage
+
+    // a char buffer and string cache are reused by the next reader on the same thread, once this reader is closed. Only
+    // one of each is held idle per thread; a reader opened while another is in use allocates its own
+    private static final ThreadLocal<char[]> threadLocalBuffer = new ThreadLocal<>();
+    private static final ThreadLocal<String[]> threadLocalStringCache = new ThreadLocal<>();
 
     @Nullable private ArrayList<Integer> newlinePositions = null; // optionally track the pos() position of newlines - scans during bufferUp()
     private int lineNumberOffset = 1; // line numbers start at 1; += newlinePosition[indexof(pos)]
@@ -39,7 +45,12 @@ public final class CharacterReader {
         Validate.notNull(input);
         Validate.isTrue(input.markSupported());
         reader = input;
-        charBuf = new char[Math.min(sz, maxBufferLen)];
+        char[] buffer = threadLocalBuffer.get();
+        if (buffer != null) threadLocalBuffer.remove();
+        charBuf = buffer != null ? buffer : new char[Math.min(sz, maxBufferLen)];
+        String[] cache = threadLocalStringCache.get();
+        if (cache != null) threadLocalStringCache.remove();
+        stringCache = cache != null ? cache : new String[stringCacheSize];
         bufferUp();
     }
 
@@ -58,6 +69,10 @@ public final class CharacterReader {
             reader.close();
         } catch (IOException ignored) {
         } finally {
+            if (charBuf.length == maxBufferLen) // not retaining small buffers, or those grown for large tokens
+                threadLocalBuffer.set(charBuf);
+            threadLocalStringCache.set(stringCache);
+
             reader = null;
             charBuf = null;
             stringCache = null;
@@ -65,10 +80,19 @@ public final class CharacterReader {
     }
 
     private boolean readFully; // if the underlying stream has been completely read, no value in further buffering
+    private boolean growBuffer; // set when a consume ran off the end of the buffer: a large token, so read more at once
     private void bufferUp() {
         if (readFully || bufPos < bufSplitPoint)
             return;
 
+        if (growBuffer) {
+            // a token spans refills (e.g. a large script, or data uri); doubling the buffer on each refill it spans means
+            // the token is read in a few large chunks, vs many 32K chunks that must each be copied and stitched together
+            growBuffer = false;
+            if (bufLength == charBuf.length && charBuf.length >= maxBufferLen && charBuf.length < maxGrownBufferLen)
+                charBuf = new char[charBuf.length * 2];
+        }
+
         final int pos;
         final int offset;
         if (bufMark != -1) {
@@ -81,9 +105,9 @@ public final class CharacterReader {
 
         try {
             final long skipped = reader.skip(pos);
-            reader.mark(maxBufferLen);
+            reader.mark(charBuf.length);
             int read = 0;
-            while (read <= minReadAheadLen) {
+            while (read <= minReadAheadLen || (read < charBuf.length && reader.ready())) { // fill the buffer while input is available without blocking
                 int thisRead = reader.read(charBuf, read, charBuf.length - read);
                 if (thisRead == -1)
                     readFully = true;
@@ -99,7 +123,7 @@ public final class CharacterReader {
                 bufPos = offset;
                 if (bufMark != -1)
                     bufMark = 0;
-                bufSplitPoint = Math.min(bufLength, readAheadLimit);
+                bufSplitPoint = Math.min(bufLength, Math.max(readAheadLimit, charBuf.length / 4 * 3));
             }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -366,6 +390,7 @@ public final class CharacterReader {
             // the string we're looking for may be straddling a buffer boundary, so keep (length - 1) characters
             // unread in case they contain the beginning of the search string
             int endPos = bufLength - seq.length() + 1;
+            growBuffer = true;
             String consumed = cacheString(charBuf, stringCache, bufPos, endPos - bufPos);
             bufPos = endPos;
             return consumed;
@@ -394,6 +419,8 @@ public final class CharacterReader {
             pos++;
         }
 
+        if (pos == remaining && !readFully)
+            growBuffer = true;
         bufPos = pos;
         return pos > start ? cacheString(charBuf, stringCache, start, pos -start) : "";
     }
@@ -410,6 +437,8 @@ public final class CharacterReader {
                 break;
             pos++;
         }
+        if (pos == remaining && !readFully)
+            growBuffer = true;
         bufPos = pos;
         return bufPos > start ? cacheString(charBuf, stringCache, start, pos -start) : "";
     }
@@ -432,6 +461,8 @@ public final class CharacterReader {
                     pos++;
             }
         }
+        if (pos == remaining && !readFully)
+            growBuffer = true;
         bufPos = pos;
         return pos > start ? cacheString(charBuf, stringCache, start, pos -start) : "";
     }
@@ -457,6 +488,8 @@ public final class CharacterReader {
                     pos++;
             }
         }
+        if (pos == remaining && !readFully)
+            growBuffer = true;
         bufPos = pos;
         return pos > start ? cacheString(charBuf, stringCache, start, pos -start) : "";
     }
@@ -479,6 +512,8 @@ public final class CharacterReader {
                     pos++;
             }
         }
+        if (pos == remaining && !readFully)
+            growBuffer = true;
         bufPos = pos;
         return pos > start ? cacheString(charBuf, stringCache, start, pos -start) : "";
     }
@@ -507,6 +542,8 @@ public final class CharacterReader {
             pos++;
         }
 
+        if (pos == remaining && !readFully)
+            growBuffer = true;
         bufPos = pos;
         return pos > start ? cacheString(charBuf, stringCache, start, pos -start) : "";
     }
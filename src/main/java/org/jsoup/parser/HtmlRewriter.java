@@ -0,0 +1,499 @@
+package org.jsoup.parser;
+
+import org.jsoup.helper.Validate;
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.QueryParser;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ A streaming HTML rewriter. Rules pair a {@link org.jsoup.select.Selector} CSS query with a handler; as the input is
+ parsed, elements matching a rule are passed to its handler, and the (possibly modified) HTML is written incrementally to
+ the output.
+ <p>Handlers receive a regular {@link Element}, and so can change attributes, replace content, or remove the element
+ using the usual DOM methods. A handler is called once the matched element and all of its content have been parsed.</p>
+ <p>The input is parsed with the HTML tree builder, so the output is the same as parsing the input into a Document,
+ applying the handlers, and serializing it (without pretty-printing); with one exception: attributes on a repeated
+ {@code <html>} or {@code <body>} start tag, which the parser merges into the existing element, are not output if that
+ element's start tag has already been written. But as content is written out it is discarded, so
+ memory is held only for the chain of open ancestor elements, plus any matched elements that are awaiting their
+ handler. (Tables and unclosed formatting elements such as {@code <b>} are also held until closed, as the tree builder
+ may still restructure them.)</p>
+ <p>Because a rule is evaluated when the element's start tag is parsed, the query can only consider the element itself and
+ its ancestors. Queries that depend on the element's content or later siblings (such as {@code :has()},
+ {@code :contains()}, {@code :last-child}) will not match. Earlier siblings will generally have already been written
+ out, so sibling combinators and index queries are also not supported.</p>
+ <p>For example:</p>
+ <pre>
+ HtmlRewriter rewriter = new HtmlRewriter()
+     .on("a[href]", el -&gt; el.attr("href", proxy(el.absUrl("href"))))
+     .on("script[src*=tracker]", Element::remove);
+ rewriter.rewrite(reader, baseUri, writer);
+ </pre>
+ <p>An HtmlRewriter may be reused for multiple inputs, but is not thread-safe.</p>
+ */
+public class HtmlRewriter {
+    private final List<Rule> rules = new ArrayList<>();
+    private NodeWriter writer = new HtmlWriter();
+
+    /**
+     Add a rule to pass elements matching the CSS query to the handler.
+     @param cssQuery a {@link org.jsoup.select.Selector} CSS query
+     @param handler the handler to call with each matching element
+     @return this HtmlRewriter, for chaining
+     @throws org.jsoup.select.Selector.SelectorParseException (unchecked) on an invalid CSS query.
+     */
+    public HtmlRewriter on(String cssQuery, Consumer<Element> handler) {
+        Validate.notEmpty(cssQuery);
+        return on(QueryParser.parse(cssQuery), handler);
+    }
+
+    /**
+     Add a rule to pass elements matching the evaluator to the handler.
+     @param evaluator an element evaluator
+     @param handler the handler to call with each matching element
+     @return this HtmlRewriter, for chaining
+     */
+    public HtmlRewriter on(Evaluator evaluator, Consumer<Element> handler) {
+        Validate.notNull(evaluator);
+        Validate.notNull(handler);
+        rules.add(new Rule(evaluator, handler));
+        return this;
+    }
+
+    /**
+     Set how nodes are written to the output. By default, nodes are written as their HTML. A writer may instead
+     transform or omit nodes as they are written, without the whole document being held (e.g. the streaming
+     {@link org.jsoup.safety.Cleaner}).
+     @param writer the node writer to use
+     @return this HtmlRewriter, for chaining
+     */
+    public HtmlRewriter writer(NodeWriter writer) {
+        Validate.notNull(writer);
+        this.writer = writer;
+        return this;
+    }
+
+    /**
+     Writes nodes to the output, as the rewriter finishes with them. An element that is written while its content is
+     still being parsed is written in three parts: its start with {@link #writeStart}, then its content (as nodes, or
+     further open elements), and then its end with {@link #writeEnd}. Other nodes are written whole, with
+     {@link #write}. Nodes are still attached to the parsed tree while they are written (and are removed after), so
+     their ancestors may be inspected; but the writer must not move or remove the nodes.
+     */
+    public interface NodeWriter {
+        /**
+         Write the start of an element whose content will follow.
+         @param el the element
+         @param out the output
+         @throws IOException if writing fails
+         */
+        void writeStart(Element el, Appendable out) throws IOException;
+
+        /**
+         Write the end of an element that was started with {@link #writeStart}, after its content.
+         @param el the element
+         @param out the output
+         @throws IOException if writing fails
+         */
+        void writeEnd(Element el, Appendable out) throws IOException;
+
+        /**
+         Write a node, including all of its content.
+         @param node the node
+         @param out the output
+         @throws IOException if writing fails
+         */
+        void write(Node node, Appendable out) throws IOException;
+    }
+
+    /** The default writer, which writes each node's HTML. */
+    private static final class HtmlWriter implements NodeWriter {
+        @Override
+        public void writeStart(Element el, Appendable out) throws IOException {
+            out.append('<').append(el.tagName());
+            if (el.attributesSize() > 0)
+                out.append(el.attributes().html());
+            out.append('>');
+        }
+
+        @Override
+        public void writeEnd(Element el, Appendable out) throws IOException {
+            out.append("</").append(el.tagName()).append('>');
+        }
+
+        @Override
+        public void write(Node node, Appendable out) throws IOException {
+            out.append(node.outerHtml());
+        }
+    }
+
+    /**
+     Parse the input HTML, apply the rules, and write the rewritten HTML to the output as it is produced.
+     @param input HTML to read
+     @param baseUri base URI of the input, for resolving relative URLs
+     @param output the output to write to. If this is a buffered writer, it is the caller's responsibility to flush it.
+     @throws IOException if reading the input or writing the output fails
+     */
+    public void rewrite(Reader input, String baseUri, Appendable output) throws IOException {
+        Validate.notNull(output);
+        run(input, baseUri, output);
+    }
+
+    /**
+     Parse the input HTML and apply the rules, discarding the output. Useful when the handlers are used to extract
+     content from the input, rather than to modify it; content that has been handled (or that no rule matched) is not
+     retained, and is not serialized.
+     @param input HTML to read
+     @param baseUri base URI of the input, for resolving relative URLs
+     @throws IOException if reading the input fails
+     */
+    public void process(Reader input, String baseUri) throws IOException {
+        run(input, baseUri, null);
+    }
+
+    /**
+     Parse the input as a body fragment (as {@link org.jsoup.Jsoup#parseBodyFragment(String, String)} does), apply the
+     rules, and write the rewritten HTML of the body's content to the output as it is produced.
+     @param input HTML to read
+     @param baseUri base URI of the input, for resolving relative URLs
+     @param output the output to write to. If this is a buffered writer, it is the caller's responsibility to flush it.
+     @throws IOException if reading the input or writing the output fails
+     */
+    public void rewriteBodyFragment(Reader input, String baseUri, Appendable output) throws IOException {
+        Validate.notNull(output);
+        run(input, baseUri, output, true);
+    }
+
+    private void run(Reader input, String baseUri, @Nullable Appendable output) throws IOException {
+        run(input, baseUri, output, false);
+    }
+
+    private void run(Reader input, String baseUri, @Nullable Appendable output, boolean bodyFragment) throws IOException {
+        Validate.notNull(input);
+        Validate.notNull(baseUri);
+        RewritingTreeBuilder treeBuilder = new RewritingTreeBuilder(rules, writer, output);
+        try {
+            treeBuilder.rewrite(input, baseUri, bodyFragment);
+        } catch (org.jsoup.UncheckedIOException e) {
+            throw e.ioException(); // CharacterReader wraps read errors
+        }
+    }
+
+    /**
+     Parse the input HTML, apply the rules, and return the rewritten HTML.
+     @param html HTML to rewrite
+     @param baseUri base URI of the input, for resolving relative URLs
+     @return rewritten HTML
+     */
+    public String rewrite(String html, String baseUri) {
+        StringBuilder sb = StringUtil.borrowBuilder();
+        try {
+            rewrite(new StringReader(html), baseUri, sb);
+        } catch (IOException e) {
+            throw new org.jsoup.UncheckedIOException(e); // ought never happen
+        }
+        return StringUtil.releaseBuilder(sb);
+    }
+
+    private static final class Rule {
+        final Evaluator evaluator;
+        final Consumer<Element> handler;
+
+        Rule(Evaluator evaluator, Consumer<Element> handler) {
+            this.evaluator = evaluator;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     An HTML tree builder that, after each token is processed, writes out (if there is an output) and removes the nodes
+     that the parser has finished with.
+     */
+    private static final class RewritingTreeBuilder extends HtmlTreeBuilder {
+        private final List<Rule> rules;
+        private final NodeWriter writer;
+        private final @Nullable Appendable out; // null if the output is being discarded
+        private final ArrayList<Element> opened = new ArrayList<>(); // elements whose start tag has been written, outermost first
+        private final IdentityHashMap<Element, List<Rule>> matched = new IdentityHashMap<>(); // elements awaiting their handlers
+        private @Nullable Element fragmentRoot; // when parsing a fragment, the context element; its content is written, but not its tags
+        private boolean complete = false; // set once the input has been fully parsed
+        private final IdentityHashMap<Element, Open> open = new IdentityHashMap<>(); // elements that are, or contain, an element on the stack
+        private @Nullable OpenStack openStack; // the tree builder's stack, recording the changes to sync to the open map
+
+        RewritingTreeBuilder(List<Rule> rules, NodeWriter writer, @Nullable Appendable out) {
+            this.rules = rules;
+            this.writer = writer;
+            this.out = out;
+        }
+
+        void rewrite(Reader input, String baseUri, boolean bodyFragment) throws IOException {
+            if (!input.markSupported())
+                input = new BufferedReader(input, CharacterReader.maxBufferLen);
+            if (bodyFragment) {
+                fragmentRoot = initialiseParseFragment(input, Document.createShell(baseUri).body(), baseUri, new Parser(this));
+                opened.add(fragmentRoot);
+            } else {
+                initialiseParse(input, baseUri, new Parser(this));
+            }
+            openStack = new OpenStack(stack);
+            stack = openStack;
+            doc.parser(Parser.htmlParser()); // so that handlers parsing HTML fragments don't reenter this tree builder
+            doc.outputSettings().prettyPrint(false); // pretty-printing depends on context that has been discarded
+
+            while (stepParser())
+                flush();
+            complete = true;
+            flush();
+
+            completeParse();
+        }
+
+        @Override
+        protected void onNodeInserted(Node node, @Nullable Token token) {
+            super.onNodeInserted(node, token);
+            if (!(node instanceof Element))
+                return;
+
+            Element el = (Element) node;
+            for (Rule rule : rules) {
+                if (rule.evaluator.matches(doc, el)) {
+                    List<Rule> elRules = matched.get(el);
+                    if (elRules == null) {
+                        elRules = new ArrayList<>(1);
+                        matched.put(el, elRules);
+                    }
+                    elRules.add(rule);
+                }
+            }
+        }
+
+        /**
+         Writes out every node that the parser has finished with. Opened elements that have since been closed are
+         completed with their remaining content and end tag; then the content of the innermost open element is written,
+         descending into any open child that can be streamed.
+         */
+        private void flush() throws IOException {
+            int depth = opened.size();
+            if (depth > 0 && !isOpen(opened.get(depth - 1))) {
+                do { depth--; } while (depth > 0 && !isOpen(opened.get(depth - 1)));
+
+                for (int i = opened.size() - 1; i >= depth; i--) {
+                    Element el = opened.remove(i);
+                    drain(el);
+                    if (out != null && el != fragmentRoot)
+                        writer.writeEnd(el, out);
+                    el.remove();
+                }
+            }
+
+            Element parent = depth > 0 ? opened.get(depth - 1) : doc;
+            Element child;
+            while ((child = drain(parent)) != null && canStream(child)) {
+                if (out != null)
+                    writer.writeStart(child, out);
+                opened.add(child);
+                parent = child;
+            }
+        }
+
+        /**
+         Writes out and removes the leading children of the parent that the parser has finished with.
+         @return the first child that is still open, or null if all children have been written
+         */
+        private @Nullable Element drain(Element parent) throws IOException {
+            while (parent.childNodeSize() > 0) {
+                Node child = parent.childNode(0);
+                if (child instanceof Element && !isSettled((Element) child))
+                    return (Element) child;
+                if (runHandlers(child))
+                    continue; // the handlers may have modified or removed the child, or inserted siblings
+
+                if (out != null)
+                    writer.write(child, out);
+                child.remove();
+            }
+            return null;
+        }
+
+        /**
+         Runs the handlers for any matched elements in this node's subtree, in document order.
+         @return true if any handlers were run
+         */
+        private boolean runHandlers(Node node) {
+            if (matched.isEmpty() || !(node instanceof Element))
+                return false;
+
+            List<Element> found = new ArrayList<>();
+            NodeTraversor.traverse((n, depth) -> {
+                if (n instanceof Element && matched.containsKey(n))
+                    found.add((Element) n);
+            }, node);
+
+            for (Element el : found) {
+                List<Rule> elRules = matched.remove(el);
+                for (Rule rule : elRules) {
+                    if (el.ownerDocument() == null)
+                        break; // an earlier handler has removed this element (or an ancestor); it may have moved it
+                    rule.handler.accept(el);
+                }
+            }
+            return !found.isEmpty();
+        }
+
+        private boolean canStream(Element el) {
+            return el.childNodeSize() > 0
+                && !matched.containsKey(el)
+                && !el.normalName().equals("table") // content may be foster parented before the table
+                && !isInActiveFormattingElements(el) // may be reparented by the adoption agency
+                && el != getHeadElement()
+                && !(el.normalName().equals("body") && framesetOk()); // body may be replaced by a frameset
+        }
+
+        private boolean isSettled(Element el) {
+            if (isOpen(el))
+                return false;
+            if (el == getHeadElement()) // content may still be added to the head until the body starts
+                return complete || el.nextElementSibling() != null;
+            return true;
+        }
+
+        /**
+         Tests if the element, or any of its descendants, is still on the stack of open elements. An element can leave
+         the stack while a descendant stays open (e.g. {@code </form>} removes the form from the middle of the stack),
+         and the parser will keep adding to that descendant.
+         */
+        private boolean isOpen(Element el) {
+            if (complete)
+                return false;
+            syncOpen();
+            return open.containsKey(el);
+        }
+
+        /**
+         Counts an element on the stack, or with an open child. The element is in the open map while its count is above
+         zero. The parent that was counted is retained, so that it is the one uncounted, even if the element has since
+         been moved.
+         */
+        private static final class Open {
+            int count;
+            @Nullable Element parent;
+        }
+
+        /**
+         Applies the stack changes made since the last sync to the open map. Pushes and pops at the top of the stack are
+         applied in turn, each usually stopping at the parent (which is itself on the stack). Other changes, made when
+         the tree builder restructures the tree (e.g. the adoption agency, or a form closing), rebuild the map.
+         */
+        private void syncOpen() {
+            OpenStack openStack = this.openStack;
+            if (openStack == null)
+                return;
+            if (openStack.restructured) {
+                open.clear();
+                for (Element el : openStack)
+                    enter(el);
+            } else {
+                for (Element el : openStack.pushed) // pushes first, so that counts don't go below zero
+                    enter(el);
+                for (Element el : openStack.popped)
+                    leave(el);
+            }
+            openStack.reset();
+        }
+
+        private void enter(Element el) {
+            for (Element cur = el; cur != null; ) {
+                Open o = open.get(cur);
+                if (o == null) {
+                    o = new Open();
+                    open.put(cur, o);
+                }
+                if (++o.count > 1)
+                    return; // already counted towards its parent
+                o.parent = cur.parent();
+                cur = o.parent;
+            }
+        }
+
+        private void leave(Element el) {
+            for (Element cur = el; cur != null; ) {
+                Open o = open.get(cur);
+                if (o == null)
+                    return; // entered before a rebuild that no longer held it
+                if (--o.count > 0)
+                    return;
+                open.remove(cur);
+                cur = o.parent;
+            }
+        }
+    }
+
+    /**
+     The tree builder's stack of open elements, which records pushes and pops at its top, and notes any other change,
+     so that the rewriter can find the open elements without walking the stack after each token.
+     */
+    private static final class OpenStack extends ArrayList<Element> {
+        private static final long serialVersionUID = 1L;
+        final ArrayList<Element> pushed = new ArrayList<>();
+        final ArrayList<Element> popped = new ArrayList<>();
+        boolean restructured = true; // build from the initial contents
+
+        OpenStack(ArrayList<Element> stack) {
+            super(stack);
+        }
+
+        void reset() {
+            pushed.clear();
+            popped.clear();
+            restructured = false;
+        }
+
+        @Override public boolean add(Element el) {
+            pushed.add(el);
+            return super.add(el);
+        }
+
+        @Override public Element remove(int index) {
+            Element el = super.remove(index);
+            if (index == size()) // was the top
+                popped.add(el);
+            else
+                restructured = true;
+            return el;
+        }
+
+        @Override public void add(int index, Element el) {
+            restructured = true;
+            super.add(index, el);
+        }
+
+        @Override public Element set(int index, Element el) {
+            restructured = true;
+            return super.set(index, el);
+        }
+
+        @Override public boolean remove(Object o) {
+            restructured = true;
+            return super.remove(o);
+        }
+
+        @Override public void clear() {
+            restructured = true;
+            super.clear();
+        }
+    }
+}
@@ -91,9 +91,29 @@ public class HtmlTreeBuilder extends TreeBuilder {
     }
 
     List<Node> parseFragment(String inputFragment, @Nullable Element context, String baseUri, Parser parser) {
+        Element root = initialiseParseFragment(new StringReader(inputFragment), context, baseUri, parser);
+        runParser();
+        completeParse();
+        if (root != null) {
+            // depending on context and the input html, content may have been added outside of the root el
+            // e.g. context=p, input=div, the div will have been pushed out.
+            List<Node> nodes = root.siblingNodes();
+            if (!nodes.isEmpty())
+                root.insertChildren(-1, nodes);
+            return root.childNodes();
+        }
+        else
+            return doc.childNodes();
+    }
+
+    /**
+     Set up to parse a fragment, in the context of the (optional) context element.
+     @return the root element that the fragment's nodes are inserted into, or null if there is no context
+     */
+    @Nullable Element initialiseParseFragment(Reader input, @Nullable Element context, String baseUri, Parser parser) {
         // context may be null
         state = HtmlTreeBuilderState.Initial;
-        initialiseParse(new StringReader(inputFragment), baseUri, parser);
+        initialiseParse(input, baseUri, parser);
         contextElement = context;
         fragmentParsing = true;
         Element root = null;
@@ -148,18 +168,7 @@ public class HtmlTreeBuilder extends TreeBuilder {
                 formSearch = formSearch.parent();
             }
         }
-
-        runParser();
-        if (context != null) {
-            // depending on context and the input html, content may have been added outside of the root el
-            // e.g. context=p, input=div, the div will have been pushed out.
-            List<Node> nodes = root.siblingNodes();
-            if (!nodes.isEmpty())
-                root.insertChildren(-1, nodes);
-            return root.childNodes();
-        }
-        else
-            return doc.childNodes();
+        return root;
     }
 
     @Override
@@ -931,6 +931,7 @@ enum HtmlTreeBuilderState {
 
                     Element replacement = new Element(tb.tagFor(node.nodeName(), ParseSettings.preserveCase), tb.getBaseUri());
                     // case will follow the original node (so honours ParseSettings)
+                    tb.onNodeCloned();
                     tb.replaceActiveFormattingElement(node, replacement);
                     tb.replaceOnStack(node, replacement);
                     node = replacement;
@@ -961,6 +962,7 @@ enum HtmlTreeBuilderState {
 
                 Element adopter = new Element(formatEl.tag(), tb.getBaseUri());
                 adopter.attributes().addAll(formatEl.attributes());
+                tb.onNodeCloned();
                 adopter.appendChildren(furthestBlock.childNodes());
                 furthestBlock.appendChild(adopter);
                 tb.removeFromActiveFormattingElements(formatEl);
@@ -0,0 +1,22 @@
+package org.jsoup.parser;
+
+/**
+ Thrown when a parse exceeds one of its {@link ParseLimits}, and the limits are set to fail fast.
+ */
+public final class ParseLimitException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final ParseLimits.Limit limit;
+
+    ParseLimitException(ParseLimits.Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    /**
+     Get the limit that was exceeded.
+     @return the exceeded limit
+     */
+    public ParseLimits.Limit limit() {
+        return limit;
+    }
+}
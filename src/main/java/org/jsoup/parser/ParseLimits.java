@@ -0,0 +1,197 @@
+package org.jsoup.parser;
+
+import org.jsoup.helper.Validate;
+
+/**
+ Resource budgets for a parse, to bound the work done on hostile or pathological input (such as very deep nesting, or
+ floods of elements, attributes, or entities).
+ <p>When a limit is exceeded, the parser either truncates the document gracefully (the default), or fails fast by
+ throwing a {@link ParseLimitException}. When truncating, the parse stops at the token that exceeded the limit, and the
+ document holds the content that was parsed up to that point; so a limit may be overrun by the few nodes created by
+ that token. (The exception is the attribute limit: attributes past the limit are dropped, and the parse continues.)</p>
+ <p>By default, no limits are applied except for {@link #maxAttributes()}. Set the limits on a parser with
+ {@link Parser#parseLimits(ParseLimits)}:</p>
+ <pre>
+ Parser parser = Parser.htmlParser().parseLimits(new ParseLimits()
+     .maxNodes(100_000)
+     .maxDepth(256)
+     .maxParseTime(500)
+     .failFast(true));
+ Document doc = Jsoup.parse(html, baseUri, parser);
+ </pre>
+ */
+public class ParseLimits implements Cloneable {
+    /**
+     The limits that may be exceeded.
+     */
+    public enum Limit {
+        /** The number of nodes created by the parser. */
+        Nodes,
+        /** The depth of open elements. */
+        Depth,
+        /** The number of attributes on one element. */
+        Attributes,
+        /** The total length of text (and data) content. */
+        Text,
+        /** The number of tokens read by the tokeniser. */
+        Tokens,
+        /** The time spent parsing. */
+        Time
+    }
+
+    static final int DefaultMaxAttributes = 512;
+
+    private int maxNodes = Integer.MAX_VALUE;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxAttributes = DefaultMaxAttributes;
+    private long maxTextLength = Long.MAX_VALUE;
+    private long maxTokens = Long.MAX_VALUE;
+    private long maxParseTime = 0;
+    private boolean failFast = false;
+
+    /**
+     Get the maximum number of nodes (elements, text, comments, etc.) the parser will create.
+     @return the max number of nodes
+     */
+    public int maxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     Set the maximum number of nodes (elements, text, comments, etc.) the parser will create.
+     @param maxNodes the max number of nodes. Must be {@literal >} 0.
+     @return this, for chaining
+     */
+    public ParseLimits maxNodes(int maxNodes) {
+        Validate.isTrue(maxNodes > 0, "maxNodes must be > 0");
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    /**
+     Get the maximum depth of open elements.
+     @return the max depth
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     Set the maximum depth of open elements. The parser's work for each token can grow with the depth of the open
+     element stack, so limiting the depth bounds that work.
+     @param maxDepth the max depth. Must be {@literal >} 0.
+     @return this, for chaining
+     */
+    public ParseLimits maxDepth(int maxDepth) {
+        Validate.isTrue(maxDepth > 0, "maxDepth must be > 0");
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     Get the maximum number of attributes on one element. The default is 512.
+     @return the max number of attributes per element
+     */
+    public int maxAttributes() {
+        return maxAttributes;
+    }
+
+    /**
+     Set the maximum number of attributes on one element. Attributes past this limit are dropped (or, if failing fast,
+     the parse fails).
+     @param maxAttributes the max number of attributes per element. Must be {@literal >=} 0.
+     @return this, for chaining
+     */
+    public ParseLimits maxAttributes(int maxAttributes) {
+        Validate.isTrue(maxAttributes >= 0, "maxAttributes must be >= 0");
+        this.maxAttributes = maxAttributes;
+        return this;
+    }
+
+    /**
+     Get the maximum total length of text (and script / style data) content, in chars.
+     @return the max text length
+     */
+    public long maxTextLength() {
+        return maxTextLength;
+    }
+
+    /**
+     Set the maximum total length of text (and script / style data) content, in chars. This is counted after character
+     references have been decoded.
+     @param maxTextLength the max text length. Must be {@literal >=} 0.
+     @return this, for chaining
+     */
+    public ParseLimits maxTextLength(long maxTextLength) {
+        Validate.isTrue(maxTextLength >= 0, "maxTextLength must be >= 0");
+        this.maxTextLength = maxTextLength;
+        return this;
+    }
+
+    /**
+     Get the maximum number of tokens (tags, runs of text, comments, etc.) the tokeniser will read.
+     @return the max number of tokens
+     */
+    public long maxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     Set the maximum number of tokens (tags, runs of text, comments, etc.) the tokeniser will read.
+     @param maxTokens the max number of tokens. Must be {@literal >} 0.
+     @return this, for chaining
+     */
+    public ParseLimits maxTokens(long maxTokens) {
+        Validate.isTrue(maxTokens > 0, "maxTokens must be > 0");
+        this.maxTokens = maxTokens;
+        return this;
+    }
+
+    /**
+     Get the maximum time to spend on a parse, in milliseconds. 0 if there is no limit.
+     @return the max parse time
+     */
+    public long maxParseTime() {
+        return maxParseTime;
+    }
+
+    /**
+     Set the maximum time to spend on a parse, in milliseconds. The time is checked periodically as the input is read,
+     so may be overrun slightly. If the input is being read from a stream, time spent waiting for input is included.
+     @param millis the max parse time in milliseconds, or 0 for no limit. Must be {@literal >=} 0.
+     @return this, for chaining
+     */
+    public ParseLimits maxParseTime(long millis) {
+        Validate.isTrue(millis >= 0, "maxParseTime must be >= 0");
+        this.maxParseTime = millis;
+        return this;
+    }
+
+    /**
+     Get whether the parser fails fast when a limit is exceeded.
+     @return true if the parser throws when a limit is exceeded; false if it truncates
+     */
+    public boolean failFast() {
+        return failFast;
+    }
+
+    /**
+     Set whether the parser fails fast, by throwing a {@link ParseLimitException}, when a limit is exceeded; or
+     truncates the document (the default).
+     @param failFast true to throw when a limit is exceeded; false to truncate
+     @return this, for chaining
+     */
+    public ParseLimits failFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    @Override
+    public ParseLimits clone() {
+        try {
+            return (ParseLimits) super.clone(); // all primitives
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
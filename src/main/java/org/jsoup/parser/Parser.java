@@ -4,6 +4,7 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 
+import javax.annotation.Nullable;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.List;
@@ -11,13 +12,19 @@ import java.util.List;
 /**
  Parses HTML or XML into a {@link org.jsoup.nodes.Document}. Generally, it is simpler to use one of the parse methods in
  {@link org.jsoup.Jsoup}.
- <p>Note that a Parser instance object is not threadsafe. To reuse a Parser configuration in a multi-threaded
- environment, use {@link #newInstance()} to make copies. */
+ <p>A Parser instance may be shared between threads (for example, through a document, when parsing fragments into its
+ elements from different threads), as each parse runs in its own copy of the parser's {@link TreeBuilder}. Parse
+ errors are collected into the parser's shared list, so when tracking errors, use {@link #newInstance()} to make a
+ copy for each thread.</p>
+ <p>The tokeniser and read buffers used in a parse are reused by later parses on the same thread, so repeated fragment
+ parsing (such as with {@link Element#html(String)} or {@link Element#append(String)}) does not recreate them each
+ time.</p> */
 public class Parser {
     private TreeBuilder treeBuilder;
     private ParseErrorList errors;
     private ParseSettings settings;
     private boolean trackPosition = false;
+    @Nullable private ParseLimits parseLimits;
 
     /**
      * Create a new Parser, using the specified TreeBuilder
@@ -42,18 +49,19 @@ public class Parser {
         errors = new ParseErrorList(copy.errors); // only copies size, not contents
         settings = new ParseSettings(copy.settings);
         trackPosition = copy.trackPosition;
+        parseLimits = copy.parseLimits != null ? copy.parseLimits.clone() : null;
     }
     
     public Document parseInput(String html, String baseUri) {
-        return treeBuilder.parse(new StringReader(html), baseUri, this);
+        return parseInput(new StringReader(html), baseUri);
     }
 
     public Document parseInput(Reader inputHtml, String baseUri) {
-        return treeBuilder.parse(inputHtml, baseUri, this);
+        return treeBuilder.newInstance().parse(inputHtml, baseUri, this); // a tree builder per parse, so parses may run concurrently
     }
 
     public List<Node> parseFragmentInput(String fragment, Element context, String baseUri) {
-        return treeBuilder.parseFragment(fragment, context, baseUri, this);
+        return treeBuilder.newInstance().parseFragment(fragment, context, baseUri, this);
     }
     // gets & sets
     /**
@@ -122,6 +130,27 @@ public class Parser {
         return this;
     }
 
+    /**
+     Get the resource budgets applied to parses by this Parser, if any. By default, no limits are set.
+     @return the current limits, or null if not set
+     @see ParseLimits
+     */
+    public @Nullable ParseLimits parseLimits() {
+        return parseLimits;
+    }
+
+    /**
+     Set resource budgets for parses by this Parser, to bound the work done on hostile input. When a limit is exceeded,
+     the parse is either truncated, or fails with a {@link ParseLimitException}.
+     @param parseLimits the limits to apply, or null to remove them
+     @return this Parser, for chaining
+     @see ParseLimits
+     */
+    public Parser parseLimits(@Nullable ParseLimits parseLimits) {
+        this.parseLimits = parseLimits;
+        return this;
+    }
+
     /**
      Update the ParseSettings of this Parser, to control the case sensitivity of tags and attributes.
      * @param settings the new settings
@@ -236,8 +265,11 @@ public class Parser {
      * @return an unescaped string
      */
     public static String unescapeEntities(String string, boolean inAttribute) {
-        Tokeniser tokeniser = new Tokeniser(new CharacterReader(string), ParseErrorList.noTracking());
-        return tokeniser.unescapeEntities(inAttribute);
+        CharacterReader reader = new CharacterReader(string);
+        Tokeniser tokeniser = new Tokeniser(reader, ParseErrorList.noTracking());
+        String unescaped = tokeniser.unescapeEntities(inAttribute);
+        reader.close(); // releases the buffer for reuse
+        return unescaped;
     }
 
     // builders
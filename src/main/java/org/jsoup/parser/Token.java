@@ -49,8 +49,11 @@ abstract class Token {
     static void reset(StringBuilder sb) {
         if (sb != null) {
             sb.delete(0, sb.length());
+            if (sb.capacity() > MaxRetainedBuilderSize)
+                sb.trimToSize(); // don't hold on to a large buffer, as tokens are reused across parses
         }
     }
+    private static final int MaxRetainedBuilderSize = 8 * 1024;
 
     static final class Doctype extends Token {
         final StringBuilder name = new StringBuilder();
@@ -130,19 +133,23 @@ abstract class Token {
             hasAttrValue = false;
             selfClosing = false;
             attributes = null;
+            droppedAttributes = false;
             return this;
         }
 
         /* Limits runaway crafted HTML from spewing attributes and getting a little sluggish in ensureCapacity.
         Real-world HTML will P99 around 8 attributes, so plenty of headroom. Implemented here and not in the Attributes
-        object so that API users can add more if ever required. */
-        private static final int MaxAttributes = 512;
+        object so that API users can add more if ever required. Set by the Tokeniser from the ParseLimits. */
+        int maxAttributes = ParseLimits.DefaultMaxAttributes;
+        boolean droppedAttributes = false; // if attributes past maxAttributes were dropped
 
         final void newAttribute() {
             if (attributes == null)
                 attributes = new Attributes();
 
-            if (hasAttrName && attributes.size() < MaxAttributes) {
+            if (hasAttrName && attributes.size() >= maxAttributes) {
+                droppedAttributes = true;
+            } else if (hasAttrName) {
                 // the tokeniser has skipped whitespace control chars, but trimming could collapse to empty for other control codes, so verify here
                 String name = attrName.length() > 0 ? attrName.toString() : attrNameS;
                 name = name.trim();
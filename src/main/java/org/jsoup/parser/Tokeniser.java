@@ -30,8 +30,8 @@ final class Tokeniser {
         Arrays.sort(notCharRefCharsSorted);
     }
 
-    private final CharacterReader reader; // html input
-    private final ParseErrorList errors; // errors found while tokenising
+    private CharacterReader reader; // html input
+    private ParseErrorList errors; // errors found while tokenising
 
     private TokeniserState state = TokeniserState.Data; // current tokenisation state
     @Nullable private Token emitPending = null; // the token we are about to emit on next read
@@ -52,14 +52,87 @@ final class Tokeniser {
     private static final int Unset = -1;
     private int markupStartPos, charStartPos = Unset; // reader pos at the start of markup / characters. updated on state transition
 
+    // parse limits, set by the tree builder. So that a long run of text or character references is not decoded and
+    // buffered in full before the limits are checked, read() returns pending characters once they exceed the remaining
+    // text budget, or returns early once past the deadline
+    private boolean limited = false;
+    private long charBudget = Long.MAX_VALUE; // the remaining text length
+    private long deadline = 0; // System.nanoTime() by which tokenising must complete, or 0 if none
+    private boolean timedOut = false;
+    private int steps = 0;
+
     Tokeniser(CharacterReader reader, ParseErrorList errors) {
         this.reader = reader;
         this.errors = errors;
     }
 
+    /**
+     Resets this Tokeniser to read a new input, so that its buffers and tokens can be reused across parses.
+     @param reader the new input
+     @param errors the error list for the new parse
+     */
+    void reset(CharacterReader reader, ParseErrorList errors) {
+        this.reader = reader;
+        this.errors = errors;
+        state = TokeniserState.Data;
+        emitPending = null;
+        isEmitPending = false;
+        charsString = null;
+        Token.reset(charsBuilder);
+        Token.reset(dataBuffer);
+        startPending.reset();
+        endPending.reset();
+        tagPending = startPending;
+        charPending.reset();
+        doctypePending.reset();
+        commentPending.reset();
+        lastStartTag = null;
+        lastStartCloseSeq = null;
+        markupStartPos = 0;
+        charStartPos = Unset;
+        maxAttributes(ParseLimits.DefaultMaxAttributes);
+        limited = false;
+        charBudget = Long.MAX_VALUE;
+        deadline = 0;
+        timedOut = false;
+        steps = 0;
+    }
+
+    /**
+     Sets the text budget and deadline of the parse's limits, which are then also checked as characters are read.
+     @param charBudget the remaining text length
+     @param deadline the System.nanoTime() by which the parse must complete, or 0 for none
+     */
+    void limits(long charBudget, long deadline) {
+        limited = true;
+        this.charBudget = charBudget;
+        this.deadline = deadline;
+    }
+
+    /** Updates the remaining text length, as text is processed. */
+    void charBudget(long charBudget) {
+        this.charBudget = charBudget;
+    }
+
+    /** Tests if the deadline set in {@link #limits(long, long)} passed while reading. */
+    boolean timedOut() {
+        return timedOut;
+    }
+
+    /** Sets the max number of attributes to keep on a tag; attributes past that are dropped. */
+    void maxAttributes(int maxAttributes) {
+        startPending.maxAttributes = maxAttributes;
+        endPending.maxAttributes = maxAttributes;
+    }
+
     Token read() {
         while (!isEmitPending) {
             state.read(this, reader);
+            if (limited && exceedsLimits()) {
+                if (pendingChars() == 0)
+                    return new Token.EOF(); // timed out within markup; the tree builder stops the parse
+                break; // return the characters so far
+            }
         }
 
         // if emit is pending, a non-character token was found: return any chars in buffer, and leave token for next read:
@@ -81,6 +154,18 @@ final class Tokeniser {
         }
     }
 
+    private boolean exceedsLimits() {
+        if (pendingChars() > charBudget)
+            return true;
+        if (deadline != 0 && (++steps & 0x3FF) == 0 && System.nanoTime() - deadline > 0)
+            timedOut = true;
+        return timedOut;
+    }
+
+    private int pendingChars() {
+        return charsBuilder.length() != 0 ? charsBuilder.length() : charsString != null ? charsString.length() : 0;
+    }
+
     void emit(Token token) {
         Validate.isFalse(isEmitPending);
 
@@ -35,6 +35,11 @@ abstract class TreeBuilder {
 
     private boolean trackSourceRange;  // optionally tracks the source range of nodes
 
+    @Nullable private ParseLimits limits; // optional resource budgets; cleared once exceeded and the parse truncated
+    private int nodeCount; // nodes inserted in this parse
+    private long tokenCount, textLength; // tokens read, and text length processed, in this parse
+    private long deadline; // System.nanoTime() by which the parse must complete, if limits.maxParseTime() is set
+
     @ParametersAreNonnullByDefault
     protected void initialiseParse(Reader input, String baseUri, Parser parser) {
         Validate.notNullParam(input, "input");
@@ -49,25 +54,58 @@ abstract class TreeBuilder {
         trackSourceRange = parser.isTrackPosition();
         reader.trackNewlines(parser.isTrackErrors() || trackSourceRange); // when tracking errors or source ranges, enable newline tracking for better legibility
         currentToken = null;
-        tokeniser = new Tokeniser(reader, parser.getErrors());
+        tokeniser = borrowTokeniser(reader, parser.getErrors());
         stack = new ArrayList<>(32);
         seenTags = new HashMap<>();
         this.baseUri = baseUri;
+
+        limits = parser.parseLimits();
+        nodeCount = 0;
+        tokenCount = 0;
+        textLength = 0;
+        if (limits != null) {
+            tokeniser.maxAttributes(limits.maxAttributes());
+            deadline = limits.maxParseTime() > 0 ? System.nanoTime() + limits.maxParseTime() * 1_000_000 : 0;
+            tokeniser.limits(limits.maxTextLength(), deadline);
+        }
     }
 
     @ParametersAreNonnullByDefault
     Document parse(Reader input, String baseUri, Parser parser) {
         initialiseParse(input, baseUri, parser);
         runParser();
+        completeParse();
+        return doc;
+    }
 
-        // tidy up - as the Parser and Treebuilder are retained in document for settings / fragments
+    /**
+     Tidies up after a parse, as the Parser and TreeBuilder are retained in the document for settings / fragments. The
+     reader's buffers and the tokeniser are released for reuse by the next parse on this thread.
+     */
+    void completeParse() {
         reader.close();
+        releaseTokeniser(tokeniser);
         reader = null;
         tokeniser = null;
         stack = null;
         seenTags = null;
+    }
 
-        return doc;
+    // a tokeniser (and its token buffers) is reused by the next parse on the same thread; particularly for fragment
+    // parses. Only one is held idle per thread; a parse started while another is running uses its own
+    private static final ThreadLocal<Tokeniser> threadLocalTokeniser = new ThreadLocal<>();
+
+    private static Tokeniser borrowTokeniser(CharacterReader reader, ParseErrorList errors) {
+        Tokeniser tokeniser = threadLocalTokeniser.get();
+        if (tokeniser == null)
+            return new Tokeniser(reader, errors);
+        threadLocalTokeniser.remove();
+        tokeniser.reset(reader, errors);
+        return tokeniser;
+    }
+
+    private static void releaseTokeniser(Tokeniser tokeniser) {
+        threadLocalTokeniser.set(tokeniser);
     }
 
     /**
@@ -79,17 +117,93 @@ abstract class TreeBuilder {
     abstract List<Node> parseFragment(String inputFragment, Element context, String baseUri, Parser parser);
 
     protected void runParser() {
-        final Tokeniser tokeniser = this.tokeniser;
-        final Token.TokenType eof = Token.TokenType.EOF;
+        do {} while (stepParser()); // run until stepParser sees EOF
+    }
 
-        while (true) {
-            Token token = tokeniser.read();
-            process(token);
+    /**
+     Reads the next token from the tokeniser and processes it.
+     @return true if there is more input to process; false once the EOF token has been processed
+     */
+    boolean stepParser() {
+        final Token token = tokeniser.read();
+        if (limits != null && !withinLimits(token, limits)) {
             token.reset();
+            return false;
+        }
+        process(token);
+        token.reset();
+        if (limits != null && token.type != Token.TokenType.EOF && !withinLimits(limits))
+            return false;
+        return token.type != Token.TokenType.EOF;
+    }
 
-            if (token.type == eof)
-                break;
+    /**
+     Checks the budgets that can be tested before a token is processed: tokens, time, attributes, and text. Text that
+     would run past the limit is trimmed to fit, and processed.
+     @return true if the token should be processed; false if the parse was truncated
+     */
+    private boolean withinLimits(Token token, ParseLimits limits) {
+        tokenCount++;
+        if (tokenCount > limits.maxTokens())
+            return exceeded(ParseLimits.Limit.Tokens, "Exceeded max tokens [%s]", limits.maxTokens());
+        if (deadline != 0 && (tokeniser.timedOut() || (tokenCount & 0x3F) == 0 && System.nanoTime() - deadline > 0))
+            return exceeded(ParseLimits.Limit.Time, "Exceeded max parse time [%sms]", limits.maxParseTime());
+
+        if (token.type == Token.TokenType.StartTag && ((Token.StartTag) token).droppedAttributes) {
+            if (limits.failFast())
+                exceeded(ParseLimits.Limit.Attributes, "Exceeded max attributes [%s] in tag [%s]", limits.maxAttributes(), ((Token.StartTag) token).normalName);
+            error("Dropped attributes past max attributes [%s] in tag [%s]", limits.maxAttributes(), ((Token.StartTag) token).normalName);
+        } else if (token.type == Token.TokenType.Character) {
+            Token.Character chars = (Token.Character) token;
+            String data = chars.getData();
+            textLength += data.length();
+            if (textLength > limits.maxTextLength()) {
+                long remaining = limits.maxTextLength() - (textLength - data.length());
+                exceeded(ParseLimits.Limit.Text, "Exceeded max text length [%s]", limits.maxTextLength());
+                if (remaining > 0) {
+                    chars.data(data.substring(0, (int) remaining));
+                    process(chars);
+                }
+                truncate();
+                return false;
+            }
+            tokeniser.charBudget(limits.maxTextLength() - textLength);
         }
+        return true;
+    }
+
+    /**
+     Checks the budgets that are tested after a token has been processed: nodes, and depth.
+     @return true if the parse can continue; false if the parse was truncated
+     */
+    private boolean withinLimits(ParseLimits limits) {
+        if (nodeCount > limits.maxNodes())
+            return exceeded(ParseLimits.Limit.Nodes, "Exceeded max nodes [%s]", limits.maxNodes());
+        if (stack.size() > limits.maxDepth())
+            return exceeded(ParseLimits.Limit.Depth, "Exceeded max depth [%s]", limits.maxDepth());
+        return true;
+    }
+
+    /**
+     Handles an exceeded limit: throws if failing fast, otherwise records a parse error and truncates the parse.
+     @return false, so that the caller can stop
+     @throws ParseLimitException if the limits are set to fail fast
+     */
+    private boolean exceeded(ParseLimits.Limit limit, String msg, Object... args) {
+        if (limits != null && limits.failFast())
+            throw new ParseLimitException(limit, String.format(msg, args));
+        error(msg, args);
+        if (limit != ParseLimits.Limit.Text) // text truncates after processing the trimmed token
+            truncate();
+        return false;
+    }
+
+    /**
+     Stops the parse at the current position, closing the document out as if the input had ended.
+     */
+    private void truncate() {
+        limits = null; // no further budget checks as the document is closed out
+        process(new Token.EOF());
     }
 
     protected abstract boolean process(Token token);
@@ -186,9 +300,18 @@ abstract class TreeBuilder {
      * @param token the (optional) token that created this node
      */
     protected void onNodeInserted(Node node, @Nullable Token token) {
+        nodeCount++;
         trackNodePosition(node, token, true);
     }
 
+    /**
+     Called by implementing TreeBuilders when a node is added to the tree other than by insertion for a token, such as
+     the elements cloned by the adoption agency. Counts the node towards the {@link ParseLimits#maxNodes()} limit.
+     */
+    void onNodeCloned() {
+        nodeCount++;
+    }
+
     /**
      Called by implementing TreeBuilders when a node is explicitly closed. This implementation includes optionally
      tracking the closing source range of the node.
@@ -169,6 +169,7 @@ public class XmlTreeBuilder extends TreeBuilder {
     List<Node> parseFragment(String inputFragment, String baseUri, Parser parser) {
         initialiseParse(new StringReader(inputFragment), baseUri, parser);
         runParser();
+        completeParse();
         return doc.childNodes();
     }
 
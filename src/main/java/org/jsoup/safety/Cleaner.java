@@ -6,14 +6,24 @@ import org.jsoup.nodes.Attributes;
 import org.jsoup.nodes.DataNode;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Entities;
 import org.jsoup.nodes.Node;
+import org.jsoup.nodes.Range;
 import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.HtmlRewriter;
 import org.jsoup.parser.ParseErrorList;
 import org.jsoup.parser.Parser;
 import org.jsoup.parser.Tag;
+import org.jsoup.select.NodeFilter;
 import org.jsoup.select.NodeTraversor;
 import org.jsoup.select.NodeVisitor;
 
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 
@@ -61,6 +71,30 @@ public class Cleaner {
         return clean;
     }
 
+    /**
+     Cleans the dirty document in place, so that it contains only elements allowed by the safelist. This gives the same
+     document as {@link #clean(Document)}, but rather than copying the allowed nodes into a new document, the disallowed
+     nodes and attributes are removed from the existing one (and the enforced attributes set). So use this when the
+     dirty document won't be needed after cleaning, to avoid holding two copies of it in memory.
+     <p>As with {@link #clean(Document)}, only the content of the <code>body</code> is kept: the head is emptied, and
+     the <code>html</code> and <code>body</code> elements are replaced with plain ones.</p>
+     @param dirtyDocument Untrusted base document to clean. It will be modified.
+     @return the same document, now clean, for chaining.
+     */
+    public Document cleanInPlace(Document dirtyDocument) {
+        Validate.notNull(dirtyDocument);
+
+        Element dirtyBody = dirtyDocument.body();
+        cleanDescendants(dirtyBody, safelist.forCleaning());
+        Node[] content = dirtyBody.childNodes().toArray(new Node[0]);
+
+        dirtyDocument.empty(); // and recreate the shell, as in clean(), moving the content across
+        Element html = dirtyDocument.appendElement("html");
+        html.appendElement("head");
+        html.appendElement("body").insertChildren(0, content);
+        return dirtyDocument;
+    }
+
     /**
      Determines if the input document's <b>body</b> is valid, against the safelist. It is considered valid if all the
      tags and attributes in the input HTML are allowed by the safelist, and that there is no content in the
@@ -84,12 +118,32 @@ public class Cleaner {
      @return true if no tags or attributes need to be removed; false if they do
      */
     public boolean isValid(Document dirtyDocument) {
+        return validate(dirtyDocument) == null;
+    }
+
+    /**
+     Finds the first part of the input document that the safelist does not allow, if any. The document is valid (per
+     {@link #isValid(Document)}) if there is none. The document is checked in place, without modifying it or building a
+     cleaned copy, and the check stops at the first violation; so rejecting invalid input is quick.
+     <p>Example:
+     <pre>{@code
+     Document inputDoc = Jsoup.parse(inputHtml, Parser.htmlParser().setTrackPosition(true));
+     Cleaner.Violation violation = new Cleaner(Safelist.basic()).validate(inputDoc);
+     if (violation != null)
+         showError(violation.toString(), violation.range());
+     }</pre>
+     </p>
+     @param dirtyDocument document to test
+     @return the first violation, or null if the document is valid
+     */
+    public @Nullable Violation validate(Document dirtyDocument) {
         Validate.notNull(dirtyDocument);
 
-        Document clean = Document.createShell(dirtyDocument.baseUri());
-        int numDiscarded = copySafeNodes(dirtyDocument.body(), clean.body());
-        return numDiscarded == 0
-            && dirtyDocument.head().childNodes().isEmpty(); // because we only look at the body, but we start from a shell, make sure there's nothing in the head
+        Violation violation = findViolation(dirtyDocument.body());
+        Element head = dirtyDocument.head();
+        if (violation == null && head.childNodeSize() > 0) // because we only look at the body, make sure there's nothing in the head
+            violation = new Violation(head.childNode(0), null);
+        return violation;
     }
 
     /**
@@ -114,13 +168,246 @@ public class Cleaner {
      @return true if no tags or attributes need to be removed; false if they do
      */
     public boolean isValidBodyHtml(String bodyHtml) {
-        Document clean = Document.createShell("");
         Document dirty = Document.createShell("");
         ParseErrorList errorList = ParseErrorList.tracking(1);
         List<Node> nodes = Parser.parseFragment(bodyHtml, dirty.body(), "", errorList);
         dirty.body().insertChildren(0, nodes);
-        int numDiscarded = copySafeNodes(dirty.body(), clean.body());
-        return numDiscarded == 0 && errorList.isEmpty();
+        return errorList.isEmpty() && findViolation(dirty.body()) == null;
+    }
+
+    /**
+     A part of a document that the safelist does not allow: a node (e.g. an element whose tag is not allowed, or a
+     comment), or an attribute of an allowed element.
+     @see #validate(Document)
+     */
+    public static final class Violation {
+        private final Node node;
+        private final @Nullable String attribute;
+
+        Violation(Node node, @Nullable String attribute) {
+            this.node = node;
+            this.attribute = attribute;
+        }
+
+        /**
+         Get the node that is not allowed; or for a disallowed attribute, its element.
+         @return the node
+         */
+        public Node node() {
+            return node;
+        }
+
+        /**
+         Get the key of the attribute that is not allowed, if the violation is an attribute.
+         @return the attribute key, or null if the node is not allowed
+         */
+        public @Nullable String attribute() {
+            return attribute;
+        }
+
+        /**
+         Get the source range of the node (or for an attribute, of its element). The range is only tracked if the
+         document was parsed with {@link Parser#setTrackPosition(boolean)} enabled.
+         @return the source range
+         */
+        public Range range() {
+            return node.sourceRange();
+        }
+
+        @Override
+        public String toString() {
+            String what = attribute != null ?
+                String.format("Attribute '%s' of <%s>", attribute, node.nodeName()) :
+                node instanceof Element ? String.format("Tag <%s>", node.nodeName()) : String.format("Node %s", node.nodeName());
+            Range range = range();
+            return what + " is not allowed" + (range.isTracked() ? " at " + range : "");
+        }
+    }
+
+    /**
+     Finds the first node or attribute that copySafeNodes would discard, without copying. Attributes are tested as
+     copies, so that testing their URLs does not update the document.
+     */
+    private @Nullable Violation findViolation(Element root) {
+        final Safelist safelist = this.safelist.forCleaning();
+        final Violation[] violation = {null};
+        NodeTraversor.filter(new NodeFilter() {
+            @Override public FilterResult head(Node node, int depth) {
+                if (node instanceof Element) {
+                    Element el = (Element) node;
+                    if (safelist.isSafeTag(el.normalName())) {
+                        String tagName = el.tagName();
+                        for (Attribute attr : el.attributes()) {
+                            if (!safelist.isSafeAttribute(tagName, el, new Attribute(attr.getKey(), attr.getValue()))) {
+                                violation[0] = new Violation(el, attr.getKey());
+                                return FilterResult.STOP;
+                            }
+                        }
+                    } else if (node != root) { // not a safe tag; the root isn't counted
+                        violation[0] = new Violation(el, null);
+                        return FilterResult.STOP;
+                    }
+                } else if (!(node instanceof TextNode
+                    || node instanceof DataNode && safelist.isSafeTag(node.parent().nodeName()))) {
+                    violation[0] = new Violation(node, null); // comments, xml proc instructions, etc
+                    return FilterResult.STOP;
+                }
+                return FilterResult.CONTINUE;
+            }
+
+            @Override public FilterResult tail(Node node, int depth) {
+                return FilterResult.CONTINUE;
+            }
+        }, root);
+        return violation[0];
+    }
+
+    /**
+     Cleans the input body HTML as it is parsed, writing the clean HTML to the output. This gives the same HTML as
+     {@link org.jsoup.Jsoup#clean(String, String, Safelist, Document.OutputSettings)} (without pretty-printing), but
+     without building the dirty document and a cleaned copy of it: the input is parsed with an {@link HtmlRewriter}, and
+     each node is checked against the safelist and written out once the parser has finished with it. So memory is held
+     only for the open elements (and any content the parser may still restructure, such as an unclosed table).
+     <p>Example:
+     <pre>{@code
+     Cleaner cleaner = new Cleaner(Safelist.basic());
+     cleaner.clean(new StringReader(untrustedHtml), "https://example.com/", writer);
+     }</pre>
+     </p>
+     @param bodyHtml untrusted body HTML to clean
+     @param baseUri URL to resolve relative URLs against
+     @param output the output to write the clean HTML to. If this is a buffered writer, it is the caller's
+     responsibility to flush it.
+     @throws IOException if reading the input or writing the output fails
+     */
+    public void clean(Reader bodyHtml, String baseUri, Appendable output) throws IOException {
+        Validate.notNull(bodyHtml);
+        Validate.notNull(baseUri);
+        Validate.notNull(output);
+        new HtmlRewriter()
+            .writer(new CleaningWriter(safelist.forCleaning()))
+            .rewriteBodyFragment(bodyHtml, baseUri, output);
+    }
+
+    /**
+     Writes the nodes of a streamed parse that are allowed by the safelist. Open elements that aren't safe don't have
+     their tags written, but their content is. Completed nodes are cleaned in place (as they are discarded after being
+     written), and then serialized.
+     */
+    private static final class CleaningWriter implements HtmlRewriter.NodeWriter {
+        private final Safelist safelist;
+
+        CleaningWriter(Safelist safelist) {
+            this.safelist = safelist;
+        }
+
+        @Override
+        public void writeStart(Element el, Appendable out) throws IOException {
+            if (!safelist.isSafeTag(el.normalName()))
+                return;
+            cleanAttributes(el, safelist);
+            out.append('<').append(el.tagName());
+            if (el.attributesSize() > 0)
+                out.append(el.attributes().html());
+            out.append('>');
+        }
+
+        @Override
+        public void writeEnd(Element el, Appendable out) throws IOException {
+            if (safelist.isSafeTag(el.normalName()))
+                out.append("</").append(el.tagName()).append('>');
+        }
+
+        @Override
+        public void write(Node node, Appendable out) throws IOException {
+            if (node instanceof Element) {
+                Element el = (Element) node;
+                cleanDescendants(el, safelist);
+                if (safelist.isSafeTag(el.normalName())) {
+                    cleanAttributes(el, safelist);
+                    out.append(el.outerHtml());
+                } else { // not safe, so just its (now clean) content
+                    for (int i = 0; i < el.childNodeSize(); i++)
+                        out.append(el.childNode(i).outerHtml());
+                }
+            } else if (node instanceof TextNode) {
+                if (node.getClass() == TextNode.class)
+                    out.append(node.outerHtml());
+                else // e.g. cdata, which the cleaner copies as plain text
+                    out.append(Entities.escape(((TextNode) node).getWholeText(), outputSettings(node)));
+            } else if (node instanceof DataNode && node.parent() != null && safelist.isSafeTag(node.parent().nodeName())) {
+                out.append(node.outerHtml());
+            }
+        }
+    }
+
+    private static Document.OutputSettings outputSettings(Node node) {
+        Document doc = node.ownerDocument();
+        return doc != null ? doc.outputSettings() : new Document("").outputSettings();
+    }
+
+    /**
+     Cleans the descendants of an element in place: removes unsafe attributes from safe elements (and adds the enforced
+     attributes), unwraps unsafe elements, and removes other unsafe nodes. The element itself is not changed.
+     @return the number of nodes and attributes discarded
+     */
+    private static int cleanDescendants(Element root, Safelist safelist) {
+        final List<Node> remove = new ArrayList<>();
+        final List<TextNode> replace = new ArrayList<>();
+        final List<Element> unwrap = new ArrayList<>();
+        final int[] numDiscarded = {0};
+        NodeTraversor.traverse((node, depth) -> {
+            if (node == root)
+                return;
+            if (node instanceof Element) {
+                Element el = (Element) node;
+                if (safelist.isSafeTag(el.normalName())) {
+                    numDiscarded[0] += cleanAttributes(el, safelist);
+                } else {
+                    unwrap.add(el);
+                    numDiscarded[0]++;
+                }
+            } else if (node instanceof TextNode) {
+                if (node.getClass() != TextNode.class) // e.g. cdata, which the cleaner copies as plain text
+                    replace.add((TextNode) node);
+            } else if (!(node instanceof DataNode && safelist.isSafeTag(node.parent().nodeName()))) {
+                remove.add(node); // comments, unsafe data, etc
+                numDiscarded[0]++;
+            }
+        }, root);
+
+        for (Node node : remove)
+            node.remove();
+        for (TextNode text : replace)
+            text.replaceWith(new TextNode(text.getWholeText()));
+        for (Element el : unwrap)
+            el.unwrap();
+        return numDiscarded[0];
+    }
+
+    /**
+     Removes the element's unsafe attributes, and adds its enforced attributes.
+     @return the number of attributes removed
+     */
+    private static int cleanAttributes(Element el, Safelist safelist) {
+        String tagName = el.tagName();
+        int numDiscarded = 0;
+        if (el.attributesSize() > 0) {
+            Iterator<Attribute> it = el.attributes().iterator();
+            while (it.hasNext()) {
+                Attribute attr = it.next();
+                if (!safelist.isSafeAttribute(tagName, el, attr)) {
+                    it.remove();
+                    numDiscarded++;
+                } else if (!attr.hasDeclaredValue()) {
+                    attr.setValue(""); // as a copied attribute would have
+                }
+            }
+        }
+        Attributes enforcedAttrs = safelist.getEnforcedAttributes(tagName);
+        if (enforcedAttrs.size() > 0)
+            el.attributes().addAll(enforcedAttrs);
+        return numDiscarded;
     }
 
     /**
@@ -130,6 +417,7 @@ public class Cleaner {
         private int numDiscarded = 0;
         private final Element root;
         private Element destination; // current element to append nodes to
+        private final Safelist safelist = Cleaner.this.safelist.forCleaning(); // compiled, for allocation free checks
 
         private CleaningVisitor(Element root, Element destination) {
             this.root = root;
@@ -141,7 +429,7 @@ public class Cleaner {
                 Element sourceEl = (Element) source;
 
                 if (safelist.isSafeTag(sourceEl.normalName())) { // safe, clone and copy safe attrs
-                    ElementMeta meta = createSafeElement(sourceEl);
+                    ElementMeta meta = createSafeElement(sourceEl, safelist);
                     Element destChild = meta.el;
                     destination.appendChild(destChild);
 
@@ -176,7 +464,7 @@ public class Cleaner {
         return cleaningVisitor.numDiscarded;
     }
 
-    private ElementMeta createSafeElement(Element sourceEl) {
+    private static ElementMeta createSafeElement(Element sourceEl, Safelist safelist) {
         String sourceTag = sourceEl.tagName();
         Attributes destAttrs = new Attributes();
         Element dest = new Element(Tag.valueOf(sourceTag), sourceEl.baseUri(), destAttrs);
@@ -6,10 +6,13 @@ package org.jsoup.safety;
  */
 
 import org.jsoup.helper.Validate;
+import org.jsoup.helper.ValidationException;
 import org.jsoup.nodes.Attribute;
 import org.jsoup.nodes.Attributes;
 import org.jsoup.nodes.Element;
 
+import javax.annotation.Nullable;
+
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -70,6 +73,7 @@ public class Safelist {
     private final Map<TagName, Map<AttributeKey, AttributeValue>> enforcedAttributes; // always set these attribute values
     private final Map<TagName, Map<AttributeKey, Set<Protocol>>> protocols; // allowed URL protocols for attributes
     private boolean preserveRelativeLinks; // option to preserve relative links
+    private volatile @Nullable Compiled compiled; // the compiled form, built on demand; cleared on modification
 
     /**
      This safelist allows only text nodes: any HTML Element or any Node other than a TextNode will be removed.
@@ -244,6 +248,7 @@ public class Safelist {
      @return this (for chaining)
      */
     public Safelist addTags(String... tags) {
+        compiled = null;
         Validate.notNull(tags);
 
         for (String tagName : tags) {
@@ -260,6 +265,7 @@ public class Safelist {
      @return this (for chaining)
      */
     public Safelist removeTags(String... tags) {
+        compiled = null;
         Validate.notNull(tags);
 
         for(String tag: tags) {
@@ -291,6 +297,7 @@ public class Safelist {
      @return this (for chaining)
      */
     public Safelist addAttributes(String tag, String... attributes) {
+        compiled = null;
         Validate.notEmpty(tag);
         Validate.notNull(attributes);
         Validate.isTrue(attributes.length > 0, "No attribute names supplied.");
@@ -327,6 +334,7 @@ public class Safelist {
      @return this (for chaining)
      */
     public Safelist removeAttributes(String tag, String... attributes) {
+        compiled = null;
         Validate.notEmpty(tag);
         Validate.notNull(attributes);
         Validate.isTrue(attributes.length > 0, "No attribute names supplied.");
@@ -371,6 +379,7 @@ public class Safelist {
      @return this (for chaining)
      */
     public Safelist addEnforcedAttribute(String tag, String attribute, String value) {
+        compiled = null;
         Validate.notEmpty(tag);
         Validate.notEmpty(attribute);
         Validate.notEmpty(value);
@@ -398,6 +407,7 @@ public class Safelist {
      @return this (for chaining)
      */
     public Safelist removeEnforcedAttribute(String tag, String attribute) {
+        compiled = null;
         Validate.notEmpty(tag);
         Validate.notEmpty(attribute);
 
@@ -429,6 +439,7 @@ public class Safelist {
      * @see #addProtocols
      */
     public Safelist preserveRelativeLinks(boolean preserve) {
+        compiled = null;
         preserveRelativeLinks = preserve;
         return this;
     }
@@ -450,6 +461,7 @@ public class Safelist {
      @return this, for chaining
      */
     public Safelist addProtocols(String tag, String attribute, String... protocols) {
+        compiled = null;
         Validate.notEmpty(tag);
         Validate.notEmpty(attribute);
         Validate.notNull(protocols);
@@ -492,6 +504,7 @@ public class Safelist {
      @return this, for chaining
      */
     public Safelist removeProtocols(String tag, String attribute, String... removeProtocols) {
+        compiled = null;
         Validate.notEmpty(tag);
         Validate.notEmpty(attribute);
         Validate.notNull(removeProtocols);
@@ -519,6 +532,32 @@ public class Safelist {
         return this;
     }
 
+    /**
+     Get an immutable, compiled form of this safelist, for fast use by the {@link Cleaner}. The compiled form holds the
+     same configuration in flat tables keyed by the tag and attribute names, so checking an element or attribute makes
+     no allocations. It is safe to share between threads. It can't be modified (the modifier methods throw a
+     {@link org.jsoup.helper.ValidationException}); to make changes, copy it with {@link #Safelist(Safelist)}.
+     <p>The compiled form is cached, until this safelist is next modified. The {@link Cleaner} (and so
+     {@link org.jsoup.Jsoup#clean(String, Safelist)}) uses it automatically, unless a subclass overrides the checks.</p>
+     @return the compiled safelist
+     */
+    public Safelist compile() {
+        Compiled compiled = this.compiled;
+        if (compiled == null) {
+            compiled = new Compiled(this);
+            this.compiled = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     Get the safelist to check nodes against when cleaning: the compiled form, unless this is a subclass, which may have
+     overridden the checks.
+     */
+    Safelist forCleaning() {
+        return getClass() == Safelist.class ? compile() : this;
+    }
+
     /**
      * Test if the supplied tag is allowed by this safelist
      * @param tag test tag
@@ -563,6 +602,93 @@ public class Safelist {
     }
 
     private boolean testValidProtocol(Element el, Attribute attr, Set<Protocol> protocols) {
+        String value = attr.getValue();
+        int schemeLength = schemeLength(value);
+        if (schemeLength > 0) { // absolute; test the scheme directly
+            for (Protocol protocol : protocols) {
+                if (isScheme(value, schemeLength, protocol.toString()))
+                    return acceptAbsolute(el, attr);
+            }
+            return false;
+        }
+
+        value = protocolTestValue(el, attr);
+        String lowerValue = lowerCase(value);
+        for (Protocol protocol : protocols) {
+            if (isValidProtocol(value, lowerValue, protocol.toString()))
+                return true;
+        }
+        return false;
+    }
+
+    /** As {@link #testValidProtocol(Element, Attribute, Set)}, for the compiled form. */
+    boolean testValidProtocol(Element el, Attribute attr, String[] protocols) {
+        String value = attr.getValue();
+        int schemeLength = schemeLength(value);
+        if (schemeLength > 0) {
+            for (String protocol : protocols) {
+                if (isScheme(value, schemeLength, protocol))
+                    return acceptAbsolute(el, attr);
+            }
+            return false;
+        }
+
+        value = protocolTestValue(el, attr);
+        String lowerValue = lowerCase(value);
+        for (String protocol : protocols) {
+            if (isValidProtocol(value, lowerValue, protocol))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     Gets the length of the URL's scheme, if the URL starts with one as written: an ASCII letter, then letters, digits,
+     or {@code + - .}, then a colon. Resolving such a URL (which is costly, as it builds {@link java.net.URL}s) always
+     gives a URL with the same scheme, lower-cased; or if it can't be resolved, the URL as-is. So its protocol can be
+     tested without resolving it. Returns -1 for other URLs (relative, or with leading spaces or control characters
+     that resolving would strip; or prefixed with {@code url:}, which resolving skips), which need the full test.
+     */
+    static int schemeLength(String value) {
+        int length = value.length();
+        if (length == 0 || !isAsciiLetter(value.charAt(0)))
+            return -1;
+        for (int i = 1; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == ':')
+                return i == 3 && value.regionMatches(true, 0, "url", 0, 3) ? -1 : i;
+            if (!(isAsciiLetter(c) || (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'))
+                return -1;
+        }
+        return -1;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /** Tests if the value's scheme, lower-cased, is the protocol (as a lower-cased value would start with it). */
+    private static boolean isScheme(String value, int schemeLength, String protocol) {
+        if (protocol.length() != schemeLength)
+            return false;
+        for (int i = 0; i < schemeLength; i++) {
+            char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            if (c != protocol.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /** An absolute URL with an allowed scheme is valid; only resolve it if the attribute is to be updated with it. */
+    private boolean acceptAbsolute(Element el, Attribute attr) {
+        if (!preserveRelativeLinks)
+            protocolTestValue(el, attr); // sets the normalized URL
+        return true;
+    }
+
+    private String protocolTestValue(Element el, Attribute attr) {
         // try to resolve relative urls to abs, and optionally update the attribute so output html has abs.
         // rels without a baseuri get removed
         String value = el.absUrl(attr.getKey());
@@ -570,25 +696,14 @@ public class Safelist {
             value = attr.getValue(); // if it could not be made abs, run as-is to allow custom unknown protocols
         if (!preserveRelativeLinks)
             attr.setValue(value);
-        
-        for (Protocol protocol : protocols) {
-            String prot = protocol.toString();
-
-            if (prot.equals("#")) { // allows anchor links
-                if (isValidAnchor(value)) {
-                    return true;
-                } else {
-                    continue;
-                }
-            }
-
-            prot += ":";
+        return value;
+    }
 
-            if (lowerCase(value).startsWith(prot)) {
-                return true;
-            }
-        }
-        return false;
+    private boolean isValidProtocol(String value, String lowerValue, String protocol) {
+        if (protocol.equals("#")) // allows anchor links
+            return isValidAnchor(value);
+        return lowerValue.startsWith(protocol) && lowerValue.length() > protocol.length()
+            && lowerValue.charAt(protocol.length()) == ':';
     }
 
     private boolean isValidAnchor(String value) {
@@ -607,7 +722,123 @@ public class Safelist {
         return attrs;
     }
     
-    // named types for config. All just hold strings, but here for my sanity.
+    /**
+     The compiled, immutable form of a safelist. The rules for each tag are flattened into one table, keyed by the tag
+     name, with the attributes it allows (and the protocols they must have) keyed by attribute name. So a check is a
+     couple of hash lookups on the names, rather than wrapping each name and walking the nested maps.
+     */
+    private static final class Compiled extends Safelist {
+        private static final String[] AnyProtocol = {}; // an allowed attribute without protocol restrictions
+
+        private final Set<String> safeTags = new HashSet<>();
+        private final Map<String, Rules> rules = new HashMap<>(); // by tag name, including the ":all" rules
+        private final @Nullable Rules allRules;
+        private final Attributes noEnforced = new Attributes();
+
+        private static final class Rules {
+            final Map<String, String[]> attributes = new HashMap<>(); // allowed attribute key -> protocols, or AnyProtocol
+            final Attributes enforced = new Attributes();
+        }
+
+        Compiled(Safelist source) {
+            super(source); // keeps the configuration, for copies
+            for (TagName tag : source.tagNames)
+                safeTags.add(tag.toString());
+            for (Map.Entry<TagName, Set<AttributeKey>> entry : source.attributes.entrySet()) {
+                Rules tagRules = rules(entry.getKey().toString());
+                Map<AttributeKey, Set<Protocol>> tagProtocols = source.protocols.get(entry.getKey());
+                for (AttributeKey key : entry.getValue()) {
+                    Set<Protocol> protocols = tagProtocols != null ? tagProtocols.get(key) : null;
+                    String[] allowed = AnyProtocol;
+                    if (protocols != null) {
+                        allowed = new String[protocols.size()];
+                        int i = 0;
+                        for (Protocol protocol : protocols)
+                            allowed[i++] = protocol.toString();
+                    }
+                    tagRules.attributes.put(key.toString(), allowed);
+                }
+            }
+            for (Map.Entry<TagName, Map<AttributeKey, AttributeValue>> entry : source.enforcedAttributes.entrySet()) {
+                Rules tagRules = rules(entry.getKey().toString());
+                for (Map.Entry<AttributeKey, AttributeValue> enforced : entry.getValue().entrySet())
+                    tagRules.enforced.put(enforced.getKey().toString(), enforced.getValue().toString());
+            }
+            allRules = rules.get(All);
+        }
+
+        private Rules rules(String tag) {
+            Rules tagRules = rules.get(tag);
+            if (tagRules == null) {
+                tagRules = new Rules();
+                rules.put(tag, tagRules);
+            }
+            return tagRules;
+        }
+
+        @Override
+        protected boolean isSafeTag(String tag) {
+            return safeTags.contains(tag);
+        }
+
+        @Override
+        protected boolean isSafeAttribute(String tagName, Element el, Attribute attr) {
+            Rules tagRules = rules.get(tagName);
+            if (tagRules != null) {
+                Boolean safe = isSafeAttribute(tagRules, el, attr);
+                if (safe != null)
+                    return safe;
+            }
+            if (allRules == null || tagName.equals(All))
+                return false;
+            Boolean safe = isSafeAttribute(allRules, el, attr);
+            return safe != null && safe;
+        }
+
+        /** Test the attribute against one tag's rules; or null if they don't cover it. */
+        private @Nullable Boolean isSafeAttribute(Rules tagRules, Element el, Attribute attr) {
+            String key = attr.getKey();
+            String[] protocols = tagRules.attributes.get(key);
+            if (protocols != null) // ok if no protocols are defined; otherwise test
+                return protocols == AnyProtocol || testValidProtocol(el, attr, protocols);
+            if (tagRules.enforced.hasKeyIgnoreCase(key)) // might be an enforced attribute?
+                return tagRules.enforced.getIgnoreCase(key).equals(attr.getValue());
+            return null;
+        }
+
+        /** The enforced attributes, shared between calls; callers must copy them rather than modify. */
+        @Override
+        Attributes getEnforcedAttributes(String tagName) {
+            Rules tagRules = rules.get(tagName);
+            return tagRules != null ? tagRules.enforced : noEnforced;
+        }
+
+        @Override
+        public Safelist compile() {
+            return this;
+        }
+
+        @Override
+        Safelist forCleaning() {
+            return this;
+        }
+
+        private static Safelist immutable() {
+            throw new ValidationException("A compiled Safelist can't be modified; copy it with new Safelist(safelist) to make changes.");
+        }
+
+        @Override public Safelist addTags(String... tags) { return immutable(); }
+        @Override public Safelist removeTags(String... tags) { return immutable(); }
+        @Override public Safelist addAttributes(String tag, String... attributes) { return immutable(); }
+        @Override public Safelist removeAttributes(String tag, String... attributes) { return immutable(); }
+        @Override public Safelist addEnforcedAttribute(String tag, String attribute, String value) { return immutable(); }
+        @Override public Safelist removeEnforcedAttribute(String tag, String attribute) { return immutable(); }
+        @Override public Safelist preserveRelativeLinks(boolean preserve) { return immutable(); }
+        @Override public Safelist addProtocols(String tag, String attribute, String... protocols) { return immutable(); }
+        @Override public Safelist removeProtocols(String tag, String attribute, String... removeProtocols) { return immutable(); }
+    }
+
+    // named types for source. All just hold strings, but here for my sanity.
 
     static class TagName extends TypedValue {
         TagName(String value) {
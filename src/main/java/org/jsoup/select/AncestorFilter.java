@@ -0,0 +1,201 @@
+package org.jsoup.select;
+
+import org.jsoup.nodes.Element;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ A counting Bloom filter of the tag names, ids, and class names of the ancestors of the element currently being visited
+ in a {@link Collector} traversal. Descendant selectors are matched right to left: for each candidate, the descendant
+ combinator ({@link StructuralEvaluator.Parent}) checks the filter for the features its ancestor query requires, and if
+ any is definitely absent, rejects the candidate without walking its ancestors.
+ <p>The filter is maintained as a stack: an element's features are added when the traversal enters it, and removed when
+ it leaves. It only holds the ancestors of the current element, so it is only consulted for that element.</p>
+ */
+final class AncestorFilter {
+    private static final int Size = 1 << 10; // counters; must be a power of two
+    private static final int Mask = Size - 1;
+    private static final int TagSalt = 0x2f6b1d35, IdSalt = 0x5bd1e995, ClassSalt = 0x1b873593;
+
+    private static final ThreadLocal<AncestorFilter> threadFilter = new ThreadLocal<>();
+
+    private final int[] counts = new int[Size];
+    private int[] keys = new int[32]; // the keys added for each ancestor, in stack order
+    private int numKeys = 0;
+    private int[] marks = new int[16]; // the number of keys before each ancestor's were added
+    private int depth = 0;
+    @Nullable private Element current; // the element whose ancestors are in the filter
+    @Nullable private AncestorFilter previous; // an outer filter on this thread, to restore when done
+
+    private AncestorFilter() {}
+
+    /**
+     Get a new filter for a traversal if the evaluator can use one, and make it current for this thread.
+     @return the filter, or null if the evaluator would not use one (in which case the traversal should not maintain one)
+     */
+    static @Nullable AncestorFilter open(Evaluator eval) {
+        if (!usesFilter(eval))
+            return null;
+        AncestorFilter filter = new AncestorFilter();
+        filter.previous = threadFilter.get();
+        threadFilter.set(filter);
+        return filter;
+    }
+
+    /** Restore the thread's previous filter (if any), once the traversal that opened this filter is done. */
+    void close() {
+        if (previous != null)
+            threadFilter.set(previous);
+        else
+            threadFilter.remove();
+    }
+
+    /**
+     Test if any ancestor (within the traversal root) of the element might have all the keys.
+     @return false if the filter shows at least one of the keys is absent from the element's ancestors; true if they may
+     all be present, or if the filter does not hold the element's ancestors
+     */
+    static boolean mayHaveAncestorsWith(Element element, int[] keys) {
+        AncestorFilter filter = threadFilter.get();
+        if (filter == null || filter.current != element)
+            return true;
+        for (int key : keys) {
+            if (filter.counts[key & Mask] == 0 || filter.counts[(key >>> 16) & Mask] == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /** Set the element that is about to be evaluated; its ancestors must be in the filter. */
+    void visit(Element el) {
+        current = el;
+    }
+
+    /** Add the element's features, as the traversal descends into it. */
+    void push(Element el) {
+        if (depth == marks.length)
+            marks = Arrays.copyOf(marks, depth * 2);
+        marks[depth++] = numKeys;
+
+        add(tagKey(el.normalName()));
+        String id = el.id();
+        if (id.length() > 0)
+            add(idKey(id));
+        String classAttr = el.attr("class");
+        int len = classAttr.length();
+        int start = -1;
+        for (int i = 0; i <= len; i++) {
+            boolean ws = i == len || Character.isWhitespace(classAttr.charAt(i));
+            if (!ws && start == -1)
+                start = i;
+            else if (ws && start != -1) {
+                add(classKey(classAttr, start, i));
+                start = -1;
+            }
+        }
+        current = null;
+    }
+
+    /** Remove the most recently pushed element's features, as the traversal leaves it. */
+    void pop() {
+        int mark = marks[--depth];
+        for (int i = mark; i < numKeys; i++) {
+            int key = keys[i];
+            counts[key & Mask]--;
+            counts[(key >>> 16) & Mask]--;
+        }
+        numKeys = mark;
+        current = null;
+    }
+
+    private void add(int key) {
+        if (numKeys == keys.length)
+            keys = Arrays.copyOf(keys, numKeys * 2);
+        keys[numKeys++] = key;
+        counts[key & Mask]++;
+        counts[(key >>> 16) & Mask]++;
+    }
+
+    /**
+     Get the keys that must all be present in the ancestors of an element, for the evaluator to match any of those
+     ancestors.
+     @param eval the ancestor query of a descendant combinator
+     @return the required keys; empty if none are known
+     */
+    static int[] requiredKeys(Evaluator eval) {
+        ArrayList<Integer> found = new ArrayList<>();
+        collectKeys(eval, found);
+        int[] keys = new int[found.size()];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = found.get(i);
+        return keys;
+    }
+
+    private static void collectKeys(Evaluator eval, ArrayList<Integer> found) {
+        eval = eval.unwrap();
+        if (eval instanceof Evaluator.Tag) {
+            found.add(tagKey(((Evaluator.Tag) eval).tagName));
+        } else if (eval instanceof Evaluator.Id) {
+            String id = ((Evaluator.Id) eval).id;
+            if (id.length() > 0) // an empty id matches elements without one
+                found.add(idKey(id));
+        } else if (eval instanceof Evaluator.Class) {
+            String className = ((Evaluator.Class) eval).className;
+            if (className.length() > 0 && !hasWhitespace(className)) // such a class would match the whole attribute, not a name
+                found.add(classKey(className, 0, className.length()));
+        } else if (eval instanceof CombiningEvaluator.And) {
+            for (Evaluator child : ((CombiningEvaluator) eval).evaluators)
+                collectKeys(child, found);
+        } else if (eval instanceof StructuralEvaluator.Parent || eval instanceof StructuralEvaluator.ImmediateParent) {
+            // an ancestor of an ancestor is also an ancestor
+            collectKeys(((StructuralEvaluator) eval).evaluator, found);
+        }
+        // other evaluators (or, not, has, siblings, ...) don't require a specific ancestor
+    }
+
+    private static boolean usesFilter(Evaluator eval) {
+        eval = eval.unwrap();
+        if (eval instanceof StructuralEvaluator.Parent && ((StructuralEvaluator.Parent) eval).ancestorKeys.length > 0)
+            return true;
+        if (eval instanceof CombiningEvaluator) {
+            for (Evaluator child : ((CombiningEvaluator) eval).evaluators) {
+                if (usesFilter(child))
+                    return true;
+            }
+        } else if (eval instanceof StructuralEvaluator) {
+            return usesFilter(((StructuralEvaluator) eval).evaluator);
+        }
+        return false;
+    }
+
+    private static int tagKey(String tagName) {
+        return mix(tagName.hashCode() ^ TagSalt);
+    }
+
+    private static int idKey(String id) {
+        return mix(id.hashCode() ^ IdSalt);
+    }
+
+    private static int classKey(String s, int start, int end) {
+        // class names match case-insensitively, so hash a case-folded form (as String#regionMatches(true, ...) compares)
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        return mix(h ^ ClassSalt);
+    }
+
+    private static int mix(int h) { // spread the bits, as the two counter indexes are taken from the low and high halves
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 15);
+    }
+
+    private static boolean hasWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i)))
+                return true;
+        }
+        return false;
+    }
+}
@@ -1,9 +1,21 @@
 package org.jsoup.select;
 
+import org.jsoup.helper.Validate;
+import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.ElementIndex;
 import org.jsoup.nodes.Node;
 
 import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.jsoup.select.NodeFilter.FilterResult.CONTINUE;
 import static org.jsoup.select.NodeFilter.FilterResult.STOP;
@@ -24,17 +36,160 @@ public class Collector {
      @return list of matches; empty if none
      */
     public static Elements collect (Evaluator eval, Element root) {
+        return collect(eval, root, Integer.MAX_VALUE);
+    }
+
+    /**
+     Build a list of at most {@code limit} elements, by visiting root and its descendants in document order, and testing
+     each against the evaluator. The query stops once the limit is reached.
+     @param eval Evaluator to test elements against
+     @param root root of tree to descend
+     @param limit the maximum number of matches to collect; must be greater than 0
+     @return list of the first matches; empty if none
+     */
+    public static Elements collect(Evaluator eval, Element root, int limit) {
+        Validate.isTrue(limit > 0, "The limit must be greater than 0");
         Elements elements = new Elements();
-        NodeTraversor.traverse((node, depth) -> {
-            if (node instanceof Element) {
-                Element el = (Element) node;
-                if (eval.matches(root, el))
-                    elements.add(el);
+        eval.beginPass();
+        try {
+            List<Element> candidates = indexedCandidates(eval, root);
+            if (candidates != null) {
+                for (Element el : candidates) {
+                    if (eval.matches(root, el) && (root instanceof Document || isSelfOrAncestor(root, el))) {
+                        elements.add(el);
+                        if (elements.size() == limit)
+                            break;
+                    }
+                }
+                return elements;
+            }
+
+            final AncestorFilter filter = AncestorFilter.open(eval); // null if eval has no descendant combinator to use it
+            try {
+                NodeTraversor.filter(new NodeFilter() {
+                    @Override public FilterResult head(Node node, int depth) {
+                        if (node instanceof Element) {
+                            Element el = (Element) node;
+                            if (filter != null)
+                                filter.visit(el);
+                            if (eval.matches(root, el)) {
+                                elements.add(el);
+                                if (elements.size() == limit)
+                                    return STOP;
+                            }
+                            if (filter != null)
+                                filter.push(el);
+                        }
+                        return CONTINUE;
+                    }
+
+                    @Override public FilterResult tail(Node node, int depth) {
+                        if (filter != null && node instanceof Element)
+                            filter.pop();
+                        return CONTINUE;
+                    }
+                }, root);
+            } finally {
+                if (filter != null)
+                    filter.close();
             }
-        }, root);
+        } finally {
+            eval.endPass(); // memoized results are only valid for this pass
+        }
+        return elements;
+    }
+
+    /**
+     Build a list of elements that match the evaluator, as {@link #collect(Evaluator, Element)}, while recording for each
+     part of the evaluator how many elements it was tested against, how many matched, and the time spent. Use it to
+     find which part of a slow query dominates.
+     @param eval Evaluator to test elements against
+     @param root root of tree to descend
+     @return the profile, which holds the matches
+     @see Selector#explain(String)
+     */
+    public static QueryProfile profile(Evaluator eval, Element root) {
+        Validate.notNull(eval);
+        Validate.notNull(root);
+        return QueryProfile.profile(eval, root);
+    }
+
+    /**
+     Build a list of elements that match the evaluator, using multiple threads to visit the parts of a large tree. The
+     matches are the same, and in the same document order, as {@link #collect(Evaluator, Element)}. Small trees, and
+     queries that modify the tree (such as {@code :matchText}), are collected on the calling thread.
+     <p>The tree must not be modified while it is being collected.</p>
+     @param eval Evaluator to test elements against
+     @param root root of tree to descend
+     @param executor the executor to visit parts on. The calling thread also visits parts.
+     @param parallelism the number of threads to use, including the calling thread
+     @return list of matches; empty if none
+     @see NodeTraversor#traverseParallel(Supplier, Node, Executor, int)
+     */
+    public static Elements collectParallel(Evaluator eval, Element root, Executor executor, int parallelism) {
+        Validate.notNull(eval);
+        Validate.notNull(root);
+        Validate.notNull(executor);
+        Validate.isTrue(parallelism > 0, "Parallelism must be greater than 0");
+        if (modifiesTree(eval) || indexedCandidates(eval, root) != null)
+            return collect(eval, root); // can't be split; or quick enough from the index
+
+        List<MatchCollector> parts = NodeTraversor.traverseParallel(() -> new MatchCollector(eval, root), root,
+            executor, parallelism);
+        if (parts.size() == 1)
+            return parts.get(0).matches;
+        int size = 0;
+        for (MatchCollector part : parts)
+            size += part.matches.size();
+        Elements elements = new Elements(size);
+        for (MatchCollector part : parts)
+            elements.addAll(part.matches);
         return elements;
     }
 
+    /** Collects the matches in a part of the tree, in its own selection pass on the thread visiting that part. */
+    private static final class MatchCollector implements ParallelTraversal.ChunkVisitor {
+        private final Evaluator eval;
+        private final Element root;
+        final Elements matches = new Elements();
+
+        MatchCollector(Evaluator eval, Element root) {
+            this.eval = eval;
+            this.root = root;
+        }
+
+        @Override public void beginChunk() {
+            eval.beginPass();
+        }
+
+        @Override public void endChunk() {
+            eval.endPass();
+        }
+
+        @Override public void head(Node node, int depth) {
+            if (node instanceof Element && eval.matches(root, (Element) node))
+                matches.add((Element) node);
+        }
+    }
+
+    /**
+     Get a lazy stream of the elements that match the evaluator, by visiting root and its descendants in document order
+     as the stream is consumed. Short-circuiting operations such as {@code findFirst()}, {@code limit(n)}, or
+     {@code anyMatch()} stop visiting once satisfied, and no intermediate list is built.
+     <p>Each match is found in its own selection pass, so the tree may be read or modified between matches; in
+     particular, the most recently returned element may be removed. Other changes to the tree while streaming may cause
+     elements to be skipped or visited again.</p>
+     @param eval Evaluator to test elements against
+     @param root root of tree to descend
+     @return a sequential, ordered stream of the matches
+     */
+    public static Stream<Element> stream(Evaluator eval, Element root) {
+        Validate.notNull(eval);
+        Validate.notNull(root);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new MatchIterator(eval, root),
+            Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.ORDERED), false);
+    }
+
     /**
      Finds the first Element that matches the Evaluator that descends from the root, and stops the query once that first
      match is found.
@@ -44,7 +199,94 @@ public class Collector {
      */
     public static @Nullable Element findFirst(Evaluator eval, Element root) {
         FirstFinder finder = new FirstFinder(eval);
-        return finder.find(root, root);
+        eval.beginPass();
+        try {
+            List<Element> candidates = indexedCandidates(eval, root);
+            if (candidates != null) {
+                for (Element el : candidates) {
+                    if (eval.matches(root, el) && (root instanceof Document || isSelfOrAncestor(root, el)))
+                        return el;
+                }
+                return null;
+            }
+            return finder.find(root, root);
+        } finally {
+            eval.endPass();
+        }
+    }
+
+    /* When selecting within an element rather than the document, each indexed candidate must be checked to be within the
+    element, by walking up its ancestors. That's only cheaper than visiting the element's descendants for a few
+    candidates. */
+    private static final int MaxCandidatesWithinElement = 32;
+
+    /**
+     Get the candidate elements for the evaluator from the root's document's {@link ElementIndex}, if it is enabled, and
+     the evaluator (or one of the parts it requires) is an id, tag, or class. The most selective part is used.
+     @return the candidates, in document order; or null if the root's subtree must be visited instead
+     */
+    private static @Nullable List<Element> indexedCandidates(Evaluator eval, Element root) {
+        eval = eval.unwrap();
+        Document doc = root.ownerDocument();
+        if (doc == null || !doc.indexElements() || modifiesTree(eval))
+            return null;
+        ElementIndex index = doc.elementIndex();
+        if (index == null)
+            return null;
+
+        List<Element> candidates = candidates(index, eval);
+        if (candidates == null && eval instanceof CombiningEvaluator.And) {
+            for (Evaluator part : ((CombiningEvaluator) eval).evaluators) {
+                List<Element> partCandidates = candidates(index, part);
+                if (partCandidates != null && (candidates == null || partCandidates.size() < candidates.size()))
+                    candidates = partCandidates;
+            }
+        }
+        if (candidates != null && root != doc && candidates.size() > MaxCandidatesWithinElement)
+            return null;
+        return candidates;
+    }
+
+    private static @Nullable List<Element> candidates(ElementIndex index, Evaluator eval) {
+        eval = eval.unwrap();
+        if (eval instanceof Evaluator.Id) {
+            String id = ((Evaluator.Id) eval).id;
+            return id.isEmpty() ? null : index.byId(id); // an empty id matches elements without one
+        } else if (eval instanceof Evaluator.Tag) {
+            return index.byTag(((Evaluator.Tag) eval).tagName);
+        } else if (eval instanceof Evaluator.Class) {
+            String className = ((Evaluator.Class) eval).className;
+            for (int i = 0; i < className.length(); i++) {
+                if (Character.isWhitespace(className.charAt(i)))
+                    return null; // would only match the whole class attribute
+            }
+            return className.isEmpty() ? null : index.byClass(className);
+        }
+        return null;
+    }
+
+    /** :matchText inserts elements as it matches, which the index wouldn't have as candidates. */
+    private static boolean modifiesTree(Evaluator eval) {
+        eval = eval.unwrap();
+        if (eval instanceof Evaluator.MatchText)
+            return true;
+        if (eval instanceof CombiningEvaluator) {
+            for (Evaluator part : ((CombiningEvaluator) eval).evaluators) {
+                if (modifiesTree(part))
+                    return true;
+            }
+        } else if (eval instanceof StructuralEvaluator) {
+            return modifiesTree(((StructuralEvaluator) eval).evaluator);
+        }
+        return false;
+    }
+
+    private static boolean isSelfOrAncestor(Element root, Element el) {
+        for (Element cur = el; cur != null; cur = cur.parent()) {
+            if (cur == root)
+                return true;
+        }
+        return false;
     }
 
     static class FirstFinder implements NodeFilter {
@@ -75,4 +317,93 @@ public class Collector {
             return CONTINUE;
         }
     }
+
+    /** Finds the matches of an evaluator one at a time, for {@link #stream(Evaluator, Element)}. */
+    private static final class MatchIterator implements Iterator<Element> {
+        private final Evaluator eval;
+        private final Element root;
+        private @Nullable Node start; // where to begin, until the first match is found; null once exhausted
+        private @Nullable Element next; // the next match, once found by hasNext()
+
+        // the last match, and where it was, to continue from its position if it is removed
+        private @Nullable Element last;
+        private @Nullable Node lastParent;
+        private int lastIndex;
+
+        MatchIterator(Evaluator eval, Element root) {
+            this.eval = eval;
+            this.root = root;
+            start = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null)
+                next = findNext();
+            return next != null;
+        }
+
+        @Override
+        public Element next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Element el = next;
+            next = null;
+            return el;
+        }
+
+        private @Nullable Element findNext() {
+            Node node = resume();
+            if (node == null)
+                return null;
+            eval.beginPass();
+            try {
+                while (node != null) {
+                    if (node instanceof Element && eval.matches(root, (Element) node)) {
+                        last = (Element) node;
+                        lastParent = node.parentNode();
+                        lastIndex = node.siblingIndex();
+                        return last;
+                    }
+                    node = following(node, true);
+                }
+                last = null;
+                return null;
+            } finally {
+                eval.endPass();
+            }
+        }
+
+        /** Get the node to continue from: the node after the last match, or whatever has taken its place. */
+        private @Nullable Node resume() {
+            Element el = last;
+            if (el == null) {
+                Node node = start;
+                start = null;
+                return node;
+            }
+            last = null;
+            if (el == root || el.parentNode() == lastParent)
+                return following(el, true);
+            if (lastParent == null) // was the root of a detached subtree, so nowhere to continue
+                return null;
+            return lastIndex < lastParent.childNodeSize() ? lastParent.childNode(lastIndex) : following(lastParent, false);
+        }
+
+        /** Get the next node in document order within the root, optionally descending into the node's children. */
+        private @Nullable Node following(Node node, boolean descend) {
+            if (descend && node.childNodeSize() > 0)
+                return node.childNode(0);
+            while (node != root) {
+                Node sibling = node.nextSibling();
+                if (sibling != null)
+                    return sibling;
+                Node parent = node.parentNode();
+                if (parent == null)
+                    return null;
+                node = parent;
+            }
+            return null;
+        }
+    }
 }
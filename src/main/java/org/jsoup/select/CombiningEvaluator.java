@@ -7,23 +7,28 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 
 /**
  * Base combining (and, or) evaluator.
  */
 public abstract class CombiningEvaluator extends Evaluator {
-    final ArrayList<Evaluator> evaluators;
+    final ArrayList<Evaluator> evaluators; // maintain original order so that #toString() is sensible
+    final ArrayList<Evaluator> sortedEvaluators; // cost ascending order
     int num = 0;
+    int cost = 0;
 
     CombiningEvaluator() {
         super();
         evaluators = new ArrayList<>();
+        sortedEvaluators = new ArrayList<>();
     }
 
     CombiningEvaluator(Collection<Evaluator> evaluators) {
         this();
         this.evaluators.addAll(evaluators);
-        updateNumEvaluators();
+        updateEvaluators();
     }
 
     @Nullable Evaluator rightMostEvaluator() {
@@ -32,13 +37,55 @@ public abstract class CombiningEvaluator extends Evaluator {
     
     void replaceRightMostEvaluator(Evaluator replacement) {
         evaluators.set(num - 1, replacement);
+        updateEvaluators();
     }
 
-    void updateNumEvaluators() {
+    @Override
+    protected int cost() {
+        return cost;
+    }
+
+    @Override
+    boolean isRootIndependent() {
+        for (int i = 0; i < num; i++) {
+            if (!evaluators.get(i).isRootIndependent())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    void beginPass() {
+        for (int i = 0; i < num; i++)
+            evaluators.get(i).beginPass();
+    }
+
+    @Override
+    void endPass() {
+        for (int i = 0; i < num; i++)
+            evaluators.get(i).endPass();
+    }
+
+    void updateEvaluators() {
         // used so we don't need to bash on size() for every match test
         num = evaluators.size();
+
+        // sort the evaluators by lowest cost first, to optimize the evaluation order
+        long sum = 0;
+        for (Evaluator evaluator : evaluators) {
+            sum += evaluator.cost();
+        }
+        cost = saturatedCost(sum);
+        sortedEvaluators.clear();
+        sortedEvaluators.addAll(evaluators);
+        Collections.sort(sortedEvaluators, costComparator);
     }
 
+    private static final Comparator<Evaluator> costComparator = (o1, o2) -> { // stable sort keeps query order on ties
+        int c1 = o1.cost(), c2 = o2.cost();
+        return c1 < c2 ? -1 : (c1 == c2 ? 0 : 1); // as Integer.compare, which is not in the Android API level supported
+    };
+
     public static final class And extends CombiningEvaluator {
         And(Collection<Evaluator> evaluators) {
             super(evaluators);
@@ -50,8 +97,8 @@ public abstract class CombiningEvaluator extends Evaluator {
 
         @Override
         public boolean matches(Element root, Element node) {
-            for (int i = num - 1; i >= 0; i--) { // process backwards so that :matchText is evaled earlier, to catch parent query. todo - should redo matchText to virtually expand during match, not pre-match (see SelectorTest#findBetweenSpan)
-                Evaluator s = evaluators.get(i);
+            for (int i = 0; i < num; i++) {
+                Evaluator s = sortedEvaluators.get(i);
                 if (!s.matches(root, node))
                     return false;
             }
@@ -75,7 +122,7 @@ public abstract class CombiningEvaluator extends Evaluator {
                 this.evaluators.add(new And(evaluators));
             else // 0 or 1
                 this.evaluators.addAll(evaluators);
-            updateNumEvaluators();
+            updateEvaluators();
         }
 
         Or(Evaluator... evaluators) { this(Arrays.asList(evaluators)); }
@@ -86,13 +133,13 @@ public abstract class CombiningEvaluator extends Evaluator {
 
         public void add(Evaluator e) {
             evaluators.add(e);
-            updateNumEvaluators();
+            updateEvaluators();
         }
 
         @Override
         public boolean matches(Element root, Element node) {
             for (int i = 0; i < num; i++) {
-                Evaluator s = evaluators.get(i);
+                Evaluator s = sortedEvaluators.get(i);
                 if (s.matches(root, node))
                     return true;
             }
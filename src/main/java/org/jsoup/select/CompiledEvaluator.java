@@ -0,0 +1,243 @@
+package org.jsoup.select;
+
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ An evaluator compiled to a flat program, for {@link QueryParser#compile(Evaluator)}. Matching an evaluator tree makes a
+ virtual call per node of the tree (through the and / or combinators, the structural combinators, and the leaf
+ evaluators), and as those call sites see many evaluator types, the JIT can't inline them. The compiled form instead
+ runs an array of instructions in a single loop: the common leaf tests (tag, id, class, attribute) are done inline,
+ and / or become short-circuit jumps, and the combinators run their inner query as another compiled program. Other
+ evaluators are called as-is.
+ <p>The compiled evaluator matches exactly the same elements as its source. It keeps the source evaluators for the
+ per-pass state they hold (such as memoized combinator results), so the source's {@link #toString()}, cost, and pass
+ handling are used.</p>
+ */
+final class CompiledEvaluator extends Evaluator {
+    // instructions; each is an opcode and an operand
+    private static final int Tag = 0, Id = 1, Class = 2, Attr = 3, Root = 4, True = 5, Call = 6,
+        Parent = 7, ImmediateParent = 8, PreviousSibling = 9, ImmediatePreviousSibling = 10,
+        Not = 11, JumpIfFalse = 12, JumpIfTrue = 13;
+
+    final Evaluator source;
+    private final int[] code; // opcode, operand pairs
+    private final Object[] operands; // the operands of instructions that aren't jumps
+
+    private CompiledEvaluator(Evaluator source, int[] code, Object[] operands) {
+        this.source = source;
+        this.code = code;
+        this.operands = operands;
+    }
+
+    static CompiledEvaluator compile(Evaluator eval) {
+        if (eval instanceof CompiledEvaluator)
+            return (CompiledEvaluator) eval;
+        Compiler compiler = new Compiler();
+        compiler.emit(eval);
+        int[] code = new int[compiler.code.size()];
+        for (int i = 0; i < code.length; i++)
+            code[i] = compiler.code.get(i);
+        return new CompiledEvaluator(eval, code, compiler.operands.toArray());
+    }
+
+    @Override
+    Evaluator unwrap() {
+        return source.unwrap();
+    }
+
+    @Override
+    public boolean matches(Element root, Element element) {
+        final int[] code = this.code;
+        final Object[] operands = this.operands;
+        boolean result = true;
+        int pc = 0;
+        while (pc < code.length) {
+            int operand = code[pc + 1];
+            switch (code[pc]) {
+                case Tag:
+                    result = element.normalName().equals(operands[operand]);
+                    break;
+                case Id:
+                    result = operands[operand].equals(element.id());
+                    break;
+                case Class:
+                    result = element.hasClass((String) operands[operand]);
+                    break;
+                case Attr:
+                    result = element.hasAttr((String) operands[operand]);
+                    break;
+                case Root:
+                    result = root == element;
+                    break;
+                case True:
+                    result = true;
+                    break;
+                case Call:
+                    result = ((Evaluator) operands[operand]).matches(root, element);
+                    break;
+                case Parent:
+                    result = parent((Combinator) operands[operand], root, element);
+                    break;
+                case ImmediateParent: {
+                    Element parent = element.parent();
+                    result = root != element && parent != null &&
+                        ((Combinator) operands[operand]).matches(root, parent);
+                    break;
+                }
+                case PreviousSibling:
+                    result = previousSibling((Combinator) operands[operand], root, element);
+                    break;
+                case ImmediatePreviousSibling: {
+                    Element prev = root != element ? element.previousElementSibling() : null;
+                    result = prev != null && ((Combinator) operands[operand]).matches(root, prev);
+                    break;
+                }
+                case Not:
+                    result = !result;
+                    break;
+                case JumpIfFalse:
+                    if (!result) {
+                        pc = operand;
+                        continue;
+                    }
+                    break;
+                case JumpIfTrue:
+                    if (result) {
+                        pc = operand;
+                        continue;
+                    }
+                    break;
+            }
+            pc += 2;
+        }
+        return result;
+    }
+
+    private static boolean parent(Combinator combinator, Element root, Element element) {
+        if (root == element)
+            return false;
+        int[] ancestorKeys = ((StructuralEvaluator.Parent) combinator.structural).ancestorKeys;
+        if (ancestorKeys.length > 0 && !AncestorFilter.mayHaveAncestorsWith(element, ancestorKeys))
+            return false;
+        for (Element parent = element.parent(); parent != null; parent = parent.parent()) {
+            if (combinator.matches(root, parent))
+                return true;
+            if (parent == root)
+                break;
+        }
+        return false;
+    }
+
+    private static boolean previousSibling(Combinator combinator, Element root, Element element) {
+        if (root == element)
+            return false;
+        for (Element prev = element.previousElementSibling(); prev != null; prev = prev.previousElementSibling()) {
+            if (combinator.matches(root, prev))
+                return true;
+        }
+        return false;
+    }
+
+    /** A structural combinator's inner query, compiled, with the source combinator that holds its memo. */
+    private static final class Combinator {
+        final StructuralEvaluator structural;
+        final CompiledEvaluator inner;
+
+        Combinator(StructuralEvaluator structural) {
+            this.structural = structural;
+            this.inner = compile(structural.evaluator);
+        }
+
+        boolean matches(Element root, Element element) {
+            return structural.memoMatches(root, element, inner);
+        }
+    }
+
+    private static final class Compiler {
+        final List<Integer> code = new ArrayList<>();
+        final List<Object> operands = new ArrayList<>();
+
+        void emit(Evaluator eval) {
+            if (eval instanceof Evaluator.Tag) {
+                op(Tag, ((Evaluator.Tag) eval).tagName);
+            } else if (eval instanceof Evaluator.Id) {
+                op(Id, ((Evaluator.Id) eval).id);
+            } else if (eval instanceof Evaluator.Class) {
+                op(Class, ((Evaluator.Class) eval).className);
+            } else if (eval instanceof Evaluator.Attribute) {
+                op(Attr, ((Evaluator.Attribute) eval).key);
+            } else if (eval instanceof Evaluator.AllElements) {
+                op(True, null);
+            } else if (eval instanceof StructuralEvaluator.Root) {
+                op(Root, null);
+            } else if (eval instanceof CombiningEvaluator.And || eval instanceof CombiningEvaluator.Or) {
+                CombiningEvaluator combining = (CombiningEvaluator) eval;
+                if (combining.num == 0) { // an empty and matches all; an empty or matches none
+                    op(True, null);
+                    if (eval instanceof CombiningEvaluator.Or)
+                        op(Not, null);
+                    return;
+                }
+                int jump = eval instanceof CombiningEvaluator.And ? JumpIfFalse : JumpIfTrue;
+                List<Integer> exits = new ArrayList<>();
+                for (int i = 0; i < combining.num; i++) { // in cost order, as the combining evaluator would test them
+                    emit(combining.sortedEvaluators.get(i));
+                    if (i < combining.num - 1) {
+                        exits.add(code.size());
+                        code.add(jump);
+                        code.add(-1); // patched below
+                    }
+                }
+                for (int exit : exits)
+                    code.set(exit + 1, code.size());
+            } else if (eval instanceof StructuralEvaluator.Not) {
+                emit(((StructuralEvaluator) eval).evaluator);
+                op(Not, null);
+            } else if (eval instanceof StructuralEvaluator.Parent) {
+                op(Parent, new Combinator((StructuralEvaluator) eval));
+            } else if (eval instanceof StructuralEvaluator.ImmediateParent) {
+                op(ImmediateParent, new Combinator((StructuralEvaluator) eval));
+            } else if (eval instanceof StructuralEvaluator.PreviousSibling) {
+                op(PreviousSibling, new Combinator((StructuralEvaluator) eval));
+            } else if (eval instanceof StructuralEvaluator.ImmediatePreviousSibling) {
+                op(ImmediatePreviousSibling, new Combinator((StructuralEvaluator) eval));
+            } else {
+                op(Call, eval); // e.g. :has, which memoizes over the whole subtree; pseudo selectors; custom evaluators
+            }
+        }
+
+        private void op(int opcode, Object operand) {
+            code.add(opcode);
+            code.add(operands.size());
+            operands.add(operand);
+        }
+    }
+
+    @Override
+    protected int cost() {
+        return source.cost();
+    }
+
+    @Override
+    boolean isRootIndependent() {
+        return source.isRootIndependent();
+    }
+
+    @Override
+    void beginPass() {
+        source.beginPass();
+    }
+
+    @Override
+    void endPass() {
+        source.endPass();
+    }
+
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+}
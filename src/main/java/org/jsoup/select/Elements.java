@@ -5,6 +5,7 @@ import org.jsoup.internal.StringUtil;
 import org.jsoup.nodes.Comment;
 import org.jsoup.nodes.DataNode;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.ElementOrder;
 import org.jsoup.nodes.FormElement;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
@@ -13,7 +14,9 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 
@@ -491,7 +494,7 @@ public class Elements extends ArrayList<Element> {
      * @return true if at least one element in the list matches the query.
      */
     public boolean is(String query) {
-        Evaluator eval = QueryParser.parse(query);
+        Evaluator eval = EvaluatorCache.get(query);
         for (Element e : this) {
             if (e.is(eval))
                 return true;
@@ -569,7 +572,7 @@ public class Elements extends ArrayList<Element> {
 
     private Elements siblings(@Nullable String query, boolean next, boolean all) {
         Elements els = new Elements();
-        Evaluator eval = query != null? QueryParser.parse(query) : null;
+        Evaluator eval = query != null? EvaluatorCache.get(query) : null;
         for (Element e : this) {
             do {
                 Element sib = next ? e.nextElementSibling() : e.previousElementSibling();
@@ -596,6 +599,34 @@ public class Elements extends ArrayList<Element> {
         return new Elements(combo);
     }
 
+    /**
+     Sort these elements into document order. Elements in the same tree are ordered by their position in it, per their
+     {@link ElementOrder}; and elements from different trees are grouped by tree, in the order each tree first appears.
+     @return this, for chaining
+     */
+    public Elements sortByDocumentOrder() {
+        if (size() < 2)
+            return this;
+        final IdentityHashMap<ElementOrder, Integer> trees = new IdentityHashMap<>();
+        for (Element el : this) {
+            ElementOrder order = ElementOrder.of(el);
+            if (!trees.containsKey(order))
+                trees.put(order, trees.size());
+        }
+        if (trees.size() == 1) {
+            final ElementOrder order = trees.keySet().iterator().next();
+            Collections.sort(this, (a, b) -> order.preorder(a) - order.preorder(b)); // both non-negative, so can't overflow
+        } else {
+            Collections.sort(this, (a, b) -> {
+                ElementOrder orderA = ElementOrder.of(a), orderB = ElementOrder.of(b);
+                if (orderA != orderB)
+                    return trees.get(orderA) - trees.get(orderB);
+                return orderA.preorder(a) - orderA.preorder(b);
+            });
+        }
+        return this;
+    }
+
     // list-like methods
     /**
      Get the first matched element.
@@ -37,11 +37,60 @@ public abstract class Evaluator {
      */
     public abstract boolean matches(Element root, Element element);
 
+    /**
+     A relative cost estimate of evaluating this Evaluator. When combined in an AND or OR, evaluators are tested in
+     ascending cost order, so that cheap and selective checks (such as a tag or id) run before expensive ones (such as
+     text or regex matches).
+     @return the relative cost of this Evaluator
+     */
+    protected int cost() {
+        return 5; // a nominal default cost
+    }
+
+    /**
+     Narrows a cost that was summed or multiplied from other evaluators' costs, saturating rather than overflowing, so
+     that a deeply nested selector stays more costly than its parts.
+     */
+    static int saturatedCost(long cost) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, cost));
+    }
+
+    /**
+     Tests if this evaluator's result for an element below the root is the same no matter which of its ancestors is the
+     root. That holds for most evaluators, which only consider the element and its relatives; but not for e.g.
+     {@code :root}, or the descendant combinator, which stops at the root. When true, {@code :has()} can evaluate its
+     query once over the whole tree, rather than again below each candidate. Custom evaluators are assumed to depend on
+     the root.
+     */
+    boolean isRootIndependent() {
+        return getClass().getEnclosingClass() == Evaluator.class;
+    }
+
+    /**
+     Get the evaluator whose structure this evaluator implements, for inspection by the {@link Collector} (e.g. to find
+     the tag or id to look up in the element index). Evaluators that wrap another (such as a compiled or profiled
+     evaluator) return the evaluator they wrap; others return themselves.
+     */
+    Evaluator unwrap() {
+        return this;
+    }
+
+    /**
+     Called by the {@link Collector} before a selection pass. Evaluators may hold state (such as memoized results) that
+     is valid only while the tree is not being modified, until the matching {@link #endPass()}.
+     */
+    void beginPass() {}
+
+    /**
+     Called by the {@link Collector} after a selection pass, to discard any state held since {@link #beginPass()}.
+     */
+    void endPass() {}
+
     /**
      * Evaluator for tag name
      */
     public static final class Tag extends Evaluator {
-        private final String tagName;
+        final String tagName;
 
         public Tag(String tagName) {
             this.tagName = tagName;
@@ -52,6 +101,11 @@ public abstract class Evaluator {
             return (element.normalName().equals(tagName));
         }
 
+        @Override
+        protected int cost() {
+            return 1;
+        }
+
         @Override
         public String toString() {
             return String.format("%s", tagName);
@@ -74,6 +128,11 @@ public abstract class Evaluator {
             return (element.normalName().endsWith(tagName));
         }
 
+        @Override
+        protected int cost() {
+            return 2;
+        }
+
         @Override
         public String toString() {
             return String.format("%s", tagName);
@@ -84,7 +143,7 @@ public abstract class Evaluator {
      * Evaluator for element id
      */
     public static final class Id extends Evaluator {
-        private final String id;
+        final String id;
 
         public Id(String id) {
             this.id = id;
@@ -95,6 +154,11 @@ public abstract class Evaluator {
             return (id.equals(element.id()));
         }
 
+        @Override
+        protected int cost() {
+            return 2;
+        }
+
         @Override
         public String toString() {
             return String.format("#%s", id);
@@ -106,7 +170,7 @@ public abstract class Evaluator {
      * Evaluator for element class
      */
     public static final class Class extends Evaluator {
-        private final String className;
+        final String className;
 
         public Class(String className) {
             this.className = className;
@@ -117,6 +181,11 @@ public abstract class Evaluator {
             return (element.hasClass(className));
         }
 
+        @Override
+        protected int cost() {
+            return 6;
+        }
+
         @Override
         public String toString() {
             return String.format(".%s", className);
@@ -128,7 +197,7 @@ public abstract class Evaluator {
      * Evaluator for attribute name matching
      */
     public static final class Attribute extends Evaluator {
-        private final String key;
+        final String key;
 
         public Attribute(String key) {
             this.key = key;
@@ -139,6 +208,11 @@ public abstract class Evaluator {
             return element.hasAttr(key);
         }
 
+        @Override
+        protected int cost() {
+            return 2;
+        }
+
         @Override
         public String toString() {
             return String.format("[%s]", key);
@@ -167,6 +241,11 @@ public abstract class Evaluator {
             return false;
         }
 
+        @Override
+        protected int cost() {
+            return 6;
+        }
+
         @Override
         public String toString() {
             return String.format("[^%s]", keyPrefix);
@@ -187,6 +266,11 @@ public abstract class Evaluator {
             return element.hasAttr(key) && value.equalsIgnoreCase(element.attr(key).trim());
         }
 
+        @Override
+        protected int cost() {
+            return 3;
+        }
+
         @Override
         public String toString() {
             return String.format("[%s=%s]", key, value);
@@ -207,6 +291,11 @@ public abstract class Evaluator {
             return !value.equalsIgnoreCase(element.attr(key));
         }
 
+        @Override
+        protected int cost() {
+            return 3;
+        }
+
         @Override
         public String toString() {
             return String.format("[%s!=%s]", key, value);
@@ -227,6 +316,11 @@ public abstract class Evaluator {
             return element.hasAttr(key) && lowerCase(element.attr(key)).startsWith(value); // value is lower case already
         }
 
+        @Override
+        protected int cost() {
+            return 4;
+        }
+
         @Override
         public String toString() {
             return String.format("[%s^=%s]", key, value);
@@ -247,6 +341,11 @@ public abstract class Evaluator {
             return element.hasAttr(key) && lowerCase(element.attr(key)).endsWith(value); // value is lower case
         }
 
+        @Override
+        protected int cost() {
+            return 4;
+        }
+
         @Override
         public String toString() {
             return String.format("[%s$=%s]", key, value);
@@ -267,6 +366,11 @@ public abstract class Evaluator {
             return element.hasAttr(key) && lowerCase(element.attr(key)).contains(value); // value is lower case
         }
 
+        @Override
+        protected int cost() {
+            return 6;
+        }
+
         @Override
         public String toString() {
             return String.format("[%s*=%s]", key, value);
@@ -291,6 +395,11 @@ public abstract class Evaluator {
             return element.hasAttr(key) && pattern.matcher(element.attr(key)).find();
         }
 
+        @Override
+        protected int cost() {
+            return 8;
+        }
+
         @Override
         public String toString() {
             return String.format("[%s~=%s]", key, pattern.toString());
@@ -334,6 +443,11 @@ public abstract class Evaluator {
             return true;
         }
 
+        @Override
+        protected int cost() {
+            return 10;
+        }
+
         @Override
         public String toString() {
             return "*";
@@ -407,7 +521,7 @@ public abstract class Evaluator {
 		@Override
 		public boolean matches(Element root, Element element) {
 			final Element p = element.parent();
-			return p != null && !(p instanceof Document) && element.elementSiblingIndex() == p.children().size()-1;
+			return p != null && !(p instanceof Document) && element.elementSiblingIndex() == p.childrenSize()-1;
 		}
 
 		@Override
@@ -508,7 +622,7 @@ public abstract class Evaluator {
         protected int calculatePosition(Element root, Element element) {
     	    if (element.parent() == null)
     	        return 0;
-        	return element.parent().children().size() - element.elementSiblingIndex();
+        	return element.parent().childrenSize() - element.elementSiblingIndex();
         }
 
 		@Override
@@ -527,15 +641,9 @@ public abstract class Evaluator {
     	}
 
 		protected int calculatePosition(Element root, Element element) {
-			int pos = 0;
             if (element.parent() == null)
                 return 0;
-        	Elements family = element.parent().children();
-            for (Element el : family) {
-                if (el.tag().equals(element.tag())) pos++;
-                if (el == element) break;
-            }
-			return pos;
+			return element.elementSiblingTypeIndex() + 1;
 		}
 
 		@Override
@@ -552,14 +660,9 @@ public abstract class Evaluator {
 
 		@Override
 		protected int calculatePosition(Element root, Element element) {
-			int pos = 0;
             if (element.parent() == null)
                 return 0;
-        	Elements family = element.parent().children();
-        	for (int i = element.elementSiblingIndex(); i < family.size(); i++) {
-        		if (family.get(i).tag().equals(element.tag())) pos++;
-        	}
-			return pos;
+			return element.elementSiblingTypeCount() - element.elementSiblingTypeIndex();
 		}
 
 		@Override
@@ -595,6 +698,12 @@ public abstract class Evaluator {
     		final Element r = root instanceof Document?root.child(0):root;
     		return element == r;
     	}
+
+    	@Override
+    	boolean isRootIndependent() {
+    		return false;
+    	}
+
     	@Override
     	public String toString() {
     		return ":root";
@@ -605,7 +714,7 @@ public abstract class Evaluator {
 		@Override
 		public boolean matches(Element root, Element element) {
 			final Element p = element.parent();
-			return p!=null && !(p instanceof Document) && element.siblingElements().isEmpty();
+			return p!=null && !(p instanceof Document) && p.childrenSize() == 1;
 		}
     	@Override
     	public String toString() {
@@ -618,13 +727,7 @@ public abstract class Evaluator {
 		public boolean matches(Element root, Element element) {
 			final Element p = element.parent();
 			if (p==null || p instanceof Document) return false;
-
-			int pos = 0;
-        	Elements family = p.children();
-            for (Element el : family) {
-                if (el.tag().equals(element.tag())) pos++;
-            }
-        	return pos == 1;
+        	return element.elementSiblingTypeCount() == 1;
 		}
     	@Override
     	public String toString() {
@@ -672,7 +775,22 @@ public abstract class Evaluator {
 
         @Override
         public boolean matches(Element root, Element element) {
-            return lowerCase(element.text()).contains(searchText);
+            return lowerCase(TextMemo.text(element)).contains(searchText);
+        }
+
+        @Override
+        void beginPass() {
+            TextMemo.beginPass();
+        }
+
+        @Override
+        void endPass() {
+            TextMemo.endPass();
+        }
+
+        @Override
+        protected int cost() {
+            return 10;
         }
 
         @Override
@@ -695,7 +813,22 @@ public abstract class Evaluator {
 
         @Override
         public boolean matches(Element root, Element element) {
-            return element.wholeText().contains(searchText);
+            return TextMemo.wholeText(element).contains(searchText);
+        }
+
+        @Override
+        void beginPass() {
+            TextMemo.beginPass();
+        }
+
+        @Override
+        void endPass() {
+            TextMemo.endPass();
+        }
+
+        @Override
+        protected int cost() {
+            return 10;
         }
 
         @Override
@@ -721,6 +854,11 @@ public abstract class Evaluator {
             return element.wholeOwnText().contains(searchText);
         }
 
+        @Override
+        protected int cost() {
+            return 10;
+        }
+
         @Override
         public String toString() {
             return String.format(":containsWholeOwnText(%s)", searchText);
@@ -742,6 +880,11 @@ public abstract class Evaluator {
             return lowerCase(element.data()).contains(searchText); // not whitespace normalized
         }
 
+        @Override
+        protected int cost() {
+            return 10;
+        }
+
         @Override
         public String toString() {
             return String.format(":containsData(%s)", searchText);
@@ -763,6 +906,11 @@ public abstract class Evaluator {
             return lowerCase(element.ownText()).contains(searchText);
         }
 
+        @Override
+        protected int cost() {
+            return 10;
+        }
+
         @Override
         public String toString() {
             return String.format(":containsOwn(%s)", searchText);
@@ -781,10 +929,25 @@ public abstract class Evaluator {
 
         @Override
         public boolean matches(Element root, Element element) {
-            Matcher m = pattern.matcher(element.text());
+            Matcher m = pattern.matcher(TextMemo.text(element));
             return m.find();
         }
 
+        @Override
+        void beginPass() {
+            TextMemo.beginPass();
+        }
+
+        @Override
+        void endPass() {
+            TextMemo.endPass();
+        }
+
+        @Override
+        protected int cost() {
+            return 12;
+        }
+
         @Override
         public String toString() {
             return String.format(":matches(%s)", pattern);
@@ -807,6 +970,11 @@ public abstract class Evaluator {
             return m.find();
         }
 
+        @Override
+        protected int cost() {
+            return 12;
+        }
+
         @Override
         public String toString() {
             return String.format(":matchesOwn(%s)", pattern);
@@ -826,10 +994,25 @@ public abstract class Evaluator {
 
         @Override
         public boolean matches(Element root, Element element) {
-            Matcher m = pattern.matcher(element.wholeText());
+            Matcher m = pattern.matcher(TextMemo.wholeText(element));
             return m.find();
         }
 
+        @Override
+        void beginPass() {
+            TextMemo.beginPass();
+        }
+
+        @Override
+        void endPass() {
+            TextMemo.endPass();
+        }
+
+        @Override
+        protected int cost() {
+            return 12;
+        }
+
         @Override
         public String toString() {
             return String.format(":matchesWholeText(%s)", pattern);
@@ -853,6 +1036,11 @@ public abstract class Evaluator {
             return m.find();
         }
 
+        @Override
+        protected int cost() {
+            return 12;
+        }
+
         @Override
         public String toString() {
             return String.format(":matchesWholeOwnText(%s)", pattern);
@@ -876,6 +1064,16 @@ public abstract class Evaluator {
             return false;
         }
 
+        @Override
+        protected int cost() {
+            return -1; // forces first evaluation, which prepares the DOM for later evaluator matches
+        }
+
+        @Override
+        boolean isRootIndependent() {
+            return false; // modifies the tree as it matches, so must not be run ahead of the selection
+        }
+
         @Override
         public String toString() {
             return ":matchText";
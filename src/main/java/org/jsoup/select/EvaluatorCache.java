@@ -0,0 +1,123 @@
+package org.jsoup.select;
+
+import org.jsoup.helper.Validate;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ A bounded, least-recently-used cache of parsed CSS queries. The String query methods such as
+ {@link org.jsoup.nodes.Element#select(String)}, {@link org.jsoup.nodes.Element#selectFirst(String)},
+ {@link org.jsoup.nodes.Element#is(String)}, and {@link org.jsoup.nodes.Element#closest(String)} get their
+ {@link Evaluator} from this cache, so a query that is used repeatedly is only parsed once.
+ <p>The cache is shared by all threads. Parsed evaluators are immutable, so may be used concurrently.</p>
+ <p>By default, up to 512 queries are cached. Use {@link #maxSize(int)} to change that (or to disable the cache), and
+ {@link #hitCount()} and {@link #missCount()} to see how effective it is.</p>
+ */
+public final class EvaluatorCache {
+    private static final int DefaultMaxSize = 512;
+
+    private static int maxSize = DefaultMaxSize; // guarded by cache
+    private static final LinkedHashMap<String, Evaluator> cache = new LinkedHashMap<String, Evaluator>(64, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Evaluator> eldest) {
+            return size() > maxSize;
+        }
+    };
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    // not instantiable
+    private EvaluatorCache() {}
+
+    /**
+     Get the evaluator for a CSS query, from the cache if it has been parsed recently; otherwise parse it and cache it.
+     @param cssQuery a {@link Selector} CSS query
+     @return the query's evaluator
+     @throws Selector.SelectorParseException (unchecked) on an invalid CSS query.
+     */
+    public static Evaluator get(String cssQuery) {
+        Validate.notNull(cssQuery);
+        Evaluator evaluator;
+        synchronized (cache) { // an access-ordered get updates the map, so reads are locked too
+            evaluator = cache.get(cssQuery);
+        }
+        if (evaluator != null) {
+            hits.incrementAndGet();
+            return evaluator;
+        }
+
+        misses.incrementAndGet();
+        evaluator = QueryParser.parse(cssQuery); // parsed outside the lock; a concurrent miss on the same query just parses twice
+        synchronized (cache) {
+            if (maxSize > 0)
+                cache.put(cssQuery, evaluator);
+        }
+        return evaluator;
+    }
+
+    /**
+     Get the maximum number of queries that will be cached.
+     @return the max size of the cache
+     */
+    public static int maxSize() {
+        synchronized (cache) {
+            return maxSize;
+        }
+    }
+
+    /**
+     Set the maximum number of queries that will be cached. If the cache currently holds more queries than this, the
+     least recently used are evicted.
+     @param maxSize the max size of the cache. Must be {@literal >=} 0; 0 disables the cache.
+     */
+    public static void maxSize(int maxSize) {
+        Validate.isTrue(maxSize >= 0, "maxSize must be >= 0");
+        synchronized (cache) {
+            EvaluatorCache.maxSize = maxSize;
+            Iterator<String> it = cache.keySet().iterator(); // eldest first
+            while (cache.size() > maxSize) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     Get the number of queries currently cached.
+     @return the current size of the cache
+     */
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     Get the number of lookups that found their query in the cache, since the statistics were last cleared.
+     @return the number of cache hits
+     */
+    public static long hitCount() {
+        return hits.get();
+    }
+
+    /**
+     Get the number of lookups that had to parse their query, since the statistics were last cleared.
+     @return the number of cache misses
+     */
+    public static long missCount() {
+        return misses.get();
+    }
+
+    /**
+     Remove all queries from the cache, and reset the hit and miss counts.
+     */
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+}
@@ -0,0 +1,167 @@
+package org.jsoup.select;
+
+import org.jsoup.helper.Validate;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.HtmlRewriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ Extracts the elements matching a set of queries in a single pass.
+ <p>Running many queries over a document with {@link Element#select(String)} walks the document once for each query. An
+ Extractor instead tests every element against all of its queries during one traversal. It can also run while the input
+ is being parsed, retaining only the matched elements (and their ancestors).</p>
+ <p>For example:</p>
+ <pre>
+ Extractor extractor = new Extractor()
+     .add("h1.title")
+     .add("links", QueryParser.parse("a[href]"));
+ Map&lt;String, Elements&gt; results = extractor.extract(doc);
+ Elements links = results.get("links");
+ </pre>
+ <p>An Extractor may be reused for many documents, but is not thread-safe.</p>
+ */
+public class Extractor {
+    private final LinkedHashMap<String, Evaluator> queries = new LinkedHashMap<>();
+
+    /**
+     Add a query to extract. The results will be keyed by the query string.
+     @param cssQuery a {@link Selector} CSS query
+     @return this Extractor, for chaining
+     @throws Selector.SelectorParseException (unchecked) on an invalid CSS query.
+     */
+    public Extractor add(String cssQuery) {
+        Validate.notEmpty(cssQuery);
+        return add(cssQuery, QueryParser.parse(cssQuery));
+    }
+
+    /**
+     Add an evaluator to extract, with the key for its results.
+     @param key the key for the results of this evaluator
+     @param evaluator an element evaluator
+     @return this Extractor, for chaining
+     */
+    public Extractor add(String key, Evaluator evaluator) {
+        Validate.notNull(key);
+        Validate.notNull(evaluator);
+        queries.put(key, evaluator);
+        return this;
+    }
+
+    /**
+     Find the elements matching each query, with a single traversal of the root and its descendants.
+     @param root the root element to descend into
+     @return a map from each query's key to its matching elements (empty if none), in the order the queries were added
+     */
+    public Map<String, Elements> extract(Element root) {
+        Validate.notNull(root);
+        final int size = queries.size();
+        final Evaluator[] evals = queries.values().toArray(new Evaluator[0]);
+        final Elements[] found = new Elements[size];
+        for (int i = 0; i < size; i++)
+            found[i] = new Elements();
+
+        for (Evaluator eval : evals)
+            eval.beginPass();
+        try {
+            NodeTraversor.traverse((node, depth) -> {
+                if (node instanceof Element) {
+                    Element el = (Element) node;
+                    for (int i = 0; i < size; i++) {
+                        if (evals[i].matches(root, el))
+                            found[i].add(el);
+                    }
+                }
+            }, root);
+        } finally {
+            for (Evaluator eval : evals)
+                eval.endPass();
+        }
+
+        return results(found);
+    }
+
+    /**
+     Parse the input HTML and find the elements matching each query, as they are parsed. Only the matched elements are
+     retained: they are returned within a new Document that holds (shallow) copies of their ancestors, and the rest of
+     the input is discarded as it is parsed.
+     <p>As with the {@link HtmlRewriter}, queries are evaluated when an element's start tag is parsed, and so can only
+     consider the element and its ancestors.</p>
+     @param input HTML to read
+     @param baseUri base URI of the input, for resolving relative URLs
+     @return a map from each query's key to its matching elements (empty if none), in the order the queries were added
+     @throws IOException if reading the input fails
+     */
+    public Map<String, Elements> extract(Reader input, String baseUri) throws IOException {
+        final Retainer retainer = new Retainer(new Document(baseUri));
+        final Elements[] found = new Elements[queries.size()];
+        HtmlRewriter rewriter = new HtmlRewriter();
+        int i = 0;
+        for (Evaluator eval : queries.values()) {
+            final Elements elements = found[i++] = new Elements();
+            rewriter.on(eval, el -> {
+                retainer.retain(el);
+                elements.add(el);
+            });
+        }
+
+        rewriter.process(input, baseUri);
+        return results(found);
+    }
+
+    private Map<String, Elements> results(Elements[] found) {
+        LinkedHashMap<String, Elements> results = new LinkedHashMap<>(found.length * 2);
+        int i = 0;
+        for (String key : queries.keySet())
+            results.put(key, found[i++]);
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     Moves matched elements out of the parse into a retained document, under shallow copies of their ancestors. Matches
+     arrive in document order, so only the ancestor chain of the last retained element needs to be tracked.
+     */
+    private static final class Retainer {
+        private final Document retained;
+        private final ArrayList<Element> sources = new ArrayList<>(); // ancestors of the last retained element in the parse, outermost first
+        private final ArrayList<Element> copies = new ArrayList<>(); // their copies in the retained document
+
+        Retainer(Document retained) {
+            this.retained = retained;
+        }
+
+        void retain(Element el) {
+            if (el.ownerDocument() == retained)
+                return; // within an element that has already been retained
+
+            ArrayList<Element> chain = new ArrayList<>();
+            for (Element parent = el.parent(); parent != null && !(parent instanceof Document); parent = parent.parent())
+                chain.add(parent);
+            Collections.reverse(chain);
+
+            int common = 0;
+            while (common < sources.size() && common < chain.size() && sources.get(common) == chain.get(common))
+                common++;
+            for (int i = sources.size() - 1; i >= common; i--) {
+                sources.remove(i);
+                copies.remove(i);
+            }
+
+            Element parent = common > 0 ? copies.get(common - 1) : retained;
+            for (int i = common; i < chain.size(); i++) {
+                Element copy = chain.get(i).shallowClone();
+                parent.appendChild(copy);
+                sources.add(chain.get(i));
+                copies.add(copy);
+                parent = copy;
+            }
+            parent.appendChild(el); // moves it out of the parse
+        }
+    }
+}
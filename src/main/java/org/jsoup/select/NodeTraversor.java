@@ -5,6 +5,10 @@ import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.select.NodeFilter.FilterResult;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
 /**
  * Depth-first node traversor. Use to iterate through all nodes under and including the specified root node.
  * <p>
@@ -61,6 +65,33 @@ public class NodeTraversor {
         }
     }
 
+    /**
+     Traverse the root and all of its descendants using multiple threads, for read-only analysis of large documents. The
+     tree is split into contiguous parts in document order, and each part is visited by its own visitor, got from the
+     supplier, on the executor or the calling thread. Together the visitors see every node once, with {@code head} and
+     {@code tail} in document order within each part; so a result that is built up in document order can be made by
+     combining each visitor's result in the order returned.
+     <p>The visitors must not modify the tree, and the tree must not be modified during the traversal. Small trees are
+     traversed by a single visitor on the calling thread.</p>
+     <p>The executor is not shut down; its lifecycle remains with the caller.</p>
+
+     @param visitors supplies a new visitor for each part of the tree
+     @param root the root node to traverse
+     @param executor the executor to visit parts on. The calling thread also visits parts, so the traversal completes
+     even if the executor has no free threads.
+     @param parallelism the number of threads to use, including the calling thread
+     @param <V> the type of visitor
+     @return the visitors used, in the document order of the parts that they visited
+     */
+    public static <V extends NodeVisitor> List<V> traverseParallel(Supplier<V> visitors, Node root, Executor executor,
+        int parallelism) {
+        Validate.notNull(visitors);
+        Validate.notNull(root);
+        Validate.notNull(executor);
+        Validate.isTrue(parallelism > 0, "Parallelism must be greater than 0");
+        return ParallelTraversal.traverse(visitors, root, executor, parallelism);
+    }
+
     /**
      * Start a depth-first traverse of all elements.
      * @param visitor Node visitor.
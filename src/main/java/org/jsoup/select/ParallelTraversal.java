@@ -0,0 +1,241 @@
+package org.jsoup.select;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ Splits a traversal of a large tree into parts that are visited concurrently, for
+ {@link NodeTraversor#traverseParallel(Supplier, Node, Executor, int)}.
+ <p>The tree is split by expanding the root level by level, until there are enough subtrees to share between threads.
+ The expanded nodes (the root and the upper levels) form a spine, whose heads and tails are interleaved with the
+ subtrees in document order. That sequence is cut into contiguous chunks, each visited by its own visitor, so the
+ visitors together see every node exactly once, and each visitor's part follows the previous visitor's part in document
+ order.</p>
+ <p>Chunks are taken in turn by the calling thread and by workers on the executor. As the caller takes chunks too, the
+ traversal completes even if the executor has no free threads (e.g. when called from one of its own tasks).</p>
+ */
+final class ParallelTraversal {
+    /* Below this many nodes, a sequential traversal is faster than splitting the tree. */
+    static final int MinNodes = 10_000;
+    private static final int ChunksPerThread = 4; // more chunks than threads, to balance subtrees of different sizes
+    private static final int SubtreesPerChunk = 8; // expand the spine until there are this many subtrees per chunk
+    private static final int MaxSpineDepth = 32;
+
+    private static final int Head = 0, Tail = 1, Subtree = 2;
+
+
+    private ParallelTraversal() {}
+
+    /** Implemented by visitors that need to set up and tear down around the chunk they visit, on its thread. */
+    interface ChunkVisitor extends NodeVisitor {
+        void beginChunk();
+
+        void endChunk();
+    }
+
+    /** A step of the traversal: a head or tail of a spine node, or a whole subtree. */
+    private static final class Step {
+        final int kind;
+        final Node node;
+        final int depth;
+
+        Step(int kind, Node node, int depth) {
+            this.kind = kind;
+            this.node = node;
+            this.depth = depth;
+        }
+    }
+
+    static <V extends NodeVisitor> List<V> traverse(Supplier<V> visitors, Node root, Executor executor, int threads) {
+        if (threads < 2 || !hasAtLeast(root, MinNodes)) {
+            V visitor = visitors.get();
+            runSequential(visitor, root);
+            return Collections.singletonList(visitor);
+        }
+
+        List<Step> steps = split(root, threads * ChunksPerThread * SubtreesPerChunk);
+        List<List<Step>> chunks = chunk(steps, threads * ChunksPerThread);
+        List<V> chunkVisitors = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++)
+            chunkVisitors.add(visitors.get());
+        run(chunks, chunkVisitors, executor, threads);
+        return chunkVisitors;
+    }
+
+    private static void runSequential(NodeVisitor visitor, Node root) {
+        ChunkVisitor chunkVisitor = visitor instanceof ChunkVisitor ? (ChunkVisitor) visitor : null;
+        if (chunkVisitor != null)
+            chunkVisitor.beginChunk();
+        try {
+            NodeTraversor.traverse(visitor, root);
+        } finally {
+            if (chunkVisitor != null)
+                chunkVisitor.endChunk();
+        }
+    }
+
+    private static boolean hasAtLeast(Node root, int count) {
+        final int[] seen = {0};
+        NodeTraversor.filter((node, depth) ->
+            ++seen[0] >= count ? NodeFilter.FilterResult.STOP : NodeFilter.FilterResult.CONTINUE, root);
+        return seen[0] >= count;
+    }
+
+    /** Expand the root level by level until there are enough subtrees, and list the steps in document order. */
+    private static List<Step> split(Node root, int targetSubtrees) {
+        final Set<Node> spine = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Node> level = Collections.singletonList(root);
+        int leaves = 0; // nodes in earlier levels without children, each of which remains a subtree
+        int subtrees = 1;
+        for (int depth = 0; depth < MaxSpineDepth && subtrees < targetSubtrees; depth++) {
+            List<Node> next = new ArrayList<>();
+            for (Node node : level) {
+                if (node instanceof Element && node.childNodeSize() > 0) {
+                    spine.add(node);
+                    next.addAll(node.childNodes());
+                } else {
+                    leaves++;
+                }
+            }
+            if (next.isEmpty())
+                break;
+            subtrees = leaves + next.size();
+            level = next;
+        }
+
+        final List<Step> steps = new ArrayList<>();
+        NodeTraversor.filter(new NodeFilter() {
+            @Override public FilterResult head(Node node, int depth) {
+                if (spine.contains(node)) {
+                    steps.add(new Step(Head, node, depth));
+                    return FilterResult.CONTINUE;
+                }
+                steps.add(new Step(Subtree, node, depth));
+                return FilterResult.SKIP_ENTIRELY;
+            }
+
+            @Override public FilterResult tail(Node node, int depth) {
+                steps.add(new Step(Tail, node, depth)); // only called for the spine, as subtrees were skipped entirely
+                return FilterResult.CONTINUE;
+            }
+        }, root);
+        return steps;
+    }
+
+    /** Cut the steps into contiguous chunks with about the same number of subtrees. */
+    private static List<List<Step>> chunk(List<Step> steps, int targetChunks) {
+        int subtrees = 0;
+        for (Step step : steps) {
+            if (step.kind == Subtree)
+                subtrees++;
+        }
+        int perChunk = Math.max(1, (subtrees + targetChunks - 1) / targetChunks);
+
+        List<List<Step>> chunks = new ArrayList<>();
+        List<Step> chunk = new ArrayList<>();
+        int inChunk = 0;
+        for (Step step : steps) {
+            chunk.add(step);
+            if (step.kind == Subtree && ++inChunk == perChunk) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                inChunk = 0;
+            }
+        }
+        if (!chunk.isEmpty())
+            chunks.add(chunk);
+        return chunks;
+    }
+
+    private static <V extends NodeVisitor> void run(final List<List<Step>> chunks, final List<V> chunkVisitors,
+        Executor executor, int threads) {
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(chunks.size());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Runnable worker = () -> {
+            int i;
+            while ((i = nextChunk.getAndIncrement()) < chunks.size()) {
+                try {
+                    if (failure.get() == null)
+                        visit(chunks.get(i), chunkVisitors.get(i));
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        try {
+            for (int i = 1; i < Math.min(threads, chunks.size()); i++)
+                executor.execute(worker);
+        } catch (RejectedExecutionException e) {
+            // the executor is saturated or shut down; the caller will visit any chunks not taken
+        }
+        worker.run(); // the caller takes chunks too, and then waits only for chunks already taken by workers
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the traversal to complete", e);
+        }
+
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        if (e != null)
+            throw new IllegalStateException(e);
+    }
+
+    private static void visit(List<Step> chunk, NodeVisitor visitor) {
+        ChunkVisitor chunkVisitor = visitor instanceof ChunkVisitor ? (ChunkVisitor) visitor : null;
+        if (chunkVisitor != null)
+            chunkVisitor.beginChunk();
+        try {
+            for (Step step : chunk) {
+                if (step.kind == Head)
+                    visitor.head(step.node, step.depth);
+                else if (step.kind == Tail)
+                    visitor.tail(step.node, step.depth);
+                else
+                    NodeTraversor.traverse(new OffsetVisitor(visitor, step.depth), step.node);
+            }
+        } finally {
+            if (chunkVisitor != null)
+                chunkVisitor.endChunk();
+        }
+    }
+
+    /** Reports depths relative to the traversal root, rather than to the subtree being traversed. */
+    private static final class OffsetVisitor implements NodeVisitor {
+        private final NodeVisitor visitor;
+        private final int offset;
+
+        OffsetVisitor(NodeVisitor visitor, int offset) {
+            this.visitor = visitor;
+            this.offset = offset;
+        }
+
+        @Override public void head(Node node, int depth) {
+            visitor.head(node, depth + offset);
+        }
+
+        @Override public void tail(Node node, int depth) {
+            visitor.tail(node, depth + offset);
+        }
+    }
+}
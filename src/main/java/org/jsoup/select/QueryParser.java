@@ -48,6 +48,31 @@ public class QueryParser {
         }
     }
 
+    /**
+     Parse a CSS query, and compile it to a specialized Evaluator. The compiled evaluator matches the same elements, but
+     runs the query as a flat program in a single loop, rather than by calls through the tree of evaluators. That is
+     worth doing for queries that are run very often (e.g. against many documents); use the result with
+     {@link Selector#select(Evaluator, org.jsoup.nodes.Element)} or
+     {@link org.jsoup.nodes.Element#select(Evaluator)}.
+     @param query CSS query
+     @return the compiled Evaluator
+     @see #compile(Evaluator)
+     */
+    public static Evaluator compile(String query) {
+        return compile(parse(query));
+    }
+
+    /**
+     Compile an Evaluator to a specialized Evaluator, as {@link #compile(String)}. Custom evaluators within it are kept
+     and called as-is.
+     @param evaluator the Evaluator to compile
+     @return the compiled Evaluator
+     */
+    public static Evaluator compile(Evaluator evaluator) {
+        Validate.notNull(evaluator);
+        return CompiledEvaluator.compile(evaluator);
+    }
+
     /**
      * Parse the query
      * @return Evaluator
@@ -0,0 +1,247 @@
+package org.jsoup.select;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ A profile of a query run by {@link Collector#profile(Evaluator, Element)}: the matches, and for each node of the query's
+ evaluator tree, how many times it was tested, how many of those tests matched, and the time spent in it. Use it to find
+ which part of a slow query (say a {@code :matches} regex, or a {@code :has}) dominates.
+ <p>The {@link #toString()} form lists the tree as {@link Selector#explain(String)} does, with the counts and times.
+ Times are inclusive: a combinator's time includes the time in its inner query. Timing each test adds some overhead, so
+ compare the parts of a profile with each other, rather than with an unprofiled run.</p>
+ */
+public final class QueryProfile {
+    private final Elements matches;
+    private final List<Entry> entries;
+
+    private QueryProfile(Elements matches, List<Entry> entries) {
+        this.matches = matches;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     Get the elements that matched the query.
+     @return the matches
+     */
+    public Elements matches() {
+        return matches;
+    }
+
+    /**
+     Get the profile of each node of the query's evaluator tree, in the order of {@link Selector#explain(String)}: the
+     root first, and the parts of a combination in the order they are tested.
+     @return the profile entries
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /** The profile of one node of an evaluator tree. */
+    public static final class Entry {
+        private final Evaluator evaluator;
+        private final int depth;
+        long invocations;
+        long matched;
+        long nanos;
+
+        Entry(Evaluator evaluator, int depth) {
+            this.evaluator = evaluator;
+            this.depth = depth;
+        }
+
+        /**
+         Get the evaluator this entry profiles.
+         @return the evaluator
+         */
+        public Evaluator evaluator() {
+            return evaluator;
+        }
+
+        /**
+         Get the depth of the evaluator in the tree; the root's depth is 0.
+         @return the depth
+         */
+        public int depth() {
+            return depth;
+        }
+
+        /**
+         Get the number of elements the evaluator was tested against.
+         @return the number of tests
+         */
+        public long invocations() {
+            return invocations;
+        }
+
+        /**
+         Get the number of tests that matched.
+         @return the number of matches
+         */
+        public long matches() {
+            return matched;
+        }
+
+        /**
+         Get the total time spent testing the evaluator, including in any evaluators it contains.
+         @return the time, in nanoseconds
+         */
+        public long nanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %d tested, %d matched, %.3f ms",
+                describe(evaluator), invocations, matched, nanos / 1e6);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = StringUtil.borrowBuilder();
+        for (Entry entry : entries)
+            sb.append(StringUtil.padding(entry.depth * 2)).append(entry).append('\n');
+        return StringUtil.releaseBuilder(sb);
+    }
+
+    /** Run the query, profiling each part. */
+    static QueryProfile profile(Evaluator eval, Element root) {
+        List<Entry> entries = new ArrayList<>();
+        Evaluator profiled = instrument(eval.unwrap(), 0, entries);
+        Elements matches = Collector.collect(profiled, root);
+        return new QueryProfile(matches, entries);
+    }
+
+    /** Describe the evaluator tree, one node per line, with the parts of each combination in the order they are tested. */
+    static String explain(Evaluator eval) {
+        StringBuilder sb = StringUtil.borrowBuilder();
+        explain(eval.unwrap(), 0, sb);
+        return StringUtil.releaseBuilder(sb);
+    }
+
+    private static void explain(Evaluator eval, int depth, StringBuilder sb) {
+        sb.append(StringUtil.padding(depth * 2)).append(describe(eval)).append('\n');
+        for (Evaluator part : parts(eval))
+            explain(part.unwrap(), depth + 1, sb);
+    }
+
+    /** The evaluator's type and cost, and its query. */
+    static String describe(Evaluator eval) {
+        eval = eval.unwrap();
+        String name = eval.getClass().getSimpleName();
+        if (name.isEmpty()) // anonymous
+            name = eval.getClass().getName();
+        return String.format(Locale.ROOT, "%s (cost %d) %s", name, eval.cost(), eval.toString().trim());
+    }
+
+    /** The evaluators within a combination, in the order they are tested; or the inner evaluator of a combinator. */
+    private static List<Evaluator> parts(Evaluator eval) {
+        if (eval instanceof CombiningEvaluator) {
+            CombiningEvaluator combining = (CombiningEvaluator) eval;
+            return new ArrayList<>(combining.sortedEvaluators.subList(0, combining.num));
+        } else if (eval instanceof StructuralEvaluator) {
+            return Collections.singletonList(((StructuralEvaluator) eval).evaluator);
+        }
+        return Collections.emptyList();
+    }
+
+    /** Rebuild the evaluator tree with each node wrapped by a profiling evaluator, adding an entry for each (in explain
+     order). */
+    private static Evaluator instrument(Evaluator eval, int depth, List<Entry> entries) {
+        Entry entry = new Entry(eval, depth);
+        entries.add(entry);
+        Evaluator rebuilt;
+        if (eval instanceof CombiningEvaluator.And || eval instanceof CombiningEvaluator.Or) {
+            List<Evaluator> parts = new ArrayList<>();
+            for (Evaluator part : parts(eval)) // in test order, so the entries list in that order
+                parts.add(instrument(part.unwrap(), depth + 1, entries));
+            if (eval instanceof CombiningEvaluator.And) {
+                rebuilt = new CombiningEvaluator.And(parts); // the wrappers have the same costs, so sort the same
+            } else {
+                CombiningEvaluator.Or or = new CombiningEvaluator.Or();
+                for (Evaluator part : parts)
+                    or.add(part);
+                rebuilt = or;
+            }
+        } else if (eval instanceof StructuralEvaluator) {
+            Evaluator inner = instrument(((StructuralEvaluator) eval).evaluator.unwrap(), depth + 1, entries);
+            if (eval instanceof StructuralEvaluator.Has)
+                rebuilt = new StructuralEvaluator.Has(inner);
+            else if (eval instanceof StructuralEvaluator.Not)
+                rebuilt = new StructuralEvaluator.Not(inner);
+            else if (eval instanceof StructuralEvaluator.Parent)
+                rebuilt = new StructuralEvaluator.Parent(inner);
+            else if (eval instanceof StructuralEvaluator.ImmediateParent)
+                rebuilt = new StructuralEvaluator.ImmediateParent(inner);
+            else if (eval instanceof StructuralEvaluator.PreviousSibling)
+                rebuilt = new StructuralEvaluator.PreviousSibling(inner);
+            else if (eval instanceof StructuralEvaluator.ImmediatePreviousSibling)
+                rebuilt = new StructuralEvaluator.ImmediatePreviousSibling(inner);
+            else
+                rebuilt = eval; // an unknown combinator; profiled as a whole
+        } else {
+            rebuilt = eval;
+        }
+        return new Profiled(eval, rebuilt, entry);
+    }
+
+    /** Counts and times the tests of an evaluator. Not thread safe; profiles are collected on one thread. */
+    private static final class Profiled extends Evaluator {
+        private final Evaluator source;
+        private final Evaluator eval;
+        private final Entry entry;
+
+        Profiled(Evaluator source, Evaluator eval, Entry entry) {
+            this.source = source;
+            this.eval = eval;
+            this.entry = entry;
+        }
+
+        @Override
+        public boolean matches(Element root, Element element) {
+            long start = System.nanoTime();
+            boolean matches = eval.matches(root, element);
+            entry.nanos += System.nanoTime() - start;
+            entry.invocations++;
+            if (matches)
+                entry.matched++;
+            return matches;
+        }
+
+        @Override
+        Evaluator unwrap() {
+            return eval; // the rebuilt evaluator, which holds the profiled parts
+        }
+
+        @Override
+        protected int cost() {
+            return source.cost();
+        }
+
+        @Override
+        boolean isRootIndependent() {
+            return eval.isRootIndependent();
+        }
+
+        @Override
+        void beginPass() {
+            eval.beginPass();
+        }
+
+        @Override
+        void endPass() {
+            eval.endPass();
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+}
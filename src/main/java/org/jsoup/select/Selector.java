@@ -2,11 +2,14 @@ package org.jsoup.select;
 
 import org.jsoup.helper.Validate;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.ElementOrder;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.IdentityHashMap;
+import java.util.stream.Stream;
 
 /**
  * CSS-like element selector, that finds elements matching a query.
@@ -95,7 +98,7 @@ public class Selector {
      */
     public static Elements select(String query, Element root) {
         Validate.notEmpty(query);
-        return select(QueryParser.parse(query), root);
+        return select(EvaluatorCache.get(query), root);
     }
 
     /**
@@ -111,6 +114,62 @@ public class Selector {
         return Collector.collect(evaluator, root);
     }
 
+    /**
+     * Find at most {@code limit} elements matching selector, stopping the query once the limit is reached.
+     *
+     * @param query CSS selector
+     * @param root  root element to descend into
+     * @param limit the maximum number of elements to find; must be greater than 0
+     * @return the first matching elements, in document order; empty if none
+     * @throws Selector.SelectorParseException (unchecked) on an invalid CSS query.
+     */
+    public static Elements select(String query, Element root, int limit) {
+        Validate.notEmpty(query);
+        Validate.notNull(root);
+        return Collector.collect(EvaluatorCache.get(query), root, limit);
+    }
+
+    /**
+     * Get a lazy stream of the elements matching selector. The tree is visited as the stream is consumed, so
+     * short-circuiting operations stop the query once satisfied.
+     *
+     * @param query CSS selector
+     * @param root  root element to descend into
+     * @return a stream of the matching elements, in document order
+     * @throws Selector.SelectorParseException (unchecked) on an invalid CSS query.
+     * @see Collector#stream(Evaluator, Element)
+     */
+    public static Stream<Element> selectStream(String query, Element root) {
+        Validate.notEmpty(query);
+        return Collector.stream(EvaluatorCache.get(query), root);
+    }
+
+    /**
+     * Describe how a query will be evaluated: the tree of evaluators it was parsed to, one per line, with the parts of
+     * each combination listed in the order they are tested (cheapest first), and each evaluator's relative cost. For
+     * example, {@code div.a > p} is evaluated by testing the tag {@code p} first, and only then its parent.
+     * <p>To see where the time goes when running a query, use {@link Collector#profile(Evaluator, Element)}.</p>
+     *
+     * @param query CSS selector
+     * @return a description of the parsed query
+     * @throws Selector.SelectorParseException (unchecked) on an invalid CSS query.
+     */
+    public static String explain(String query) {
+        Validate.notEmpty(query);
+        return explain(EvaluatorCache.get(query));
+    }
+
+    /**
+     * Describe how an evaluator will be evaluated, as {@link #explain(String)}.
+     *
+     * @param evaluator the evaluator
+     * @return a description of the evaluator tree
+     */
+    public static String explain(Evaluator evaluator) {
+        Validate.notNull(evaluator);
+        return QueryProfile.explain(evaluator);
+    }
+
     /**
      * Find elements matching selector.
      *
@@ -121,22 +180,65 @@ public class Selector {
     public static Elements select(String query, Iterable<Element> roots) {
         Validate.notEmpty(query);
         Validate.notNull(roots);
-        Evaluator evaluator = QueryParser.parse(query);
+        Evaluator evaluator = EvaluatorCache.get(query);
         Elements elements = new Elements();
-        IdentityHashMap<Element, Boolean> seenElements = new IdentityHashMap<>();
-        // dedupe elements by identity, not equality
+        @Nullable DistinctElements distinct = null; // dedupe elements by identity, not equality
 
+        boolean first = true;
         for (Element root : roots) {
             final Elements found = select(evaluator, root);
+            if (first) { // a single root's matches are already distinct
+                elements.addAll(found);
+                first = false;
+                continue;
+            }
+            if (distinct == null) {
+                distinct = new DistinctElements();
+                for (Element el : elements)
+                    distinct.add(el);
+            }
             for (Element el : found) {
-                if (seenElements.put(el, Boolean.TRUE) == null) {
+                if (distinct.add(el))
                     elements.add(el);
-                }
             }
         }
         return elements;
     }
 
+    /**
+     Tracks which elements have been seen. If the tree of the first element is already numbered (by an earlier
+     {@link ElementOrder} use), its elements are tracked in a bitset by their preorder number; otherwise, and for any
+     others (from other trees, or created during the selection), in an identity map. The tree is not numbered just for
+     this, as that would cost a walk of the whole document.
+     */
+    private static final class DistinctElements {
+        private boolean started = false;
+        @Nullable private ElementOrder order;
+        @Nullable private BitSet seenInOrder;
+        @Nullable private IdentityHashMap<Element, Boolean> seenOthers;
+
+        /** Adds the element, and returns true if it had not already been seen. */
+        boolean add(Element el) {
+            if (!started) {
+                started = true;
+                order = ElementOrder.current(el);
+                if (order != null)
+                    seenInOrder = new BitSet(order.size());
+            }
+            int i = order != null ? order.indexOf(el) : -1;
+            if (i != -1) {
+                assert seenInOrder != null;
+                if (seenInOrder.get(i))
+                    return false;
+                seenInOrder.set(i);
+                return true;
+            }
+            if (seenOthers == null)
+                seenOthers = new IdentityHashMap<>();
+            return seenOthers.put(el, Boolean.TRUE) == null;
+        }
+    }
+
     // exclude set. package open so that Elements can implement .not() selector.
     static Elements filterOut(Collection<Element> elements, Collection<Element> outs) {
         Elements output = new Elements();
@@ -162,7 +264,7 @@ public class Selector {
      */
     public static @Nullable Element selectFirst(String cssQuery, Element root) {
         Validate.notEmpty(cssQuery);
-        return Collector.findFirst(QueryParser.parse(cssQuery), root);
+        return Collector.findFirst(EvaluatorCache.get(cssQuery), root);
     }
 
     public static class SelectorParseException extends IllegalStateException {
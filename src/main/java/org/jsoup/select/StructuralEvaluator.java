@@ -3,39 +3,182 @@ package org.jsoup.select;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 
+import javax.annotation.Nullable;
+
+import java.util.IdentityHashMap;
+
 /**
  * Base structural evaluator.
  */
 abstract class StructuralEvaluator extends Evaluator {
     Evaluator evaluator;
 
+    /* Results of the inner evaluator, by root and then by element, held only for the duration of a selection pass.
+    Ancestor and sibling combinators test the same elements repeatedly (e.g. every p in "div div p" walks up through
+    the same divs), so memoizing makes those queries linear in the size of the tree. One memo per thread, as evaluators
+    may be shared. */
+    final ThreadLocal<Memo> threadMemo = new ThreadLocal<>();
+
+    static final class Memo {
+        int passes = 0; // nested passes of this evaluator on the same thread
+        final IdentityHashMap<Element, IdentityHashMap<Element, Boolean>> results = new IdentityHashMap<>();
+        @Nullable IdentityHashMap<Element, Boolean> hasResults; // used by :has, which does not vary by root
+        @Nullable Collector.FirstFinder hasFinder; // reused by :has through the pass, for queries that vary by root
+    }
+
+    @Override
+    boolean isRootIndependent() {
+        // the sibling combinators only look at an element's siblings, which are below the root when the element is. The
+        // parent combinators override, as they may reach the root itself
+        return evaluator.isRootIndependent();
+    }
+
+    @Override
+    void beginPass() {
+        Memo memo = threadMemo.get();
+        if (memo == null) {
+            memo = new Memo();
+            threadMemo.set(memo);
+        }
+        memo.passes++;
+        evaluator.beginPass();
+    }
+
+    @Override
+    void endPass() {
+        evaluator.endPass();
+        Memo memo = threadMemo.get();
+        if (memo != null && --memo.passes <= 0)
+            threadMemo.remove(); // drop the results (and the elements they reference)
+    }
+
+    /**
+     Test the inner evaluator, reusing an earlier result for this root and element if in a selection pass. Outside of a
+     pass, the tree may have changed since any earlier test, so the evaluator is always run.
+     */
+    boolean memoMatches(Element root, Element element) {
+        return memoMatches(root, element, evaluator);
+    }
+
+    /** As {@link #memoMatches(Element, Element)}, running an equivalent of the inner evaluator (such as its compiled form). */
+    boolean memoMatches(Element root, Element element, Evaluator evaluator) {
+        Memo memo = threadMemo.get();
+        if (memo == null)
+            return evaluator.matches(root, element);
+
+        IdentityHashMap<Element, Boolean> rootResults = memo.results.get(root);
+        if (rootResults == null) {
+            rootResults = new IdentityHashMap<>();
+            memo.results.put(root, rootResults);
+        }
+        Boolean matches = rootResults.get(element);
+        if (matches == null) {
+            matches = evaluator.matches(root, element);
+            rootResults.put(element, matches);
+        }
+        return matches;
+    }
+
     static class Root extends Evaluator {
         @Override
         public boolean matches(Element root, Element element) {
             return root == element;
         }
+
+        @Override
+        protected int cost() {
+            return 1;
+        }
+
+        @Override
+        public String toString() {
+            return ""; // as in a query that starts with a combinator, e.g. "> p"
+        }
     }
 
     static class Has extends StructuralEvaluator {
-        final Collector.FirstFinder finder;
-
         public Has(Evaluator evaluator) {
             this.evaluator = evaluator;
-            finder = new Collector.FirstFinder(evaluator);
         }
 
         @Override
         public boolean matches(Element root, Element element) {
-            // for :has, we only want to match children (or below), not the input element. And we want to minimize GCs
-            for (int i = 0; i < element.childNodeSize(); i++) {
-                Node node = element.childNode(i);
-                if (node instanceof Element) {
-                    Element match = finder.find(element, (Element) node);
-                    if (match != null)
-                        return true;
+            Memo memo = threadMemo.get();
+            if (memo != null && evaluator.isRootIndependent())
+                return hasMatch(memo, root, element);
+
+            // finders hold state: borrow the pass's finder (dropped with the memo at the end of the pass), or make one
+            // outside a pass. It's taken from the memo while in use, in case the evaluator runs a nested pass
+            Collector.FirstFinder finder = memo != null ? memo.hasFinder : null;
+            if (finder == null)
+                finder = new Collector.FirstFinder(evaluator);
+            else
+                memo.hasFinder = null;
+            try {
+                // for :has, we only want to match children (or below), not the input element. And we want to minimize GCs
+                for (int i = 0; i < element.childNodeSize(); i++) {
+                    Node node = element.childNode(i);
+                    if (node instanceof Element) {
+                        Element match = finder.find(element, (Element) node);
+                        if (match != null)
+                            return true;
+                    }
                 }
+                return false;
+            } finally {
+                if (memo != null)
+                    memo.hasFinder = finder;
             }
-            return false;
+        }
+
+        /**
+         Tests if any descendant of the element matches, using results computed bottom-up in one pass over the element's
+         subtree (reusing any subtrees already computed in this selection pass). As the query is root independent, a
+         descendant's result holds for each of its ancestors, so each element is only tested once.
+         */
+        private boolean hasMatch(Memo memo, Element root, Element element) {
+            IdentityHashMap<Element, Boolean> results = memo.hasResults;
+            if (results == null) {
+                results = new IdentityHashMap<>();
+                memo.hasResults = results;
+            }
+            Boolean has = results.get(element);
+            if (has != null)
+                return has;
+
+            final IdentityHashMap<Element, Boolean> found = results;
+            NodeTraversor.filter(new NodeFilter() {
+                @Override public FilterResult head(Node node, int depth) {
+                    if (!(node instanceof Element))
+                        return FilterResult.SKIP_ENTIRELY;
+                    return found.containsKey(node) ? FilterResult.SKIP_ENTIRELY : FilterResult.CONTINUE;
+                }
+
+                @Override public FilterResult tail(Node node, int depth) {
+                    Element el = (Element) node; // non-elements were skipped entirely, so don't get a tail
+                    boolean matched = false;
+                    for (int i = 0; i < el.childNodeSize(); i++) {
+                        Node child = el.childNode(i);
+                        if (child instanceof Element && (found.get(child) || evaluator.matches(root, (Element) child))) {
+                            matched = true;
+                            break;
+                        }
+                    }
+                    found.put(el, matched);
+                    return FilterResult.CONTINUE;
+                }
+            }, element);
+            return found.get(element);
+        }
+
+        @Override
+        boolean isRootIndependent() {
+            return true; // only considers the element's descendants
+        }
+
+        @Override
+        protected int cost() {
+            return saturatedCost(10L * evaluator.cost());
         }
 
         @Override
@@ -54,6 +197,11 @@ abstract class StructuralEvaluator extends Evaluator {
             return !evaluator.matches(root, node);
         }
 
+        @Override
+        protected int cost() {
+            return saturatedCost(2L + evaluator.cost());
+        }
+
         @Override
         public String toString() {
             return String.format(":not(%s)", evaluator);
@@ -61,18 +209,23 @@ abstract class StructuralEvaluator extends Evaluator {
     }
 
     static class Parent extends StructuralEvaluator {
+        final int[] ancestorKeys; // the features an ancestor must have, to test against the AncestorFilter
+
         public Parent(Evaluator evaluator) {
             this.evaluator = evaluator;
+            ancestorKeys = AncestorFilter.requiredKeys(evaluator);
         }
 
         @Override
         public boolean matches(Element root, Element element) {
             if (root == element)
                 return false;
+            if (ancestorKeys.length > 0 && !AncestorFilter.mayHaveAncestorsWith(element, ancestorKeys))
+                return false; // a required ancestor is definitely absent, so no need to walk up
 
             Element parent = element.parent();
             while (parent != null) {
-                if (evaluator.matches(root, parent))
+                if (memoMatches(root, parent))
                     return true;
                 if (parent == root)
                     break;
@@ -81,6 +234,16 @@ abstract class StructuralEvaluator extends Evaluator {
             return false;
         }
 
+        @Override
+        protected int cost() {
+            return saturatedCost(2L * evaluator.cost());
+        }
+
+        @Override
+        boolean isRootIndependent() {
+            return false; // the walk up stops at the root
+        }
+
         @Override
         public String toString() {
             return String.format("%s ", evaluator);
@@ -98,7 +261,17 @@ abstract class StructuralEvaluator extends Evaluator {
                 return false;
 
             Element parent = element.parent();
-            return parent != null && evaluator.matches(root, parent);
+            return parent != null && memoMatches(root, parent);
+        }
+
+        @Override
+        protected int cost() {
+            return saturatedCost(1L + evaluator.cost());
+        }
+
+        @Override
+        boolean isRootIndependent() {
+            return false; // the parent may be the root, where the inner evaluator's own combinators stop
         }
 
         @Override
@@ -120,7 +293,7 @@ abstract class StructuralEvaluator extends Evaluator {
             Element prev = element.previousElementSibling();
 
             while (prev != null) {
-                if (evaluator.matches(root, prev))
+                if (memoMatches(root, prev))
                     return true;
 
                 prev = prev.previousElementSibling();
@@ -128,6 +301,11 @@ abstract class StructuralEvaluator extends Evaluator {
             return false;
         }
 
+        @Override
+        protected int cost() {
+            return saturatedCost(3L * evaluator.cost());
+        }
+
         @Override
         public String toString() {
             return String.format("%s ~ ", evaluator);
@@ -145,7 +323,12 @@ abstract class StructuralEvaluator extends Evaluator {
                 return false;
 
             Element prev = element.previousElementSibling();
-            return prev != null && evaluator.matches(root, prev);
+            return prev != null && memoMatches(root, prev);
+        }
+
+        @Override
+        protected int cost() {
+            return saturatedCost(2L + evaluator.cost());
         }
 
         @Override
@@ -0,0 +1,68 @@
+package org.jsoup.select;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.ElementText;
+
+import javax.annotation.Nullable;
+import java.util.IdentityHashMap;
+
+/**
+ The text of elements, shared by the text matching evaluators (e.g. {@code :contains}, {@code :matches}) for the
+ duration of a selection pass. Each candidate's {@link Element#text()} would walk its subtree, so nested candidates (e.g.
+ {@code div:contains(foo)}) would walk the same text repeatedly; instead, the text of a candidate's whole subtree is
+ computed when first needed, and the text of any later candidate within that subtree is taken from it. As candidates are
+ visited in document order, each element is usually only walked once. Outside of a pass, the tree may have changed, so
+ the element's text is computed directly.
+ */
+final class TextMemo {
+    private static final ThreadLocal<TextMemo> threadMemo = new ThreadLocal<>();
+
+    private int passes = 0; // nested passes on this thread, by any text evaluator
+    private final IdentityHashMap<Element, ElementText> texts = new IdentityHashMap<>(); // by each element in the text
+
+    private TextMemo() {}
+
+    static void beginPass() {
+        TextMemo memo = threadMemo.get();
+        if (memo == null) {
+            memo = new TextMemo();
+            threadMemo.set(memo);
+        }
+        memo.passes++;
+    }
+
+    static void endPass() {
+        TextMemo memo = threadMemo.get();
+        if (memo != null && --memo.passes <= 0)
+            threadMemo.remove(); // drop the text
+    }
+
+    /** Get the element's text, as {@link Element#text()}. */
+    static String text(Element element) {
+        ElementText text = textOf(element);
+        return text != null ? text.text(element) : element.text();
+    }
+
+    /** Get the element's whole text, as {@link Element#wholeText()}. */
+    static String wholeText(Element element) {
+        ElementText text = textOf(element);
+        return text != null ? text.wholeText(element) : element.wholeText();
+    }
+
+    private static @Nullable ElementText textOf(Element element) {
+        TextMemo memo = threadMemo.get();
+        if (memo == null)
+            return null;
+        ElementText text = memo.texts.get(element);
+        if (text == null) {
+            final ElementText subtree = ElementText.of(element);
+            final IdentityHashMap<Element, ElementText> texts = memo.texts;
+            NodeTraversor.traverse((node, depth) -> {
+                if (node instanceof Element)
+                    texts.put((Element) node, subtree);
+            }, element);
+            text = subtree;
+        }
+        return text;
+    }
+}
@@ -346,4 +346,83 @@ public class W3CDomTest {
         assertEquals(jText, textNode.getUserData(W3CDom.SourceProperty));
     }
 
+    @Test public void viewSerializesAsConversion() {
+        String html = "<!doctype html><html><head><title>W3c</title></head><body><p class='one' id=12>Text</p>" +
+            "<!-- comment --><svg xmlns='http://www.w3.org/2000/svg'><circle r=1 /></svg><script>alert('!')</script>";
+        org.jsoup.nodes.Document jdoc = Jsoup.parse(html);
+        for (boolean namespaceAware : new boolean[]{true, false}) {
+            W3CDom w3c = new W3CDom().namespaceAware(namespaceAware);
+            for (Map<String, String> properties : new Map[]{W3CDom.OutputHtml(), W3CDom.OutputXml()}) {
+                assertEquals(W3CDom.asString(w3c.fromJsoup(jdoc), properties),
+                    W3CDom.asString(w3c.view(jdoc), properties));
+            }
+        }
+    }
+
+    @Test public void viewSupportsXpathAndSourceNodes() throws XPathExpressionException {
+        org.jsoup.nodes.Document jdoc = Jsoup.parse("<body><div id=1><p>One</div><div id=2><p>Two <b>Three</b></div>");
+        W3CDom w3c = new W3CDom().namespaceAware(false);
+        Element jDiv = jdoc.expectFirst("div#2");
+        Document view = w3c.view(jDiv);
+        Node div = w3c.contextNode(view);
+        assertEquals(jDiv, div.getUserData(W3CDom.SourceProperty));
+
+        String[] queries = {"//p", "p/b", "//div[@id='1']/following-sibling::*", "ancestor::*", "//text()", "..//p[b]"};
+        Document copy = w3c.fromJsoup(jDiv);
+        for (String query : queries) {
+            assertEquals(w3c.sourceNodes(w3c.selectXpath(query, w3c.contextNode(copy)), org.jsoup.nodes.Node.class),
+                w3c.sourceNodes(w3c.selectXpath(query, div), org.jsoup.nodes.Node.class), query);
+        }
+
+        XPathExpression expr = XPathFactory.newInstance().newXPath().compile("count(//p)");
+        assertEquals("2", expr.evaluate(view));
+    }
+
+    @Test public void viewResolvesNamespacesOnDemand() {
+        String xml = "<bk:book xmlns:bk='urn:books' xmlns='urn:default'><bk:title xml:lang='en'>Cheaper</bk:title>" +
+            "<number xmlns=''>1</number></bk:book>";
+        org.jsoup.nodes.Document jdoc = Jsoup.parse(xml, org.jsoup.parser.Parser.xmlParser());
+        Document view = new W3CDom().view(jdoc);
+
+        org.w3c.dom.Element book = view.getDocumentElement();
+        assertEquals("urn:books", book.getNamespaceURI());
+        assertEquals("bk", book.getPrefix());
+        assertEquals("book", book.getLocalName());
+
+        Node title = book.getFirstChild();
+        assertEquals("urn:books", title.getNamespaceURI());
+        assertEquals("en", ((org.w3c.dom.Element) title).getAttributeNS("http://www.w3.org/XML/1998/namespace", "lang"));
+        assertEquals("bk", title.lookupPrefix("urn:books"));
+        assertTrue(title.isDefaultNamespace("urn:default"));
+
+        Node number = title.getNextSibling();
+        assertNull(number.getNamespaceURI());
+        assertEquals(1, view.getElementsByTagNameNS("urn:books", "*").getLength() - 1);
+        assertEquals(Node.DOCUMENT_POSITION_FOLLOWING, title.compareDocumentPosition(number));
+        assertEquals(Node.DOCUMENT_POSITION_CONTAINS | Node.DOCUMENT_POSITION_PRECEDING,
+            title.compareDocumentPosition(book));
+
+        Document namespaceUnaware = new W3CDom().namespaceAware(false).view(jdoc);
+        assertNull(namespaceUnaware.getDocumentElement().getNamespaceURI());
+        assertEquals("book", namespaceUnaware.getDocumentElement().getLocalName());
+    }
+
+    @Test public void viewIsLiveAndReadOnly() {
+        org.jsoup.nodes.Document jdoc = Jsoup.parse("<p>One</p>");
+        Document view = new W3CDom().view(jdoc);
+        NodeList ps = view.getElementsByTagName("p");
+        assertEquals(1, ps.getLength());
+        Node p = ps.item(0);
+        assertSame(p, view.getElementsByTagName("p").item(0)); // nodes keep their identity
+
+        jdoc.body().appendElement("p").text("Two");
+        assertEquals(2, view.getElementsByTagName("p").getLength());
+        assertEquals("Two", p.getNextSibling().getTextContent());
+
+        org.w3c.dom.DOMException e = assertThrows(org.w3c.dom.DOMException.class, () -> p.appendChild(p.getFirstChild()));
+        assertEquals(org.w3c.dom.DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+        assertThrows(org.w3c.dom.DOMException.class, () -> ((org.w3c.dom.Element) p).setAttribute("id", "1"));
+        assertThrows(org.w3c.dom.DOMException.class, () -> view.createElement("div"));
+    }
+
 }
@@ -0,0 +1,155 @@
+package org.jsoup.nodes;
+
+import org.jsoup.Jsoup;
+import org.jsoup.select.Elements;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElementIndexTest {
+    private static final String html = "<div id=main class='One two'><p id=p1 class=intro>One</p><p class='TWO intro'>Two</p>" +
+        "<section><p id=p3>Three <span class=two>Four</span></p></section></div><div class=foot><p id=p1>Five</p></div>";
+
+    private static Document indexed() {
+        return Jsoup.parse(html).indexElements(true);
+    }
+
+    @Test void disabledByDefault() {
+        Document doc = Jsoup.parse(html);
+        assertFalse(doc.indexElements());
+        assertNull(doc.elementIndex());
+    }
+
+    @Test void indexesByIdTagAndClass() {
+        Document doc = indexed();
+        ElementIndex index = doc.elementIndex();
+        assertNotNull(index);
+        assertSame(index, doc.elementIndex());
+
+        assertEquals(2, index.byId("p1").size());
+        assertEquals("One", index.byId("p1").get(0).text());
+        assertEquals(0, index.byId("P1").size());
+        assertEquals(4, index.byTag("p").size());
+        assertEquals(3, index.byClass("two").size());
+        assertEquals(3, index.byClass("TWO").size());
+        assertEquals(0, index.byClass("three").size());
+        assertThrows(UnsupportedOperationException.class, () -> index.byTag("p").clear());
+    }
+
+    @Test void selectsSameAsUnindexed() {
+        Document plain = Jsoup.parse(html);
+        Document doc = indexed();
+        String[] queries = {"#p1", "p", ".two", ".TWO", "p.intro", "#main p", ".two p", "div > p#p1", "p, span",
+            "section .two", "#p3 span", "#none", "p:has(span)", "div.foot p", "*", "p:containsOwn(Five)", "p:matchText"};
+        assertEquals("Five", doc.expectFirst("div.foot").expectFirst("#p1").text()); // within an element
+        assertEquals(1, doc.expectFirst("section").getElementsByClass("two").size());
+        assertEquals("One", doc.getElementById("p1").text());
+
+        for (String query : queries) { // :matchText is last, as it modifies the docs
+            assertEquals(plain.select(query).outerHtml(), doc.select(query).outerHtml(), query);
+            assertEquals(plain.selectFirst(query) == null, doc.selectFirst(query) == null, query);
+        }
+    }
+
+    @Test void discardedOnChanges() {
+        Document doc = indexed();
+        ElementIndex index = doc.elementIndex();
+        assertEquals(2, doc.select("#p1").size());
+        assertSame(index, doc.elementIndex()); // selection doesn't change
+
+        doc.expectFirst("#p3").id("p1");
+        assertEquals(3, doc.select("#p1").size());
+        assertNotSame(index, doc.elementIndex());
+
+        doc.expectFirst("section").appendElement("p").addClass("two");
+        assertEquals(4, doc.select(".two").size());
+
+        doc.expectFirst("p.intro").attributes().put("class", "three");
+        assertEquals(1, doc.select(".intro").size());
+        assertEquals(1, doc.select(".three").size());
+
+        for (Attribute attr : doc.expectFirst(".three").attributes()) {
+            if (attr.getKey().equals("class"))
+                attr.setValue("four");
+        }
+        assertEquals(1, doc.select(".four").size());
+        assertEquals(0, doc.select(".three").size());
+
+        doc.expectFirst(".four").removeAttr("class");
+        assertEquals(0, doc.select(".four").size());
+
+        doc.select("div.foot").remove();
+        assertEquals(2, doc.select("#p1").size());
+
+        doc.expectFirst("section").tagName("article");
+        assertEquals(0, doc.select("section").size());
+        assertEquals(1, doc.select("article").size());
+
+        doc.body().append("<p id=new>New</p>");
+        assertEquals("New", doc.expectFirst("#new").text());
+    }
+
+    @Test void discardedOnNormalizedAttributes() {
+        Document doc = indexed();
+        Element section = doc.expectFirst("section");
+        section.attributes().put("ID", "x");
+        assertEquals(1, doc.select("#x").size());
+
+        ElementIndex index = doc.elementIndex();
+        section.attributes().normalize(); // renames the key to id
+        assertNotSame(index, doc.elementIndex());
+        assertEquals(1, doc.select("#x").size());
+    }
+
+    @Test void changesToDetachedElementsDoNotAffectIndex() {
+        Document doc = indexed();
+        Element detached = doc.expectFirst("section").clone();
+        ElementIndex index = doc.elementIndex();
+        detached.appendElement("p").id("x");
+        detached.attr("class", "y");
+        assertSame(index, doc.elementIndex());
+        assertEquals(0, doc.select("#x").size());
+
+        doc.body().appendChild(detached);
+        assertEquals(1, doc.select("#x").size());
+        assertEquals(1, doc.select("section.y").size());
+    }
+
+    @Test void discardedOnChangesToNumberedTree() {
+        Document doc = indexed();
+        Element section = doc.expectFirst("section");
+        assertEquals(0, doc.select("#s").size());
+        ElementOrder order = ElementOrder.of(doc); // counts changes with the index
+        assertTrue(section.isAncestorOf(doc.expectFirst("span")));
+
+        section.id("s"); // first attribute of the element
+        assertEquals(1, doc.select("#s").size());
+        assertSame(order, ElementOrder.of(doc)); // names don't change the order
+
+        section.appendElement("p").id("p4");
+        assertEquals(1, doc.select("#p4").size());
+        assertNotSame(order, ElementOrder.of(doc));
+    }
+
+    @Test void cloneHasOwnIndex() {
+        Document doc = indexed();
+        assertEquals(2, doc.select("#p1").size());
+        Document clone = doc.clone();
+        assertTrue(clone.indexElements());
+        clone.expectFirst("#p3").id("p1");
+        assertEquals(3, clone.select("#p1").size());
+        assertEquals(2, doc.select("#p1").size());
+
+        Elements cloneSpans = clone.select("span.two");
+        assertEquals(1, cloneSpans.size());
+        assertNotSame(doc.expectFirst("span.two"), cloneSpans.first());
+    }
+
+    @Test void canDisable() {
+        Document doc = indexed();
+        assertNotNull(doc.elementIndex());
+        doc.indexElements(false);
+        assertNull(doc.elementIndex());
+        assertEquals(2, doc.select("#p1").size());
+    }
+}
@@ -0,0 +1,112 @@
+package org.jsoup.nodes;
+
+import org.jsoup.Jsoup;
+import org.jsoup.select.Elements;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElementOrderTest {
+    private static final String html = "<div id=1><p id=2>One <b id=3>Two</b></p><p id=4>Three</p></div><div id=5><i id=6></i></div>";
+
+    @Test void numbersInPreAndPostOrder() {
+        Document doc = Jsoup.parse(html);
+        Element div = doc.expectFirst("div");
+        ElementOrder order = ElementOrder.of(div);
+        assertSame(order, ElementOrder.of(doc));
+        assertEquals(doc.getAllElements().size(), order.size());
+
+        Elements all = doc.getAllElements();
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i, order.preorder(all.get(i)));
+        }
+        assertEquals(0, order.preorder(doc));
+        assertEquals(order.size() - 1, order.postorder(doc));
+        assertTrue(order.postorder(doc.expectFirst("#3")) < order.postorder(doc.expectFirst("#2")));
+        assertTrue(order.postorder(doc.expectFirst("#2")) < order.postorder(doc.expectFirst("#4")));
+
+        Element detached = new Element("p");
+        assertFalse(order.contains(detached));
+        assertThrows(IllegalArgumentException.class, () -> order.preorder(detached));
+    }
+
+    @Test void isAncestorOf() {
+        Document doc = Jsoup.parse(html);
+        Elements all = doc.getAllElements();
+        for (Element a : all) {
+            for (Element b : all) {
+                assertEquals(b.parents().contains(a) || (b != doc && a == doc), a.isAncestorOf(b), a.tagName() + a.id() + " " + b.tagName() + b.id());
+            }
+        }
+        assertFalse(doc.isAncestorOf(new Element("p")));
+        assertFalse(new Element("p").isAncestorOf(doc.body()));
+    }
+
+    @Test void renumbersAfterChanges() {
+        Document doc = Jsoup.parse(html);
+        Element one = doc.expectFirst("#1");
+        Element six = doc.expectFirst("#6");
+        ElementOrder order = ElementOrder.of(doc);
+        assertFalse(one.isAncestorOf(six));
+        assertSame(order, ElementOrder.of(six)); // unchanged
+
+        one.appendChild(six);
+        assertTrue(one.isAncestorOf(six));
+        assertNotSame(order, ElementOrder.of(six));
+
+        Element five = doc.expectFirst("#5");
+        five.remove();
+        assertFalse(doc.isAncestorOf(five));
+        assertTrue(doc.isAncestorOf(six));
+
+        // a separately numbered tree, then added to the document
+        Element p = new Element("p");
+        Element span = p.appendElement("span");
+        assertTrue(p.isAncestorOf(span));
+        assertFalse(doc.isAncestorOf(span));
+        doc.body().appendChild(p);
+        assertTrue(doc.isAncestorOf(span));
+        assertTrue(doc.body().isAncestorOf(p));
+        assertTrue(p.isAncestorOf(span));
+    }
+
+    @Test void numbersRemovedSubtreeSeparately() {
+        Document doc = Jsoup.parse(html);
+        ElementOrder order = ElementOrder.of(doc);
+        Element one = doc.expectFirst("#1");
+        Element three = doc.expectFirst("#3");
+        one.remove();
+        assertNull(ElementOrder.current(three));
+
+        ElementOrder subtree = ElementOrder.of(three);
+        assertEquals(4, subtree.size());
+        assertEquals(0, subtree.preorder(one));
+        assertEquals(2, subtree.preorder(three));
+        assertNotSame(order, ElementOrder.of(doc));
+        assertFalse(ElementOrder.of(doc).contains(three));
+
+        doc.expectFirst("#5").appendChild(one);
+        assertTrue(doc.isAncestorOf(three));
+        assertTrue(one.isAncestorOf(three));
+        assertNotSame(subtree, ElementOrder.current(one)); // the subtree's numbering was for its former root
+    }
+
+    @Test void cloneIsNumberedSeparately() {
+        Document doc = Jsoup.parse(html);
+        ElementOrder order = ElementOrder.of(doc);
+        Document clone = doc.clone();
+        assertNotSame(order, ElementOrder.of(clone));
+        assertTrue(clone.expectFirst("#1").isAncestorOf(clone.expectFirst("#3")));
+        assertFalse(doc.expectFirst("#1").isAncestorOf(clone.expectFirst("#3")));
+        assertSame(order, ElementOrder.of(doc));
+    }
+
+    @Test void currentDoesNotNumber() {
+        Document doc = Jsoup.parse(html);
+        assertNull(ElementOrder.current(doc));
+        ElementOrder order = ElementOrder.of(doc);
+        assertSame(order, ElementOrder.current(doc.expectFirst("#3")));
+        doc.expectFirst("#1").appendElement("p");
+        assertNull(ElementOrder.current(doc)); // stale
+    }
+}
@@ -288,6 +288,54 @@ public class ElementTest {
         assertEquals(2, ps.get(2).elementSiblingIndex());
     }
 
+    @Test
+    public void testElementSiblingTypeIndex() {
+        Document doc = Jsoup.parse("<div><p>One</p><span>A</span>...<p>Two</p><span>B</span><p>Three</p></div>");
+        Elements ps = doc.select("p");
+        Element span = doc.expectFirst("span");
+        assertEquals(0, ps.get(0).elementSiblingTypeIndex());
+        assertEquals(2, ps.get(2).elementSiblingTypeIndex());
+        assertEquals(3, ps.get(2).elementSiblingTypeCount());
+        assertEquals(0, span.elementSiblingTypeIndex());
+        assertEquals(2, span.elementSiblingTypeCount());
+        assertEquals(1, span.elementSiblingIndex());
+
+        Element orphan = new Element("p");
+        assertEquals(0, orphan.elementSiblingTypeIndex());
+        assertEquals(1, orphan.elementSiblingTypeCount());
+    }
+
+    @Test
+    public void siblingPositionsUpdatedOnChanges() {
+        Document doc = Jsoup.parse("<div><p>One</p><span>A</span><p>Two</p><p>Three</p></div>");
+        Element div = doc.expectFirst("div");
+        Element three = doc.expectFirst("p:nth-of-type(3)");
+        assertEquals(3, three.elementSiblingIndex());
+        assertEquals(2, three.elementSiblingTypeIndex());
+
+        div.prependElement("p").text("Zero");
+        assertEquals(4, three.elementSiblingIndex());
+        assertEquals(3, three.elementSiblingTypeIndex());
+        assertEquals(4, three.elementSiblingTypeCount());
+        assertEquals("Two", three.previousElementSibling().text());
+
+        doc.expectFirst("span").remove();
+        assertEquals(3, three.elementSiblingIndex());
+        assertNull(three.nextElementSibling());
+
+        div.child(0).tagName("span"); // changes the of-type positions of its siblings
+        assertEquals(3, three.elementSiblingIndex());
+        assertEquals(2, three.elementSiblingTypeIndex());
+        assertEquals(3, three.elementSiblingTypeCount());
+        assertEquals("Zero", doc.expectFirst("span:only-of-type").text());
+        assertEquals("Three", doc.expectFirst("p:nth-last-of-type(1)").text());
+
+        three.before(new TextNode("text")); // text nodes are not counted
+        assertEquals(3, three.elementSiblingIndex());
+        assertEquals("One", doc.expectFirst("p:nth-child(2)").text());
+        assertEquals("One", doc.expectFirst("p:nth-last-child(3)").text());
+    }
+
     @Test
     public void testGetElementsWithClass() {
         Document doc = Jsoup.parse("<div class='mellow yellow'><span class=mellow>Hello <b class='yellow'>Yellow!</b></span><p>Empty</p></div>");
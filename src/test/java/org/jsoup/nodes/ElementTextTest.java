@@ -0,0 +1,46 @@
+package org.jsoup.nodes;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElementTextTest {
+    private static final String[] htmls = {
+        "<div><p>One <b>Two</b></p>Three<p> Four  <i> Five </i>Six</p><div>Seven<br>Eight</div></div>",
+        "<p>  Leading <span>  spaces </span>and <span> </span> gaps  </p><div> <p> </p> </div>Tail",
+        "<div><pre>  pre\n <b>formatted</b>\n</pre><p>after</p></div><p>a&nbsp;<b>&nbsp;b</b></p>",
+        "<ul><li>One<li>Two<ul><li>Three</ul></ul><table><tr><td>A</td><td>B <br> C</td></tr></table>",
+    };
+
+    @Test void textMatchesElementText() {
+        for (String html : htmls) {
+            Document doc = Jsoup.parse(html);
+            ElementText text = ElementText.of(doc);
+            for (Element el : doc.getAllElements()) {
+                assertTrue(text.contains(el));
+                assertEquals(el.text(), text.text(el), el.cssSelector());
+                assertEquals(el.wholeText(), text.wholeText(el), el.cssSelector());
+            }
+        }
+    }
+
+    @Test void textOfSubtree() {
+        Document doc = Jsoup.parse(htmls[0]);
+        Element p = doc.expectFirst("p:eq(1)");
+        ElementText text = ElementText.of(p);
+        assertEquals("Four Five Six", text.text(p));
+        assertEquals("Five", text.text(p.expectFirst("i")));
+        assertFalse(text.contains(doc.body()));
+        assertThrows(IllegalArgumentException.class, () -> text.text(doc.body()));
+    }
+
+    @Test void isSnapshot() {
+        Document doc = Jsoup.parse(htmls[0]);
+        ElementText text = ElementText.of(doc);
+        Element b = doc.expectFirst("b");
+        b.text("Changed");
+        assertEquals("Two", text.text(b));
+        assertEquals("Changed", b.text());
+    }
+}
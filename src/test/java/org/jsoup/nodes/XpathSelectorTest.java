@@ -0,0 +1,98 @@
+package org.jsoup.nodes;
+
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.jsoup.parser.Parser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class XpathSelectorTest {
+    private static final String Html = "<html><head><title>Test</title><script>var x = 1;</script></head><body>" +
+        "<div id=1 class='a b'><p>One <b>Two</b></p><p title=x>Three</p><!-- note --></div>" +
+        "<div id=2><p>Four</p>Five<p><a href='/foo'>Six</a><a href='/bar' rel=nofollow>Seven</a></p></div>" +
+        "<div id=3><span>8</span><span>10</span><span> nine  spaced </span></div></body></html>";
+
+    private static Stream<String> queries() {
+        return Stream.of(
+            "//p", "//div/p", "/html/body/div", "//div[2]/p", "//p[1]", "//p[last()]", "(//p)", "//div[@id='2']//a",
+            "//a[@href='/bar']", "//a[@rel]", "//a[not(@rel)]", "//div[p]", "//div[count(p) = 2]", "//div[position() > 1]",
+            "//p[contains(., 'Tw')]", "//p[starts-with(text(), 'Th')]", "//p[normalize-space() = 'One Two']",
+            "//*[local-name() = 'b']", "//*[name() = 'span']", "//span[. > 9]", "//span[number(.) + 1 = 9]",
+            "//span[string-length() > 2]", "//span[normalize-space(.) = 'nine spaced']", "//div[@class = 'a b']",
+            "//div[@id = 1 or @id = 3]", "//div[@id >= 2 and @id != 3]", "//p/..", "//b/ancestor::*", "//b/ancestor::div",
+            "//b/ancestor-or-self::*[2]", "//p[1]/following-sibling::*", "//a[2]/preceding-sibling::a",
+            "//div[1]/following::p", "//div[3]/preceding::p", "//div[3]/preceding::p[1]", "//body/*[2]/*",
+            "//div/descendant::*", "//div/descendant-or-self::div", "//body/div[last() - 1]", "//text()", "//p//text()",
+            "//comment()", "//node()", "//script/text()", "//div[1]/node()", "//*[@*]", "//div[@id = 6 div 2]",
+            "//div[@id mod 2 = 0]", "//div[-@id = -1]", "//*[concat(local-name(), @id) = 'div2']",
+            "//p[boolean(@title)]", "//div[.//a]", "//div[p[2]]", "//p[b = 'Two']", "//*[true()]", "//*[false()]",
+            "/*", "/html", "//p[. = //title]", "//span[. = 8.0]", "//div[3]/span[position() mod 2 = 1]"
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("queries")
+    void matchesW3cFromDocument(String xpath) {
+        Document doc = Jsoup.parse(Html);
+        assertNotNull(XpathSelector.compile(xpath), xpath);
+        assertEquals(w3cSelect(xpath, doc), doc.selectXpath(xpath, Node.class), xpath);
+    }
+
+    @ParameterizedTest
+    @MethodSource("queries")
+    void matchesW3cFromElement(String xpath) {
+        Document doc = Jsoup.parse(Html);
+        Element div = doc.expectFirst("div#2");
+        String relative = xpath.startsWith("/") ? "." + xpath : xpath;
+        assertEquals(w3cSelect(relative, div), div.selectXpath(relative, Node.class), relative);
+    }
+
+    @ParameterizedTest
+    @MethodSource("queries")
+    void matchesW3cOnDetachedElement(String xpath) {
+        Element div = Jsoup.parse(Html).expectFirst("div#2");
+        div.remove();
+        assertEquals(w3cSelect(xpath, div), div.selectXpath(xpath, Node.class), xpath);
+    }
+
+    @Test void matchesW3cOnPrefixedXml() {
+        String xml = "<?xml version=\"1.0\"?><bk:book xmlns:bk='urn:loc.gov:books'><bk:title lang='en'>Cheaper</bk:title>" +
+            "<number>1568491379</number></bk:book>";
+        Document doc = Jsoup.parse(xml, Parser.xmlParser());
+        String[] queries = {"//book/title", "//*[name() = 'bk:title']", "//*[local-name() = 'book']/*", "//title/@lang/..",
+            "//@lang/ancestor::*", "//@lang/following::*", "//number/@*/preceding::*",
+            "//*[@xmlns:bk]", "/*/number", "//title[@lang = 'en']"};
+        for (String xpath : queries)
+            assertEquals(w3cSelect(xpath, doc), doc.selectXpath(xpath, Node.class), xpath);
+    }
+
+    @Test void leavesOtherQueriesToW3c() {
+        String[] unsupported = {"//???", "//p | //div", "//bk:book", "//p[$x]", "//p[substring(., 1) = 'a']",
+            "(//p)[1]", "//namespace::*", "id('1')", "count(//p)", "//p[", "//processing-instruction()"};
+        for (String xpath : unsupported)
+            assertNull(XpathSelector.compile(xpath), xpath);
+
+        Document doc = Jsoup.parse(Html);
+        assertEquals(5, doc.selectXpath("//p | //b").size()); // via W3C
+        assertEquals("One Two", doc.selectXpath("(//p)[1]").text());
+    }
+
+    @Test void selectsFromChangedTree() {
+        Document doc = Jsoup.parse("<div><p>One</p></div>");
+        assertEquals(1, doc.selectXpath("//p").size());
+        doc.expectFirst("div").appendElement("p").text("Two");
+        assertEquals("Two", doc.selectXpath("//p[2]").text());
+    }
+
+    private static List<Node> w3cSelect(String xpath, Element el) {
+        W3CDom w3c = new W3CDom().namespaceAware(false);
+        org.w3c.dom.Document wDoc = w3c.fromJsoup(el);
+        return w3c.sourceNodes(w3c.selectXpath(xpath, w3c.contextNode(wDoc)), Node.class);
+    }
+}
@@ -1,12 +1,18 @@
 package org.jsoup.parser;
 
+import org.jsoup.Jsoup;
 import org.jsoup.UncheckedIOException;
 import org.jsoup.integration.ParseTest;
+import org.jsoup.nodes.Document;
 import org.junit.jupiter.api.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -515,4 +521,34 @@ public class CharacterReaderTest {
         assertEquals(14, reader.columnNumber());
     }
 
+    @Test public void growsBufferForLargeTokens() {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < maxBufferLen * 64)
+            builder.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ");
+        String text = builder.toString();
+        CharacterReader reader = new CharacterReader(new BufferedReader(new StringReader(text + "<p>"), maxBufferLen));
+
+        List<String> chunks = new ArrayList<>();
+        while (reader.current() != '<') // current() buffers up
+            chunks.add(reader.consumeData());
+
+        assertEquals(text, String.join("", chunks));
+        assertEquals('<', reader.current());
+        assertTrue(chunks.size() < 10, "Read in " + chunks.size() + " chunks"); // vs ~86 at a fixed buffer size
+    }
+
+    @Test public void parsesLargeScriptsAndAttributes() throws IOException {
+        StringBuilder script = new StringBuilder();
+        while (script.length() < maxBufferLen * 100)
+            script.append("var x = \"Lorem ipsum\";\n");
+        StringBuilder uri = new StringBuilder("data:image/png;base64,");
+        while (uri.length() < maxBufferLen * 50)
+            uri.append("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg");
+
+        String html = "<script>" + script + "</script><img src=\"" + uri + "\"><p>After</p>";
+        Document doc = Jsoup.parse(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), null, "");
+        assertEquals(script.toString(), doc.expectFirst("script").data());
+        assertEquals(uri.toString(), doc.expectFirst("img").attr("src"));
+        assertEquals("After", doc.expectFirst("p").text());
+    }
 }
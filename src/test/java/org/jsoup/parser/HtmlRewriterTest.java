@@ -0,0 +1,201 @@
+package org.jsoup.parser;
+
+import org.jsoup.Jsoup;
+import org.jsoup.integration.ParseTest;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HtmlRewriterTest {
+    private static String parsed(String html) {
+        Document doc = Jsoup.parse(html);
+        doc.outputSettings().prettyPrint(false);
+        return doc.outerHtml();
+    }
+
+    @Test void outputMatchesParseWithNoRules() {
+        String[] inputs = {
+            "",
+            "Hello",
+            "<!doctype html><html><head><title>One</title></head><body><p>Two</p></body></html>",
+            "<p>One<p>Two<div>Three <span>Four</span></div>",
+            "<b>One<p>Two</b>Three</p>Four", // adoption agency
+            "<p><b>One</p><p>Two", // reconstructed formatting elements
+            "<table><tr><td>One</td></tr>Foster<div>Parented</div></table>After",
+            "<div><table><tr><td>One<table><tr><td>Two</table></table>Three</div>",
+            "<head><title>One</title></head> <!-- Comment --> <script>Two</script><body>Three",
+            "<html><head></head><frameset><frame src=foo></frameset></html>",
+            "<p>One</p></body></html> <!-- After --> Two",
+            "<script>if (a < b) { c(); }</script><style>p { x: y }</style><textarea><p>One</textarea>",
+            "<ul><li>One<li>Two<ul><li>Three</ul></ul><select><option>Four<option>Five</select>",
+            "<a href=one>One<a href=two>Two</a> <template><p>Three</template>",
+            "<div>&lt;One&gt; &amp; <br>Two&nbsp;</div><p id=x class='y z'>Three</p><!-- Four -->",
+            "<form><b>x</form>lost", // the form leaves the stack while the b within it stays open
+            "<p><b>a<form><input></form>lost text here",
+            "<div><form><i><b>One</div>Two</form>Three",
+            "<form><table><tr><td><b>One</form>Two</table>Three",
+            "<b><form><p>One</b>Two</form>Three",
+            "<a><form><div>One</a>Two</form><p>Three",
+            "<nobr><form>One<nobr>Two</form>Three",
+        };
+        HtmlRewriter rewriter = new HtmlRewriter();
+        for (String input : inputs) {
+            assertEquals(parsed(input), rewriter.rewrite(input, ""), input);
+        }
+    }
+
+    @Test void rewritesDeeplyNestedInput() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 10_000; i++)
+            html.append("<div><span>x</span>"); // each div stays open, so the stack is 10,000 deep
+        html.append("<form><b>Deep</form>lost");
+
+        long start = System.currentTimeMillis();
+        String rewritten = new HtmlRewriter().rewrite(html.toString(), "");
+        long time = System.currentTimeMillis() - start;
+        assertEquals(parsed(html.toString()), rewritten);
+        assertTrue(time < 5000, "Took " + time + "ms"); // ~100ms; was minutes when each test for open content walked the stack
+    }
+
+    /** Random tag soup, heavy in forms and formatting elements, which the tree builder restructures. */
+    static String[] randomInputs(long seed, int count) {
+        String[] parts = {"<form>", "</form>", "<b>", "</b>", "<i>", "</i>", "<a href=x>", "</a>", "<p>", "</p>",
+            "<div>", "</div>", "<table>", "</table>", "<tr>", "<td>", "</td>", "<input>", "<li>", "<ul>", "</ul>",
+            "<nobr>", "<button>", "</button>", "<select>", "<option>", "<span class=c>", "</span>", "<br>",
+            "<script>s()</script>", "<!-- c -->", "<h1>", "</h1>", "<img src=i>", "text ", "more ", "&amp; "};
+        java.util.Random random = new java.util.Random(seed);
+        String[] inputs = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++)
+                sb.append(parts[random.nextInt(parts.length)]);
+            inputs[i] = sb.toString();
+        }
+        return inputs;
+    }
+
+    @Test void outputMatchesParseOnRandomInputs() {
+        HtmlRewriter rewriter = new HtmlRewriter();
+        for (String input : randomInputs(1, 3000)) {
+            assertEquals(parsed(input), rewriter.rewrite(input, ""), input);
+        }
+    }
+
+    @Test void outputMatchesParseOnLargeDocuments() throws IOException {
+        String[] files = {"/htmltests/large.html", "/htmltests/xwiki-1324.html.gz", "/htmltests/yahoo-jp.html.gz"};
+        for (String file : files) {
+            String html = ParseTest.getFileAsString(ParseTest.getFile(file));
+
+            Document doc = Jsoup.parse(html, "https://example.com/");
+            doc.outputSettings().prettyPrint(false);
+            doc.select("a[href]").forEach(a -> a.attr("href", a.absUrl("href")));
+            doc.select("script[src]").remove();
+
+            String rewritten = new HtmlRewriter()
+                .on("a[href]", a -> a.attr("href", a.absUrl("href")))
+                .on("script[src]", Element::remove)
+                .rewrite(html, "https://example.com/");
+            assertEquals(doc.outerHtml(), rewritten, file);
+        }
+    }
+
+    @Test void handlersCanModifyElements() {
+        HtmlRewriter rewriter = new HtmlRewriter()
+            .on("a[href]", a -> a.attr("href", "/proxy?u=" + a.attr("href")))
+            .on("script[src*=tracker]", Element::remove)
+            .on("div.ad", div -> div.html("<p>Removed</p>"))
+            .on("body", body -> body.prependElement("script").attr("src", "inject.js"));
+
+        String html = "<div><a href=one>One</a><script src=tracker.js></script></div><div class=ad><img src=ad.png></div>";
+        assertEquals("<html><head></head><body><script src=\"inject.js\"></script><div><a href=\"/proxy?u=one\">One</a></div><div class=\"ad\"><p>Removed</p></div></body></html>",
+            rewriter.rewrite(html, ""));
+    }
+
+    @Test void handlersRunInDocumentOrderOnCompleteElements() {
+        List<String> seen = new ArrayList<>();
+        HtmlRewriter rewriter = new HtmlRewriter()
+            .on("div", el -> seen.add(el.tagName() + ":" + el.text()))
+            .on("p", el -> seen.add(el.tagName() + ":" + el.text()));
+
+        rewriter.rewrite("<div>One <p>Two <span>Three</span></div><p>Four", "");
+        assertEquals("[div:One Two Three, p:Two Three, p:Four]", seen.toString());
+    }
+
+    @Test void handlerRemovingElementSkipsNestedMatches() {
+        List<String> seen = new ArrayList<>();
+        HtmlRewriter rewriter = new HtmlRewriter()
+            .on("div.remove", Element::remove)
+            .on("p", el -> seen.add(el.text()));
+
+        String out = rewriter.rewrite("<div class=remove><p>One</div><div><p>Two</div>", "");
+        assertEquals("[Two]", seen.toString());
+        assertEquals("<html><head></head><body><div><p>Two</p></div></body></html>", out);
+    }
+
+    @Test void rulesCanUseAncestors() {
+        HtmlRewriter rewriter = new HtmlRewriter()
+            .on("nav > a", a -> a.addClass("nav"))
+            .on("main a", a -> a.attr("rel", "nofollow"));
+
+        String out = rewriter.rewrite("<nav><a href=1>1</a></nav><main><div><a href=2>2</a></div></main>", "");
+        assertEquals("<html><head></head><body><nav><a href=\"1\" class=\"nav\">1</a></nav><main><div><a href=\"2\" rel=\"nofollow\">2</a></div></main></body></html>", out);
+    }
+
+    @Test void writesOutputBeforeInputIsComplete() throws IOException {
+        StringBuilder out = new StringBuilder();
+        int[] outputLenWhenLastRead = {-1};
+        Reader input = new Reader() {
+            int chunks = 0;
+            @Override public int read(char[] cbuf, int off, int len) {
+                if (chunks == 10000)
+                    return -1;
+                outputLenWhenLastRead[0] = out.length();
+                String chunk = "<div><p>Para " + chunks++ + "</p></div>";
+                chunk.getChars(0, chunk.length(), cbuf, off); // read requests are larger than a chunk
+                return chunk.length();
+            }
+            @Override public void close() {}
+        };
+
+        new HtmlRewriter().on("p", p -> p.text(p.text().toUpperCase())).rewrite(input, "", out);
+        assertTrue(outputLenWhenLastRead[0] > out.length() / 2); // output was streamed as the input was read
+        assertTrue(out.toString().contains("<div><p>PARA 9999</p></div></body></html>"));
+    }
+
+    @Test void propagatesReadErrors() {
+        Reader input = new StringReader("<p>One") {
+            @Override public int read(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("Read failed");
+            }
+        };
+        IOException e = assertThrows(IOException.class, () -> new HtmlRewriter().rewrite(input, "", new StringBuilder()));
+        assertEquals("Read failed", e.getMessage());
+    }
+
+    @Test void rewritesBodyFragmentWithWriter() throws IOException {
+        String html = "<title>T</title><div id=1><p>One <b>Two</b></p><p>Three</div><!-- c -->";
+        StringBuilder out = new StringBuilder();
+        new HtmlRewriter().on("b", b -> b.tagName("strong")).rewriteBodyFragment(new StringReader(html), "", out);
+        Document doc = Jsoup.parseBodyFragment(html);
+        doc.outputSettings().prettyPrint(false);
+        doc.select("b").tagName("strong");
+        assertEquals(doc.body().html(), out.toString()); // the title is kept in the body, as in a body fragment
+
+        List<String> events = new ArrayList<>();
+        new HtmlRewriter().writer(new HtmlRewriter.NodeWriter() {
+            @Override public void writeStart(Element el, Appendable out) { events.add("<" + el.tagName()); }
+            @Override public void writeEnd(Element el, Appendable out) { events.add(el.tagName() + ">"); }
+            @Override public void write(org.jsoup.nodes.Node node, Appendable out) { events.add(node.nodeName()); }
+        }).rewriteBodyFragment(new StringReader(html), "", new StringBuilder());
+        assertEquals("[<title, #text, title>, <div, <p, #text, b, p>, <p, #text, p>, div>, #comment]", events.toString());
+    }
+}
@@ -0,0 +1,183 @@
+package org.jsoup.parser;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParseLimitsTest {
+    private static Parser parser(ParseLimits limits) {
+        return Parser.htmlParser().parseLimits(limits).setTrackErrors(10);
+    }
+
+    private static class CountingReader extends StringReader {
+        int read = 0;
+
+        CountingReader(String s) {
+            super(s);
+        }
+
+        @Override public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            if (n > 0) read += n;
+            return n;
+        }
+    }
+
+    private static String nested(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            sb.append("<div>");
+        return sb.append("Deep").toString();
+    }
+
+    @Test void noLimitsByDefault() {
+        Parser parser = Parser.htmlParser();
+        assertNull(parser.parseLimits());
+        Document doc = Jsoup.parse(nested(1000), "", parser);
+        assertEquals(1000, doc.select("div").size());
+    }
+
+    @Test void truncatesAtMaxDepth() {
+        Parser parser = parser(new ParseLimits().maxDepth(10));
+        Document doc = Jsoup.parse(nested(1000), "", parser);
+
+        // html and body are on the stack, so 8 divs fit; the 9th exceeds and ends the parse
+        assertEquals(9, doc.select("div").size());
+        assertEquals("", doc.text());
+        assertEquals("Exceeded max depth [10]", parser.getErrors().get(0).getErrorMessage());
+    }
+
+    @Test void failsFastAtMaxDepth() {
+        Parser parser = parser(new ParseLimits().maxDepth(10).failFast(true));
+        ParseLimitException e = assertThrows(ParseLimitException.class, () -> Jsoup.parse(nested(1000), "", parser));
+        assertEquals(ParseLimits.Limit.Depth, e.limit());
+        assertEquals("Exceeded max depth [10]", e.getMessage());
+    }
+
+    @Test void truncatesAtMaxNodes() {
+        Parser parser = parser(new ParseLimits().maxNodes(10));
+        Document doc = Jsoup.parse("<p>One</p><p>Two</p><p>Three</p><p>Four</p><p>Five</p><p>Six</p>", "", parser);
+        // html, head, body, then p + text pairs
+        assertEquals("One Two Three Four", doc.text());
+        assertEquals("<p>One</p><p>Two</p><p>Three</p><p>Four</p>", doc.body().html().replace("\n", ""));
+    }
+
+    @Test void countsAdoptedNodesTowardsMaxNodes() {
+        StringBuilder html = new StringBuilder("<b><i><u>");
+        for (int i = 0; i < 20; i++)
+            html.append("<div><div><div>x</b>"); // each misnested end tag clones formatting elements in the adoption agency
+        Parser parser = parser(new ParseLimits().maxNodes(30));
+        Document doc = Jsoup.parse(html.toString(), "", parser);
+
+        int[] nodes = {0};
+        doc.traverse((node, depth) -> nodes[0]++);
+        assertEquals(31 + 1, nodes[0]); // the node that exceeded the limit, and the document
+    }
+
+    @Test void trimsTextAtMaxTextLength() {
+        Parser parser = parser(new ParseLimits().maxTextLength(10));
+        Document doc = Jsoup.parse("<p>Hello &amp; there</p><p>Next</p>", "", parser);
+        assertEquals("Hello & th", doc.text());
+        assertEquals(1, doc.select("p").size());
+
+        Parser failing = parser(new ParseLimits().maxTextLength(10).failFast(true));
+        ParseLimitException e = assertThrows(ParseLimitException.class, () -> Jsoup.parse("<p>Hello &amp; there", "", failing));
+        assertEquals(ParseLimits.Limit.Text, e.limit());
+    }
+
+    @Test void stopsReadingTextFloodAtMaxTextLength() {
+        StringBuilder sb = new StringBuilder("<p>");
+        for (int i = 0; i < 1_000_000; i++)
+            sb.append("&amp;");
+        String flood = sb.toString();
+        CountingReader reader = new CountingReader(flood);
+        Parser parser = parser(new ParseLimits().maxTextLength(1000).maxTokens(100));
+
+        Document doc = parser.parseInput(reader, "");
+        assertEquals(1000, doc.text().length());
+        assertTrue(reader.read < flood.length() / 10, "Read " + reader.read); // stopped well before the end of the input
+    }
+
+    @Test void stopsReadingTextFloodAtMaxParseTime() {
+        StringBuilder sb = new StringBuilder("<p>");
+        for (int i = 0; i < 4_000_000; i++)
+            sb.append("&amp;");
+        String flood = sb.toString(); // a single text token
+        Parser parser = parser(new ParseLimits().maxParseTime(1).failFast(true));
+        CountingReader reader = new CountingReader(flood);
+
+        ParseLimitException e = assertThrows(ParseLimitException.class, () -> parser.parseInput(reader, ""));
+        assertEquals(ParseLimits.Limit.Time, e.limit());
+        assertTrue(reader.read < flood.length(), "Read " + reader.read);
+    }
+
+    @Test void dropsAttributesPastMaxAttributes() {
+        Parser parser = parser(new ParseLimits().maxAttributes(2));
+        Document doc = Jsoup.parse("<p a=1 b=2 c=3 d=4>One</p><p e=5>Two</p>", "", parser);
+        Element first = doc.expectFirst("p");
+        assertEquals(2, first.attributesSize());
+        assertEquals("2", first.attr("b"));
+        assertEquals("Two", doc.select("p").get(1).text()); // parse continued
+        assertEquals("Dropped attributes past max attributes [2] in tag [p]", parser.getErrors().get(0).getErrorMessage());
+
+        Parser failing = parser(new ParseLimits().maxAttributes(2).failFast(true));
+        ParseLimitException e = assertThrows(ParseLimitException.class, () -> Jsoup.parse("<p a=1 b=2 c=3>", "", failing));
+        assertEquals(ParseLimits.Limit.Attributes, e.limit());
+    }
+
+    @Test void defaultMaxAttributesStillApplies() {
+        StringBuilder sb = new StringBuilder("<p");
+        for (int i = 0; i < 600; i++)
+            sb.append(" a").append(i);
+        Document doc = Jsoup.parse(sb.append(">").toString());
+        assertEquals(512, doc.expectFirst("p").attributesSize());
+    }
+
+    @Test void truncatesAtMaxTokens() {
+        Parser parser = parser(new ParseLimits().maxTokens(5));
+        Document doc = Jsoup.parse("<p>One<p>Two<p>Three", "", parser);
+        assertEquals("One Two", doc.text()); // <p>, One, <p>, Two, <p>
+
+        Parser failing = parser(new ParseLimits().maxTokens(5).failFast(true));
+        ParseLimitException e = assertThrows(ParseLimitException.class, () -> Jsoup.parse("<p>One<p>Two<p>Three", "", failing));
+        assertEquals(ParseLimits.Limit.Tokens, e.limit());
+    }
+
+    @Test void failsAtMaxParseTime() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++)
+            sb.append("<b>x</b>");
+        Parser parser = parser(new ParseLimits().maxParseTime(1).failFast(true));
+        Document doc = Jsoup.parse("<p>Quick</p>", "", parser);
+        assertEquals("Quick", doc.text());
+
+        String slow = sb.toString();
+        ParseLimitException e = assertThrows(ParseLimitException.class, () -> {
+            for (int i = 0; i < 100; i++) // repeat in case any parse completes inside the limit
+                Jsoup.parse(slow, "", parser);
+        });
+        assertEquals(ParseLimits.Limit.Time, e.limit());
+    }
+
+    @Test void limitsAreCopiedWithParser() {
+        ParseLimits limits = new ParseLimits().maxDepth(10);
+        Parser parser = Parser.htmlParser().parseLimits(limits);
+        Parser copy = parser.newInstance();
+        limits.maxDepth(20);
+        assertNotNull(copy.parseLimits());
+        assertEquals(10, copy.parseLimits().maxDepth());
+    }
+
+    @Test void appliesToXmlParser() {
+        Parser parser = Parser.xmlParser().parseLimits(new ParseLimits().maxDepth(3));
+        Document doc = Jsoup.parse("<a><b><c><d><e>Deep</e></d></c></b></a>", "", parser);
+        // the xml stack is rooted at the document
+        assertEquals("<a><b><c></c></b></a>", doc.html().replaceAll("\\s", ""));
+    }
+}
@@ -2,13 +2,17 @@ package org.jsoup.parser;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class ParserTest {
 
@@ -36,4 +40,58 @@ public class ParserTest {
         String text = parsed.selectFirst("p").wholeText();
         assertEquals(text, "H\u00E9llo, w\u00F6rld!");
     }
+
+    @Test
+    public void reusedTokeniserStartsClean() {
+        // each parse leaves the tokeniser in a different state; the next parse on this thread reuses it
+        String[] inputs = {"<script>var a = '", "<!-- unclosed", "<p title='unclosed", "<textarea>One", "<!doctype html", "One &am"};
+        for (String input : inputs) {
+            Jsoup.parse(input);
+            Document doc = Jsoup.parse("<p class=one>Two</p>");
+            assertEquals("<p class=\"one\">Two</p>", doc.body().html(), input);
+
+            Element div = doc.body().appendElement("div");
+            div.append(input);
+            div.html("<span>Three</span>");
+            assertEquals("<span>Three</span>", div.html(), input);
+        }
+    }
+
+    @Test
+    public void canParseFragmentsFromManyThreads() throws InterruptedException {
+        Document doc = Jsoup.parse("<div id=root></div>");
+        Element root = doc.expectFirst("#root");
+        int numThreads = 8;
+        int perThread = 500;
+        List<Element> containers = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++)
+            containers.add(root.appendElement("div"));
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final Element container = containers.get(i); // each thread modifies its own element, through the doc's shared parser
+            final int threadNum = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; j++)
+                        container.append("<p class=t" + threadNum + ">" + j + " &amp; <b>bold</b></p>");
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertNull(failure.get());
+        for (int i = 0; i < numThreads; i++) {
+            Element container = containers.get(i);
+            assertEquals(perThread, container.children().size());
+            assertEquals(perThread, container.select("p.t" + i + " > b").size());
+            assertEquals("7 & bold", container.child(7).text());
+        }
+    }
 }
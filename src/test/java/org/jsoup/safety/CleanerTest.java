@@ -10,6 +10,8 @@ import org.jsoup.nodes.Range;
 import org.jsoup.parser.Parser;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Locale;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -399,4 +401,135 @@ public class CleanerTest {
         assertEquals(cleanRange, origRange);
         assertEquals(clean.endSourceRange(), orig.endSourceRange());
     }
+
+    private static final String[] cleanInputs = {
+        "<div><p class=foo><a href='http://evil.com'>Hello <b id=bar>there</b>!</a></div>",
+        "Hello <b>there</b>!",
+        "<div><p><a href='javascript:sendAllMoney()'>Dodgy</a> <A HREF='HTTP://nice.com'>Nice</a></p><blockquote>Hello</blockquote>",
+        "<div><p><img src='http://example.com/' alt=Image></p><p><img src='ftp://ftp.example.com'></p></div>",
+        "<h1>Head</h1><table><tr><td>One<td>Two</td></tr></table>",
+        "<div><p>Nice</p><blockquote cite='http://example.com/quotations'>Hello</blockquote>",
+        "<div class=foo data=true><p class=bar>Text</p></div><blockquote cite='https://example.com'>Foo",
+        "<a href='any://example.com'>Link</a>",
+        "<p>Contact me <a href='mailto:info@example.com'>here</a></p>",
+        "<p>Hello<!-- no --></p>",
+        "<?import namespace=\"xss\"><p>Hello</p>",
+        "<SCRIPT SRC=//ha.ckers.org/.j><SCRIPT>alert(/XSS/.source)</SCRIPT>",
+        "<IMG SRC=\"javascript:alert('XSS')\">",
+        "<A HREF=\"javascript:document.location='http://www.google.com/'\">XSS</A>",
+        "<p><custom foo=true>Test</custom></p>",
+        "<img alt=\"\" src= unknown=''>",
+        "<a href='/foo'>Link</a><img src='/bar'> <img src='javascript:alert()'>",
+        "<a href=\"&#0013;ja&Tab;va&Tab;script&#0010;:alert(1)\">Link</a>",
+        "<img src='cid:12345' /> <img src='data:gzzt' />",
+        "<p class='foo' src='bar'><a class='qux'>link</a></p>",
+        "<div><p>&bernou;</p></div>",
+        "<html><head><script></script><noscript></noscript></head><frameset><frame src=\"foo\" /><frame src=\"foo\" /></frameset></html>",
+        "<a/\06>",
+        "<a>One</a> <a href>Two</a>",
+        "<div style=\"font-family: 'Calibri'\">Will (not) fail</div>",
+        "<p>One <b>Two <i>Three</b> Four</i> Five</p><p>Six", // adoption agency
+        "<table><tr><td>One</td></tr><p>Foster</p></table><style>p {}</style><title>T</title>",
+        "<ul><li>One<li>Two <span>Three</ul><svg><![CDATA[<cdata>]]></svg>\n <pre>\n  Pre </pre>",
+        "<p><b>a<form><input></form>lost text here", // a form closes while formatting inside it stays open
+        "<form><b>x</form>lost",
+        "<div><form><i><b>One</div>Two</form>Three",
+        "<b><form><p>One</b>Two</form>Three",
+        "<a href=http://x><form><div>One</a>Two</form><p>Three",
+    };
+
+    /** Random tag soup for the cleaner, with forms and formatting elements that the tree builder restructures. */
+    private static String[] randomCleanInputs(long seed, int count) {
+        String[] parts = {"<form>", "</form>", "<b>", "</b>", "<i>", "</i>", "<a href='http://x/'>", "<a href='/rel'>",
+            "<a href='javascript:x()' onclick=y>", "</a>", "<p class=c>", "</p>", "<div>", "</div>", "<table>",
+            "</table>", "<tr>", "<td>", "</td>", "<input>", "<li>", "<ul>", "</ul>", "<nobr>", "<button>", "</button>",
+            "<img src='http://x/i.png' alt=a>", "<img src=data:x>", "<script>s()</script>", "<style>p{}</style>",
+            "<!-- c -->", "<span>", "</span>", "<br>", "<blockquote cite=#q>", "text ", "more ", "&lt; "};
+        java.util.Random random = new java.util.Random(seed);
+        String[] inputs = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++)
+                sb.append(parts[random.nextInt(parts.length)]);
+            inputs[i] = sb.toString();
+        }
+        return inputs;
+    }
+
+    private static Safelist[] cleanSafelists() {
+        return new Safelist[]{Safelist.none(), Safelist.simpleText(), Safelist.basic(), Safelist.relaxed(),
+            Safelist.basicWithImages().preserveRelativeLinks(true), Safelist.relaxed().addTags("style").addProtocols("a", "href", "#"),
+            Safelist.none().addAttributes(":all", "class").addTags("p", "style")};
+    }
+
+    @Test void streamingCleanMatchesClean() throws IOException {
+        Document.OutputSettings settings = new Document.OutputSettings().prettyPrint(false);
+        for (String input : cleanInputs) {
+            for (Safelist safelist : cleanSafelists()) {
+                for (String baseUri : new String[]{"", "http://example.com/"}) {
+                    String expected = Jsoup.clean(input, baseUri, safelist, settings);
+                    StringBuilder out = new StringBuilder();
+                    new Cleaner(safelist).clean(new StringReader(input), baseUri, out);
+                    assertEquals(expected, out.toString(), input);
+                }
+            }
+        }
+
+        for (String input : randomCleanInputs(1, 1000)) {
+            for (Safelist safelist : cleanSafelists()) {
+                String expected = Jsoup.clean(input, "http://example.com/", safelist, settings);
+                StringBuilder out = new StringBuilder();
+                new Cleaner(safelist).clean(new StringReader(input), "http://example.com/", out);
+                assertEquals(expected, out.toString(), input);
+            }
+        }
+    }
+
+    @Test void validateReportsFirstViolation() {
+        Cleaner cleaner = new Cleaner(Safelist.basic());
+        Document doc = Jsoup.parse("<p>One <a href='/foo'>Two</a></p>\n<p onclick=x>Three <script>x</script></p>",
+            "http://example.com/", Parser.htmlParser().setTrackPosition(true));
+        Cleaner.Violation violation = cleaner.validate(doc);
+        assertNotNull(violation);
+        assertSame(doc.select("p").get(1), violation.node());
+        assertEquals("onclick", violation.attribute());
+        assertEquals("2,1:34-2,14:47", violation.range().toString());
+        assertEquals("Attribute 'onclick' of <p> is not allowed at 2,1:34-2,14:47", violation.toString());
+        assertEquals("/foo", doc.expectFirst("a").attr("href")); // validating does not modify the document
+        assertFalse(cleaner.isValid(doc));
+
+        doc.select("p").get(1).removeAttr("onclick");
+        violation = cleaner.validate(doc);
+        assertNotNull(violation);
+        assertEquals("script", violation.node().nodeName());
+        assertNull(violation.attribute());
+        assertEquals("Tag <script> is not allowed at 2,20:53-2,28:61", violation.toString());
+
+        doc.expectFirst("script").remove();
+        assertNull(cleaner.validate(doc));
+        assertTrue(cleaner.isValid(doc));
+
+        doc.body().appendChild(new org.jsoup.nodes.Comment("c"));
+        assertEquals("Node #comment is not allowed", cleaner.validate(doc).toString());
+
+        Document withHead = Jsoup.parse("<title>T</title><p>One");
+        assertEquals("title", cleaner.validate(withHead).node().nodeName());
+    }
+
+    @Test void cleanInPlaceMatchesClean() {
+        for (String input : cleanInputs) {
+            for (Safelist safelist : cleanSafelists()) {
+                Cleaner cleaner = new Cleaner(safelist);
+                Document expected = cleaner.clean(Jsoup.parse(input, "http://example.com/"));
+                Document dirty = Jsoup.parse(input, "http://example.com/");
+                Element p = dirty.selectFirst("p");
+                Document cleaned = cleaner.cleanInPlace(dirty);
+                assertSame(dirty, cleaned);
+                assertEquals(expected.html(), cleaned.html(), input);
+                if (p != null && safelist.isSafeTag("p"))
+                    assertSame(p, cleaned.selectFirst("p")); // not copied
+            }
+        }
+    }
 }
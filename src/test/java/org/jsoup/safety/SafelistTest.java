@@ -1,13 +1,14 @@
 package org.jsoup.safety;
 
+import org.jsoup.Jsoup;
+import org.jsoup.helper.ValidationException;
 import org.jsoup.nodes.Attribute;
 import org.jsoup.nodes.Attributes;
 import org.jsoup.nodes.Element;
 import org.jsoup.parser.Tag;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class SafelistTest {
     private static final String TEST_TAG = "testTag";
@@ -61,5 +62,92 @@ public class SafelistTest {
         assertFalse(safelist2.isSafeAttribute(TEST_TAG, invalidElement, invalidAttribute));
     }
 
+    @Test
+    public void compiledMatchesSource() {
+        Safelist source = Safelist.relaxed()
+                .addAttributes(":all", "class")
+                .addEnforcedAttribute("a", "rel", "nofollow")
+                .addProtocols("a", "href", "#");
+        Safelist compiled = source.compile();
+        assertSame(compiled, source.compile());
+        assertSame(compiled, compiled.compile());
+
+        String[] tags = {"a", "p", "img", "script", "td", ":all", "A"};
+        String[][] attrs = {{"href", "http://example.com/"}, {"href", "javascript:alert()"}, {"href", "#top"},
+            {"class", "x"}, {"rel", "nofollow"}, {"REL", "nofollow"}, {"rel", "other"}, {"src", "https://example.com/i.png"},
+            {"src", "/i.png"}, {"onclick", "x"}, {"width", "10"}, {"colspan", "2"}};
+        for (String tag : tags) {
+            assertEquals(source.isSafeTag(tag), compiled.isSafeTag(tag), tag);
+            assertEquals(source.getEnforcedAttributes(tag), compiled.getEnforcedAttributes(tag), tag);
+            for (String[] attr : attrs) {
+                Element el = new Element(Tag.valueOf(tag), "https://example.com/");
+                el.attr(attr[0], attr[1]);
+                Element el2 = el.clone();
+                assertEquals(source.isSafeAttribute(tag, el, el.attributes().asList().get(0)),
+                    compiled.isSafeAttribute(tag, el2, el2.attributes().asList().get(0)), tag + " " + attr[0] + "=" + attr[1]);
+                assertEquals(el.outerHtml(), el2.outerHtml()); // same absolute URL updates
+            }
+        }
+
+        String dirty = "<p class=x onclick=y><a href='/foo' title=t>One</a> <img src=x.png> <script>z</script></p>";
+        assertEquals(Jsoup.clean(dirty, "https://example.com/", source), Jsoup.clean(dirty, "https://example.com/", compiled));
+    }
+
+    @Test
+    public void compiledIsImmutableAndRecompiledOnChange() {
+        Safelist source = Safelist.basic();
+        Safelist compiled = source.compile();
+        assertThrows(ValidationException.class, () -> compiled.addTags("script"));
+        assertThrows(ValidationException.class, () -> compiled.preserveRelativeLinks(true));
 
+        source.addTags("div");
+        assertFalse(compiled.isSafeTag("div"));
+        assertTrue(source.compile().isSafeTag("div"));
+        assertNotSame(compiled, source.compile());
+
+        Safelist copy = new Safelist(compiled).addTags("script"); // a copy is modifiable
+        assertTrue(copy.isSafeTag("script"));
+        assertTrue(copy.isSafeTag("a"));
+    }
+
+    @Test
+    public void protocolFastPathMatchesResolvedTest() {
+        String[] values = {"http://example.com/", "HTTP://Example.com/a b", "https:foo", "ftp://x", "mailto:a@b.c",
+            "javascript:alert(1)", "JavaScript:alert(1)", "java\tscript:alert(1)", " http://x", "\u0000http://x",
+            "http ://x", "ht+tp.x-y:z", "1http://x", "cid:12345", "CID:1", "data:gzzt", "url:http://x",
+            "url:javascript:x", "/foo", "foo", "foo:bar/baz", "./a:b", "#top", "#to p", "", ":x", "http", "h:",
+            "http://x:abc/", "\u00e9http:x", "tel:+1"};
+        String[] protocols = {"http", "https", "ftp", "mailto", "cid", "#", "tel", "h"};
+        for (String baseUri : new String[]{"", "http://example.com/"}) {
+            for (boolean preserve : new boolean[]{false, true}) {
+                Safelist safelist = Safelist.none().addAttributes("a", "href").addProtocols("a", "href", protocols)
+                    .preserveRelativeLinks(preserve);
+                for (String value : values) {
+                    // the reference: resolve, then test the prefixes
+                    Element ref = new Element(Tag.valueOf("a"), baseUri).attr("href", value);
+                    String resolved = ref.absUrl("href");
+                    if (resolved.isEmpty())
+                        resolved = value;
+                    boolean expected = false;
+                    for (String protocol : protocols) {
+                        expected |= protocol.equals("#") ?
+                            resolved.startsWith("#") && !resolved.matches(".*\\s.*") :
+                            resolved.toLowerCase(java.util.Locale.ENGLISH).startsWith(protocol + ":");
+                    }
+
+                    for (Safelist test : new Safelist[]{safelist, safelist.compile()}) {
+                        Element el = new Element(Tag.valueOf("a"), baseUri).attr("href", value);
+                        Attribute attr = el.attributes().asList().get(0);
+                        String desc = baseUri + " " + preserve + " " + value;
+                        assertEquals(expected, test.isSafeAttribute("a", el, attr), desc);
+                        if (expected)
+                            assertEquals(preserve ? value : resolved, el.attr("href"), desc);
+                    }
+                }
+            }
+        }
+        assertEquals(4, Safelist.schemeLength("http://x"));
+        assertEquals(-1, Safelist.schemeLength("/http:x"));
+        assertEquals(-1, Safelist.schemeLength("URL:http://x"));
+    }
 }
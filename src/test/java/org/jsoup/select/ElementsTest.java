@@ -6,6 +6,7 @@ import org.jsoup.nodes.Comment;
 import org.jsoup.nodes.DataNode;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.ElementOrder;
 import org.jsoup.nodes.FormElement;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
@@ -435,4 +436,43 @@ public class ElementsTest {
         assertEquals("http://example.com/bar", absAttrs.get(1));
         assertEquals("http://example.com", absAttrs.get(2));
     }
+
+    @Test void sortByDocumentOrder() {
+        Document doc = Jsoup.parse("<div id=1><p id=2><b id=3></b></p></div><div id=4><i id=5></i></div>");
+        Elements els = new Elements(doc.getElementById("5"), doc.getElementById("2"), doc.getElementById("4"),
+            doc.getElementById("1"), doc.getElementById("3"));
+        assertSame(els, els.sortByDocumentOrder());
+        assertEquals("1 2 3 4 5", String.join(" ", els.eachAttr("id")));
+
+        Document other = Jsoup.parse("<p id=a><p id=b>");
+        els.add(0, other.getElementById("b"));
+        els.add(other.getElementById("a"));
+        els.sortByDocumentOrder(); // grouped by tree, in order of first appearance
+        assertEquals("a b 1 2 3 4 5", String.join(" ", els.eachAttr("id")));
+    }
+
+    @Test void selectFromMultipleRootsIsDistinct() {
+        Document doc = Jsoup.parse("<div id=1><div id=2><p id=a><p id=b></div></div><div id=3><p id=c></div>");
+        Elements divs = doc.select("div");
+        assertEquals(3, divs.size());
+        assertEquals("a b c", String.join(" ", divs.select("p").eachAttr("id")));
+        assertEquals("b", String.join(" ", divs.select("p + p").eachAttr("id")));
+
+        Document other = Jsoup.parse("<div><p id=d></div>");
+        Elements mixed = new Elements(divs);
+        mixed.add(other.expectFirst("div"));
+        mixed.add(doc.expectFirst("#3"));
+        assertEquals("a b c d", String.join(" ", mixed.select("p").eachAttr("id")));
+    }
+
+    @Test void selectFromMultipleRootsDoesNotNumberTree() {
+        Document doc = Jsoup.parse("<div id=1><div id=2><p id=a><p id=b></div></div><div id=3><p id=c></div>");
+        Elements divs = doc.select("div");
+        assertEquals("a b c", String.join(" ", divs.select("p").eachAttr("id")));
+        assertNull(ElementOrder.current(doc)); // deduped by identity, without walking the document
+
+        ElementOrder order = ElementOrder.of(doc);
+        assertSame(order, ElementOrder.current(doc));
+        assertEquals("a b c", String.join(" ", divs.select("p").eachAttr("id"))); // uses the current numbering
+    }
 }
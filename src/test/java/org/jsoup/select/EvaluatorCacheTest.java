@@ -0,0 +1,98 @@
+package org.jsoup.select;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvaluatorCacheTest {
+    @BeforeEach @AfterEach void reset() {
+        EvaluatorCache.maxSize(512);
+        EvaluatorCache.clear();
+    }
+
+    @Test void cachesParsedQueries() {
+        Evaluator first = EvaluatorCache.get("div > p.one");
+        assertSame(first, EvaluatorCache.get("div > p.one"));
+        assertNotSame(first, EvaluatorCache.get("div > p.two"));
+
+        assertEquals(2, EvaluatorCache.size());
+        assertEquals(1, EvaluatorCache.hitCount());
+        assertEquals(2, EvaluatorCache.missCount());
+    }
+
+    @Test void selectionMethodsUseCache() {
+        Document doc = Jsoup.parse("<div><p class=one>One</p><p>Two</p></div>");
+        Element p = doc.expectFirst("p.one"); // miss
+        doc.select("p.one"); // hit
+        doc.selectFirst("p.one"); // hit
+        assertTrue(p.is("p.one")); // hit
+        assertSame(p, p.closest("p.one")); // hit
+        assertTrue(doc.select("p").is("p.one")); // miss (p), hit
+
+        assertEquals(5, EvaluatorCache.hitCount());
+        assertEquals(2, EvaluatorCache.missCount());
+    }
+
+    @Test void evictsLeastRecentlyUsed() {
+        EvaluatorCache.maxSize(2);
+        Evaluator one = EvaluatorCache.get("one");
+        EvaluatorCache.get("two");
+        EvaluatorCache.get("one"); // two is now the eldest
+        EvaluatorCache.get("three");
+
+        assertEquals(2, EvaluatorCache.size());
+        assertSame(one, EvaluatorCache.get("one"));
+        long misses = EvaluatorCache.missCount();
+        EvaluatorCache.get("two");
+        assertEquals(misses + 1, EvaluatorCache.missCount());
+
+        EvaluatorCache.maxSize(1);
+        assertEquals(1, EvaluatorCache.size());
+    }
+
+    @Test void canDisable() {
+        EvaluatorCache.maxSize(0);
+        Evaluator eval = EvaluatorCache.get("p");
+        assertNotSame(eval, EvaluatorCache.get("p"));
+        assertEquals(0, EvaluatorCache.size());
+        assertEquals(2, EvaluatorCache.missCount());
+    }
+
+    @Test void invalidQueriesAreNotCached() {
+        assertThrows(Selector.SelectorParseException.class, () -> EvaluatorCache.get("div["));
+        assertEquals(0, EvaluatorCache.size());
+    }
+
+    @Test void cachedHasIsThreadSafe() throws InterruptedException {
+        Document doc = Jsoup.parse("<div><p>One</p></div><div><span>Two</span></div><div><p>Three</p></div>");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 2000; j++) {
+                        Elements divs = doc.select("div:has(p)");
+                        assertEquals("One Three", divs.text());
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertNull(failure.get());
+        assertEquals(1, EvaluatorCache.size());
+    }
+}
@@ -0,0 +1,101 @@
+package org.jsoup.select;
+
+import org.jsoup.Jsoup;
+import org.jsoup.integration.ParseTest;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExtractorTest {
+    @Test void extractsAllQueriesInOnePass() {
+        Document doc = Jsoup.parse("<div id=1><p>One</p><a href=1>Two</a></div><div id=2><p class=x>Three</p></div>");
+        Map<String, Elements> results = new Extractor()
+            .add("p")
+            .add("div > a[href]")
+            .add("byClass", QueryParser.parse(".x"))
+            .add("none")
+            .extract(doc);
+
+        assertEquals("[p, div > a[href], byClass, none]", results.keySet().toString());
+        assertEquals("One Three", results.get("p").text());
+        assertEquals("Two", results.get("div > a[href]").text());
+        assertEquals("Three", results.get("byClass").text());
+        assertTrue(results.get("none").isEmpty());
+    }
+
+    @Test void extractMatchesSelect() throws IOException {
+        String html = ParseTest.getFileAsString(ParseTest.getFile("/htmltests/xwiki-1324.html.gz"));
+        Document doc = Jsoup.parse(html);
+        String[] queries = {"a[href]", "div.panel a", "li:nth-child(2n)", "ul:has(> li.active)", "*", "img[src$=.png]", "body > div"};
+
+        Extractor extractor = new Extractor();
+        for (String query : queries)
+            extractor.add(query);
+        Map<String, Elements> results = extractor.extract(doc);
+
+        for (String query : queries)
+            assertEquals(doc.select(query), results.get(query), query);
+    }
+
+    @Test void extractsWhileParsing() throws IOException {
+        String html = "<div class=nav><a href=1>One</a></div><div class=main><p>Two <a href=2>Three</a></p><p>Four</p></div>";
+        Map<String, Elements> results = new Extractor()
+            .add("a[href]")
+            .add("div.main p")
+            .extract(new StringReader(html), "https://example.com/");
+
+        Elements links = results.get("a[href]");
+        assertEquals(2, links.size());
+        assertEquals("https://example.com/2", links.get(1).absUrl("href"));
+        assertEquals("Two Three Four", results.get("div.main p").text());
+
+        // only the matches and their ancestors are retained
+        Document retained = links.get(0).ownerDocument();
+        assertNotNull(retained);
+        assertEquals("<html><body><div class=\"nav\"><a href=\"1\">One</a></div><div class=\"main\"><p>Two <a href=\"2\">Three</a></p><p>Four</p></div></body></html>",
+            retained.html().replace("\n", "").replaceAll(">\\s+<", "><"));
+        assertSame(retained, results.get("div.main p").first().ownerDocument());
+        assertEquals("div", links.get(1).closest("div").tagName());
+    }
+
+    @Test void extractWhileParsingMatchesSelect() throws IOException {
+        String html = ParseTest.getFileAsString(ParseTest.getFile("/htmltests/yahoo-jp.html.gz"));
+        Document doc = Jsoup.parse(html);
+        String[] queries = {"a[href]", "div a", "ul > li", "img", "table td"}; // queries evaluable from start tag and ancestors
+
+        Extractor extractor = new Extractor();
+        for (String query : queries)
+            extractor.add(query);
+        Map<String, Elements> results = extractor.extract(new StringReader(html), "");
+
+        for (String query : queries) {
+            Elements expected = doc.select(query);
+            Elements actual = results.get(query);
+            assertEquals(expected.size(), actual.size(), query);
+            for (int i = 0; i < expected.size(); i++)
+                assertEquals(expected.get(i).outerHtml(), actual.get(i).outerHtml(), query);
+        }
+    }
+
+    @Test void extractsWithinClosedForms() throws IOException {
+        // the form is closed while the formatting elements within it stay open; content after is still within them
+        String html = "<form><b>x</form>lost <i>One</i><p><b>a<form><input></form>more <i>Two</i>";
+        Document doc = Jsoup.parse(html);
+        String[] queries = {"b", "i", "form i", "b > i", "input"};
+
+        Extractor extractor = new Extractor();
+        for (String query : queries)
+            extractor.add(query);
+        Map<String, Elements> results = extractor.extract(new StringReader(html), "");
+
+        for (String query : queries)
+            assertEquals(doc.select(query).outerHtml(), results.get(query).outerHtml(), query);
+        assertEquals("One Two", results.get("i").text());
+    }
+}
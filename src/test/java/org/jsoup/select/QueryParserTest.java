@@ -85,4 +85,95 @@ public class QueryParserTest {
         Evaluator parse = QueryParser.parse(q);
         assertEquals(q, parse.toString());
     }
+
+    @Test public void sortsAndByCost() {
+        CombiningEvaluator.And and = (CombiningEvaluator.And) QueryParser.parse("div:matches(foo.*bar)[data-x].cls#id");
+        assertEquals("div:matches(foo.*bar)[data-x].cls#id", and.toString()); // original order retained for toString
+        assertEquals("[div, [data-x], #id, .cls, :matches(foo.*bar)]", and.sortedEvaluators.toString()); // ties keep query order
+        assertEquals(1 + 12 + 2 + 6 + 2, and.cost());
+    }
+
+    @Test public void cheapEvaluatorsRunFirst() {
+        int[] expensiveRuns = {0};
+        Evaluator expensive = new Evaluator() {
+            @Override public boolean matches(org.jsoup.nodes.Element root, org.jsoup.nodes.Element element) {
+                expensiveRuns[0]++;
+                return true;
+            }
+            @Override protected int cost() {
+                return 100;
+            }
+        };
+
+        Document doc = Jsoup.parse("<div data-x>One</div><div>Two</div><p data-x>Three</p><span>Four</span>");
+        Evaluator eval = new CombiningEvaluator.And(expensive, new Evaluator.Attribute("data-x"), new Evaluator.Tag("div"));
+        assertEquals("One", doc.select(eval).text());
+        assertEquals(1, expensiveRuns[0]); // only the one element passing the tag and attribute checks
+
+        expensiveRuns[0] = 0;
+        Evaluator or = new CombiningEvaluator.Or(expensive, new Evaluator.Tag("div"));
+        assertEquals(doc.getAllElements().size(), doc.select(or).size());
+        assertEquals(doc.getAllElements().size() - 2, expensiveRuns[0]); // divs matched before the expensive check
+    }
+
+    @Test public void nestedCostsSaturate() {
+        StringBuilder query = new StringBuilder("div");
+        for (int i = 0; i < 12; i++) query.append(":has(p");
+        for (int i = 0; i < 12; i++) query.append(")");
+        CombiningEvaluator.And and = (CombiningEvaluator.And) QueryParser.parse(query.toString());
+        assertEquals(Integer.MAX_VALUE, and.cost()); // 10^12, saturated rather than overflowed to a low or negative cost
+        assertTrue(and.sortedEvaluators.get(0) instanceof Evaluator.Tag);
+
+        Evaluator cheapest = costing(Integer.MIN_VALUE);
+        Evaluator costliest = costing(Integer.MAX_VALUE);
+        CombiningEvaluator.And extremes = new CombiningEvaluator.And(costliest, cheapest);
+        assertSame(cheapest, extremes.sortedEvaluators.get(0));
+    }
+
+    private static Evaluator costing(int cost) {
+        return new Evaluator() {
+            @Override public boolean matches(org.jsoup.nodes.Element root, org.jsoup.nodes.Element element) {
+                return true;
+            }
+            @Override protected int cost() {
+                return cost;
+            }
+        };
+    }
+
+    @Test public void matchTextStillEvaluatesFirst() {
+        Document doc = Jsoup.parse("<p>One<br>Two</p>");
+        assertEquals("One", doc.select("p:matchText:first-child").text());
+    }
+
+    @Test public void compiledQueriesMatchParsed() {
+        Document doc = Jsoup.parse("<div id=1 class='a b'><p>One <b>Two</b></p><p title=x>Three</p></div>" +
+            "<div id=2><ul><li>1<li class=a>2<li>3</ul><p><a href=/foo>Four</a><a>Five</a></p></div>" +
+            "<section><div class=b><span>Six</span></div></section>");
+        String[] queries = {"div", "#2", ".a", "[title]", "*", "div p", "div > p", "li + li", "li ~ li", "div p b",
+            "p, li.a, section span", "div.a > p:first-child", "div:not(.a) a[href]", "div:has(b)", ":not(p):not(div)",
+            "section div span", "ul > li:nth-child(odd)", "p:contains(Three)", "div.b span, #1 b", "> html > body > div",
+            "[href] ~ a", "div:has(> p) ~ section", "li:not(.a) + li", ":root", "section :not(span)"};
+        for (String query : queries) {
+            Evaluator compiled = QueryParser.compile(query);
+            assertNotSame(QueryParser.parse(query).getClass(), compiled.getClass());
+            assertEquals(doc.select(query), doc.select(compiled), query);
+            assertEquals(doc.body().select(query), doc.body().select(compiled), query);
+        }
+        assertEquals(QueryParser.parse("div.a > p, li").toString(), QueryParser.compile("div.a > p, li").toString());
+    }
+
+    @Test public void compiledQueryUsesIndexAndCustomEvaluators() {
+        Document doc = Jsoup.parse("<div class=x><p>One</p></div><p>Two</p>");
+        doc.indexElements(true);
+        Evaluator custom = new Evaluator() {
+            @Override public boolean matches(org.jsoup.nodes.Element root, org.jsoup.nodes.Element element) {
+                return element.text().startsWith("O");
+            }
+        };
+        Evaluator compiled = QueryParser.compile(new CombiningEvaluator.And(
+            new StructuralEvaluator.Parent(new Evaluator.Class("x")), new Evaluator.Tag("p"), custom));
+        assertEquals("One", doc.select(compiled).text());
+        assertSame(compiled, QueryParser.compile(compiled));
+    }
 }
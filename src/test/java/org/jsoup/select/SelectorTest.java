@@ -8,7 +8,16 @@ import org.jsoup.nodes.Element;
 import org.jsoup.parser.Parser;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -1143,4 +1152,316 @@ public class SelectorTest {
         Selector.SelectorParseException ex = new Selector.SelectorParseException("%&");
         assertEquals("%&", ex.getMessage());
     }
+
+    @Test void memoizesAncestorMatchesInPass() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 50; i++) html.append("<div>");
+        for (int i = 0; i < 20; i++) html.append("<p>").append(i).append("</p>");
+        Document doc = Jsoup.parse(html.toString());
+
+        AtomicInteger calls = new AtomicInteger();
+        Evaluator countingDiv = new Evaluator() {
+            @Override public boolean matches(Element root, Element element) {
+                calls.incrementAndGet();
+                return element.normalName().equals("div") && element.parent() != null && element.parent().normalName().equals("body");
+            }
+        };
+        Evaluator query = new CombiningEvaluator.And(new Evaluator.Tag("p"), new StructuralEvaluator.Parent(countingDiv));
+        assertEquals(20, Collector.collect(query, doc).size());
+        assertEquals(50, calls.get()); // each div tested once (up to the outermost, which matches), not once per p
+
+        calls.set(0);
+        assertTrue(query.matches(doc, doc.expectFirst("p"))); // not in a pass, so not memoized
+        assertEquals(50, calls.get());
+    }
+
+    @Test void deepDescendantQueries() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 200; i++) html.append("<div><span>");
+        html.append("<p>Deep</p>");
+        Document doc = Jsoup.parse(html.toString());
+
+        assertEquals(1, doc.select("div div span div span p").size());
+        assertEquals(199, doc.select("div span div").size());
+        assertEquals(1, doc.select("body > div > span > div p").size());
+        assertEquals(0, doc.select("p div").size());
+    }
+
+    @Test void memoIsNotStaleAfterModification() {
+        Document doc = Jsoup.parse("<div class=a><p>One</p></div><div><p>Two</p><span>Three</span></div>");
+        assertEquals("One", doc.select("div.a p").text());
+        assertEquals("Three", doc.select("p ~ span").text());
+
+        doc.select("div").get(1).addClass("a");
+        doc.expectFirst("p").remove();
+        doc.expectFirst("span").before("<i>");
+        assertEquals("Two", doc.select("div.a p").text());
+        assertEquals("Three", doc.select("p ~ span").text());
+        assertEquals("", doc.select("p + span").text());
+        assertTrue(doc.expectFirst("span").is("div.a span"));
+    }
+
+    @Test void selectStreamIsLazy() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 100; i++) html.append("<div class=card><p>Card ").append(i).append("</p></div>");
+        Document doc = Jsoup.parse(html.toString());
+        assertEquals(doc.select("div.card p").eachText(),
+            doc.selectStream("div.card p").map(Element::text).collect(Collectors.toList()));
+
+        AtomicInteger calls = new AtomicInteger();
+        Evaluator countingCard = new Evaluator() {
+            @Override public boolean matches(Element root, Element element) {
+                calls.incrementAndGet();
+                return element.hasClass("card");
+            }
+        };
+        Stream<Element> cards = doc.selectStream(countingCard);
+        assertEquals(0, calls.get()); // nothing visited until consumed
+        List<Element> first = cards.limit(3).collect(Collectors.toList());
+        assertEquals(3, first.size());
+        assertEquals("Card 2", first.get(2).text());
+        assertEquals(9, calls.get()); // html, head, body, then div, p per card; stopped at the third
+
+        assertTrue(doc.selectStream("p:contains(card 50)").findAny().isPresent());
+        assertFalse(doc.selectStream("p:contains(card 500)").findAny().isPresent());
+        assertEquals(1, doc.expectFirst("div.card").selectStream("*").skip(1).count());
+    }
+
+    @Test void selectStreamAllowsRemovingReturned() {
+        Document doc = Jsoup.parse("<div><p>One</p><p>Two <p>Three</div><div><p>Four</p></div><p>Five");
+        List<String> removed = new ArrayList<>();
+        doc.selectStream("p").forEach(p -> {
+            removed.add(p.text());
+            p.remove();
+        });
+        assertEquals("One, Two, Three, Four, Five", String.join(", ", removed));
+        assertEquals(0, doc.select("p").size());
+
+        doc = Jsoup.parse("<div>One<div>Two<div>Three</div></div></div><div>Four</div>");
+        Iterator<Element> divs = doc.selectStream("div").iterator();
+        assertEquals("One Two Three", divs.next().text());
+        doc.expectFirst("div").remove(); // removes the last returned, and its descendants
+        assertEquals("Four", divs.next().text());
+        assertFalse(divs.hasNext());
+        assertThrows(NoSuchElementException.class, divs::next);
+    }
+
+    @Test void selectWithLimit() {
+        Document doc = Jsoup.parse("<div><p>One</p><p>Two</p></div><section><p>Three</p><div><p>Four</p></div></section>");
+        assertEquals("One Two", doc.select("p", 2).text());
+        assertEquals("One Two Three Four", doc.select("p", 10).text());
+        assertEquals("Four", doc.select("section div p", 1).text()); // uses the ancestor filter
+        assertEquals("Three", doc.expectFirst("section").select("p", 1).text());
+        assertEquals(doc.select("div p"), Collector.collect(QueryParser.parse("div p"), doc, 100));
+        assertThrows(IllegalArgumentException.class, () -> doc.select("p", 0));
+
+        Document indexed = Jsoup.parse(doc.html()).indexElements(true);
+        assertEquals("One Two", indexed.select("p", 2).text());
+    }
+
+    @Test void collectParallelMatchesCollect() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            html.append("<div class=row id=r").append(i).append("><h2>Row ").append(i).append("</h2><ul>");
+            for (int j = 0; j < 8; j++) html.append("<li>Item <b>").append(i * j).append("</b></li>");
+            html.append("</ul></div>");
+        }
+        Document doc = Jsoup.parse(html.toString());
+        String[] queries = {"li", "div.row li:nth-child(odd) b", "ul > li:has(b:contains(7))", "h2 + ul li:last-child",
+            "div:matches(Row \\d5\\b) li", ":root", "body > div:not(#r4)", "li:containsOwn(Nope)"};
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (String query : queries) {
+                Evaluator eval = QueryParser.parse(query);
+                assertEquals(Collector.collect(eval, doc), Collector.collectParallel(eval, doc, executor, 4), query);
+            }
+            Element div = doc.expectFirst("#r10");
+            assertEquals(div.select("b"), Collector.collectParallel(QueryParser.parse("b"), div, executor, 4));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test void textSelectorsOnNestedContent() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 20; i++) html.append("<div>Level ").append(i).append(" <p>text</p>");
+        html.append("<b>Deep  Text</b>");
+        Document doc = Jsoup.parse(html.toString());
+
+        assertEquals(20, doc.select("div:contains(deep text)").size());
+        assertEquals(20, doc.select("div:matches(Level \\d+ text)").size());
+        assertEquals(19, doc.select("div:contains(Level 18)").size()); // and its ancestors
+        assertEquals(21, doc.select("div:containsWholeText(Deep  Text), b:containsWholeText(Deep  Text)").size());
+        assertEquals(1, doc.select("div:matchesWholeText(^Level 19 text)").size());
+        assertEquals(1, doc.select("div:contains(text):has(> b)").size());
+
+        doc.expectFirst("b").text("Changed"); // text is not held over between selections
+        assertEquals(0, doc.select("div:contains(deep text)").size());
+        assertEquals(20, doc.select("div:contains(changed)").size());
+        assertTrue(doc.expectFirst("b").is(":contains(changed)"));
+    }
+
+    @Test void hasEvaluatesEachElementOnceInPass() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 30; i++) html.append("<div>");
+        html.append("<img>");
+        Document doc = Jsoup.parse(html.toString());
+
+        AtomicInteger calls = new AtomicInteger();
+        Evaluator countingImg = new Evaluator() {
+            @Override public boolean matches(Element root, Element element) {
+                calls.incrementAndGet();
+                return element.normalName().equals("img");
+            }
+
+            @Override boolean isRootIndependent() {
+                return true;
+            }
+        };
+        Evaluator query = new CombiningEvaluator.And(new Evaluator.Tag("div"), new StructuralEvaluator.Has(countingImg));
+        assertEquals(30, Collector.collect(query, doc).size());
+        assertEquals(1, calls.get()); // outer divs reuse their child div's result; vs searching the subtree of each div
+
+        calls.set(0);
+        assertTrue(query.matches(doc, doc.expectFirst("div"))); // not in a pass, so searches the subtree
+        assertEquals(30, calls.get());
+    }
+
+    @Test void bottomUpHasMatchesPerElementSearch() {
+        Document doc = Jsoup.parse("<div id=1><p>One <b>Two</b></p><section><div id=2><i>Three</i></div></section></div>" +
+            "<div id=3><span><p class=x>Four</p></span><p>Five</p></div><ul><li><a href=/>Six</a><li>Seven</ul>");
+        String[] queries = {"div:has(p)", "div:has(b)", ":has(i)", "div:has(p.x)", "div:has(p + p)", "div:has(span > p)",
+            "div:has(section div)", ":has(> p)", "li:has(a[href])", "div:has(:not(p))", "div:has(div:has(i))",
+            ":has(:root)", "div:not(:has(b))", "ul:has(li:eq(1))", "div:has(p:matchText)"};
+        for (String query : queries) {
+            Elements found = doc.select(query);
+            Elements expected = new Elements();
+            for (Element el : doc.getAllElements()) {
+                if (el.is(query)) // not in a selection pass, so searches each element's subtree
+                    expected.add(el);
+            }
+            assertEquals(expected, found, query);
+        }
+        assertEquals("1 3", String.join(" ", doc.select("div:has(p)").eachAttr("id")));
+    }
+
+    @Test void combinatorsWithinHasAreRelativeToSubject() {
+        // the inner query's combinators stop at the :has subject, not at the root of the selection
+        Document doc = Jsoup.parse("<div id=1><section id=2><p id=3>One</p><b id=4>Two</b></section><p id=5><i id=6>Three</i></p></div>" +
+            "<ul id=7><li id=8><i id=9>Four</i></li></ul>");
+        String[][] queries = {{"section:has(div p)", ""}, {"section:has(div > p)", ""}, {":has(div b)", "1"},
+            {"p:has(p i)", "5"}, {"section:has(div p + b)", ""}, {":has(ul li i)", "7"}, {"li:has(ul i)", ""},
+            {"section:has(p + b)", "2"}, {"section:has(p ~ b)", "2"}, {":has(div > section > p)", "1"},
+            {"li:has(ul > li > i)", ""}, {"section:has(:not(div p))", "2"}, {"section:has(div p, b)", "2"}};
+        for (String[] test : queries) {
+            String query = test[0];
+            Elements found = doc.select(query);
+            assertEquals(test[1], String.join(" ", found.eachAttr("id")), query);
+
+            Elements expected = new Elements();
+            for (Element el : doc.getAllElements()) {
+                if (el.is(query)) // not in a selection pass
+                    expected.add(el);
+            }
+            assertEquals(expected, found, query);
+        }
+    }
+
+    @Test void hasReleasesFinderAfterPass() {
+        Document doc = Jsoup.parse("<div id=1><p>One</p></div><div id=2><span><p>Two</p></span></div>");
+        StructuralEvaluator.Has has = new StructuralEvaluator.Has(QueryParser.parse("> p")); // varies by root, so uses a finder
+        assertEquals("1", doc.select(has).eachAttr("id").get(0));
+        assertNull(has.threadMemo.get()); // the finder and results are held only for the pass, not by the thread
+
+        assertTrue(has.matches(doc, doc.expectFirst("#1"))); // outside a pass
+        assertFalse(has.matches(doc, doc.expectFirst("#2")));
+        assertNull(has.threadMemo.get());
+    }
+
+    @Test void ancestorFilterSkipsWalkWhenAncestorAbsent() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 20; i++) html.append("<div class='Foo bar'>");
+        for (int i = 0; i < 10; i++) html.append("<p>").append(i).append("</p>");
+        Document doc = Jsoup.parse(html.toString());
+
+        AtomicInteger calls = new AtomicInteger();
+        Evaluator counting = new Evaluator() {
+            @Override public boolean matches(Element root, Element element) {
+                calls.incrementAndGet();
+                return true;
+            }
+        };
+        Evaluator absent = new CombiningEvaluator.And(new Evaluator.Tag("p"),
+            new StructuralEvaluator.Parent(new CombiningEvaluator.And(new Evaluator.Tag("section"), counting)));
+        assertEquals(0, Collector.collect(absent, doc).size());
+        assertEquals(0, calls.get()); // no section ancestor, so never walked
+
+        Evaluator present = new CombiningEvaluator.And(new Evaluator.Tag("p"),
+            new StructuralEvaluator.Parent(new CombiningEvaluator.And(new Evaluator.Class("foo"), counting)));
+        assertEquals(10, Collector.collect(present, doc).size());
+        assertTrue(calls.get() > 0);
+    }
+
+    @Test void ancestorFilterMatchesUnfilteredResults() {
+        Document doc = Jsoup.parse("<div id=main class='A b'><section><p class=x>One <span>Two</span></p></section>" +
+            "<article class=B><p>Three</p><div><p id=p4>Four <i class=x>Five</i></p></div></article></div>" +
+            "<div class=c><ul><li><p>Six</p></li></ul></div><p>Seven</p>");
+        String[] queries = {"div p", "section p", "article p", "#main p", ".a p", ".B p", ".b p", "div.c li p",
+            "div section p span", "article > div p", "ul p", "table p", "#nope p", "div > section p", ".x span",
+            "p .x", "div:has(ul) p", "div#main > article p i", "[class] p", "div p, ul p", ":not(section) > p",
+            "body div p:has(span)", "section:has(span) span", "div :containsOwn(Five)"};
+        for (String query : queries) {
+            Elements found = doc.select(query);
+            Elements expected = new Elements();
+            for (Element el : doc.getAllElements()) {
+                if (el.is(query)) // not in a selection pass, so walks the ancestors
+                    expected.add(el);
+            }
+            assertEquals(expected, found, query);
+        }
+        assertEquals("p4", doc.selectFirst("article p i").parent().id());
+        assertEquals(3, doc.selectFirst("#main").select("div p").size()); // the root may be the ancestor
+        assertEquals(1, doc.selectFirst("article").select("div p").size());
+    }
+
+    @Test void explainListsPartsInTestOrder() {
+        String explained = Selector.explain("div.a > p:matches(x), li");
+        String[] lines = explained.split("\n");
+        assertEquals("Or (cost 22) div.a > p:matches(x), li", lines[0]);
+        assertEquals("  Tag (cost 1) li", lines[1]); // cheapest first
+        assertEquals("  And (cost 21) div.a > p:matches(x)", lines[2]);
+        assertEquals("    ImmediateParent (cost 8) div.a >", lines[3]);
+        assertEquals("        Tag (cost 1) div", lines[5]);
+        assertEquals("    And (cost 13) p:matches(x)", lines[7]);
+        assertEquals("      Matches (cost 12) :matches(x)", lines[9]);
+        assertEquals(10, lines.length);
+
+        assertEquals(explained, Selector.explain(QueryParser.compile("div.a > p:matches(x), li")));
+        assertThrows(Selector.SelectorParseException.class, () -> Selector.explain("div["));
+    }
+
+    @Test void profileCountsEachPart() {
+        Document doc = Jsoup.parse("<div><p>x</p><p>y</p></div><p>x</p>");
+        for (Evaluator eval : new Evaluator[]{QueryParser.parse("div p:matches(x)"), QueryParser.compile("div p:matches(x)")}) {
+            QueryProfile profile = Collector.profile(eval, doc);
+            assertEquals(Collector.collect(eval, doc), profile.matches());
+            assertEquals(1, profile.matches().size());
+
+            List<QueryProfile.Entry> entries = profile.entries();
+            assertEquals(6, entries.size());
+            QueryProfile.Entry root = entries.get(0);
+            assertEquals(0, root.depth());
+            assertEquals(doc.getAllElements().size(), root.invocations());
+            assertEquals(1, root.matches());
+
+            QueryProfile.Entry matches = entries.get(5);
+            assertEquals(2, matches.depth());
+            assertTrue(matches.evaluator() instanceof Evaluator.Matches);
+            assertEquals(2, matches.invocations()); // only the ps within a div reach the regex
+            assertEquals(1, matches.matches());
+            assertTrue(matches.nanos() > 0);
+            assertTrue(root.nanos() >= matches.nanos());
+            assertTrue(profile.toString().startsWith("And (cost 15) div p:matches(x): 8 tested, 1 matched, "));
+        }
+    }
 }
@@ -8,8 +8,16 @@ import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 public class TraversorTest {
     // Note: NodeTraversor.traverse(new NodeVisitor) is tested in
@@ -193,4 +201,74 @@ public class TraversorTest {
 
         assertEquals("<div><p id=\"2\">Two</p><p></p></div>", TextUtil.stripNewlines(doc.body().html()));
     }
+
+    /** Records each head and tail it sees, to compare parallel traversals with sequential. */
+    static class RecordingVisitor implements NodeVisitor {
+        final StringBuilder accum = new StringBuilder();
+
+        @Override public void head(Node node, int depth) {
+            accum.append('<').append(node.nodeName()).append(depth).append(' ');
+        }
+
+        @Override public void tail(Node node, int depth) {
+            accum.append('>').append(node.nodeName()).append(depth).append(' ');
+        }
+    }
+
+    private static Document largeDoc() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            html.append("<div class=row><h2>Row ").append(i).append("</h2><ul>");
+            for (int j = 0; j < 8; j++) html.append("<li>Item <b>").append(j).append("</b></li>");
+            html.append("</ul></div>");
+        }
+        return Jsoup.parse(html.toString());
+    }
+
+    private static String joined(List<RecordingVisitor> visitors) {
+        StringBuilder out = new StringBuilder();
+        for (RecordingVisitor visitor : visitors) out.append(visitor.accum);
+        return out.toString();
+    }
+
+    @Test void parallelTraversalVisitsEachNodeInOrder() {
+        Document doc = largeDoc();
+        RecordingVisitor sequential = new RecordingVisitor();
+        NodeTraversor.traverse(sequential, doc);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<RecordingVisitor> visitors = NodeTraversor.traverseParallel(RecordingVisitor::new, doc, executor, 4);
+            assertTrue(visitors.size() > 1);
+            assertEquals(sequential.accum.toString(), joined(visitors));
+
+            Element div = doc.select("div").get(150); // within a subtree, depths are relative to that root
+            RecordingVisitor subtree = new RecordingVisitor();
+            NodeTraversor.traverse(subtree, div);
+            assertEquals(subtree.accum.toString(),
+                joined(NodeTraversor.traverseParallel(RecordingVisitor::new, div, executor, 4)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test void parallelTraversalOfSmallTreeIsSequential() {
+        Document doc = Jsoup.parse("<div><p>One</p><p>Two</p></div>");
+        RecordingVisitor sequential = new RecordingVisitor();
+        NodeTraversor.traverse(sequential, doc);
+        Executor unused = task -> fail("Should not split a small tree");
+        List<RecordingVisitor> visitors = NodeTraversor.traverseParallel(RecordingVisitor::new, doc, unused, 4);
+        assertEquals(1, visitors.size());
+        assertEquals(sequential.accum.toString(), visitors.get(0).accum.toString());
+    }
+
+    @Test void parallelTraversalRethrowsVisitorExceptions() {
+        Document doc = largeDoc();
+        Executor sameThread = Runnable::run; // a busy executor: the worker runs immediately, on the caller
+        IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+            NodeTraversor.traverseParallel(() -> (NodeVisitor) (node, depth) -> {
+                if (node instanceof Element && ((Element) node).text().equals("Row 200")) throw new IllegalStateException("Stop");
+            }, doc, sameThread, 4));
+        assertEquals("Stop", e.getMessage());
+    }
 }